@@ -0,0 +1,122 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * ARC replacement (Megiddo and Modha). Resident pages are split into t1
+ * (seen once recently) and t2 (seen at least twice); b1 and b2 remember the
+ * ids of pages recently evicted from t1 and t2. A miss that hits a ghost list
+ * moves the target size p of t1 towards the list that would have kept the
+ * page, so the policy adapts between recency and frequency on its own.
+ * <p>
+ * All lists are kept in LRU order, least recently used first.
+ */
+public class ArcPolicy implements ReplacementPolicy {
+
+	private int capacity;
+	private int p;
+
+	private final LinkedHashSet<PageId> t1 = new LinkedHashSet<>();
+	private final LinkedHashSet<PageId> t2 = new LinkedHashSet<>();
+	private final LinkedHashSet<PageId> b1 = new LinkedHashSet<>();
+	private final LinkedHashSet<PageId> b2 = new LinkedHashSet<>();
+
+	public ArcPolicy(int capacity) {
+		this.capacity = capacity;
+	}
+
+	@Override
+	public synchronized void recordAccess(PageId pid) {
+		if (t1.remove(pid) || t2.remove(pid)) {
+			t2.add(pid);
+		}
+	}
+
+	@Override
+	public synchronized void recordInsert(PageId pid) {
+		if (t1.contains(pid) || t2.contains(pid)) {
+			recordAccess(pid);
+			return;
+		}
+		if (b1.remove(pid)) {
+			p = Math.min(capacity, p + Math.max(b2.size() / Math.max(b1.size(), 1), 1));
+			t2.add(pid);
+		} else if (b2.remove(pid)) {
+			p = Math.max(0, p - Math.max(b1.size() / Math.max(b2.size(), 1), 1));
+			t2.add(pid);
+		} else {
+			t1.add(pid);
+		}
+		trimGhosts();
+	}
+
+	@Override
+	public synchronized void setCapacity(int capacity) {
+		this.capacity = capacity;
+		this.p = Math.min(p, capacity);
+		trimGhosts();
+	}
+
+	@Override
+	public synchronized void recordRemove(PageId pid) {
+		t1.remove(pid);
+		t2.remove(pid);
+	}
+
+	@Override
+	public synchronized PageId victim(Predicate<PageId> evictable) {
+		boolean fromT1 = !t1.isEmpty() && (t1.size() > p || t2.isEmpty());
+		PageId pid = fromT1 ? evictFirst(t1, b1, evictable) : evictFirst(t2, b2, evictable);
+		if (pid == null) {
+			pid = fromT1 ? evictFirst(t2, b2, evictable) : evictFirst(t1, b1, evictable);
+		}
+		trimGhosts();
+		return pid;
+	}
+
+	@Override
+	public synchronized List<PageId> recencyOrder() {
+		// t2里的page至少被访问过两次 比t1里的热
+		List<PageId> res = new ArrayList<>(t1);
+		res.addAll(t2);
+		Collections.reverse(res);
+		return res;
+	}
+
+	/**
+	 * Keep |t1| + |b1| <= c and |t1| + |t2| + |b1| + |b2| <= 2c.
+	 */
+	private void trimGhosts() {
+		while (t1.size() + b1.size() > capacity && !b1.isEmpty()) {
+			removeFirst(b1);
+		}
+		while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity && !b2.isEmpty()) {
+			removeFirst(b2);
+		}
+	}
+
+	private static PageId evictFirst(LinkedHashSet<PageId> list, LinkedHashSet<PageId> ghost,
+			Predicate<PageId> evictable) {
+		Iterator<PageId> it = list.iterator();
+		while (it.hasNext()) {
+			PageId pid = it.next();
+			if (evictable.test(pid)) {
+				it.remove();
+				ghost.add(pid);
+				return pid;
+			}
+		}
+		return null;
+	}
+
+	private static void removeFirst(LinkedHashSet<PageId> list) {
+		Iterator<PageId> it = list.iterator();
+		it.next();
+		it.remove();
+	}
+}
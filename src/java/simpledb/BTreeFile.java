@@ -2,16 +2,14 @@ package simpledb;
 
 import simpledb.Predicate.Op;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -33,6 +31,7 @@ public class BTreeFile implements DbFile {
 	private final TupleDesc td;
 	private final int tableid;
 	private int keyField;
+	private final PageFileChannel channel;
 
 	/**
 	 * Constructs a B+ tree file backed by the specified file.
@@ -47,6 +46,7 @@ public class BTreeFile implements DbFile {
 		this.tableid = f.getAbsoluteFile().hashCode();
 		this.keyField = key;
 		this.td = td;
+		this.channel = new PageFileChannel(f);
 	}
 
 	/**
@@ -87,13 +87,11 @@ public class BTreeFile implements DbFile {
 	 */
 	public Page readPage(PageId pid) {
 		BTreePageId id = (BTreePageId) pid;
-		BufferedInputStream bis = null;
 
 		try {
-			bis = new BufferedInputStream(new FileInputStream(f));
 			if (id.pgcateg() == BTreePageId.ROOT_PTR) {
-				byte pageBuf[] = new byte[BTreeRootPtrPage.getPageSize()];
-				int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
+				byte pageBuf[] = PageFileChannel.borrowBuffer(BTreeRootPtrPage.getPageSize());
+				int retval = channel.read(pageBuf, 0, 0);
 				if (retval == -1) {
 					throw new IllegalArgumentException("Read past end of table");
 				}
@@ -102,15 +100,10 @@ public class BTreeFile implements DbFile {
 							+ BTreeRootPtrPage.getPageSize() + " bytes from BTreeFile");
 				}
 				Debug.log(Debug.LEVEL_DEBUG, "BTreeFile.readPage: read page %d", id.getPageNumber());
-				return new BTreeRootPtrPage(id, pageBuf);
+				return newPage(id, pageBuf);
 			} else {
-				byte pageBuf[] = new byte[BufferPool.getPageSize()];
-				if (bis.skip(BTreeRootPtrPage.getPageSize() + (id.getPageNumber() - 1) * BufferPool.getPageSize()) !=
-						BTreeRootPtrPage.getPageSize() + (id.getPageNumber() - 1) * BufferPool.getPageSize()) {
-					throw new IllegalArgumentException(
-							"Unable to seek to correct place in BTreeFile");
-				}
-				int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
+				byte pageBuf[] = PageFileChannel.borrowBuffer(BufferPool.getPageSize());
+				int retval = channel.read(pageBuf, 0, pageOffset(id.getPageNumber()));
 				if (retval == -1) {
 					throw new IllegalArgumentException("Read past end of table");
 				}
@@ -119,24 +112,39 @@ public class BTreeFile implements DbFile {
 							+ BufferPool.getPageSize() + " bytes from BTreeFile");
 				}
 				Debug.log(Debug.LEVEL_DEBUG, "BTreeFile.readPage: read page %d", id.getPageNumber());
-				if (id.pgcateg() == BTreePageId.INTERNAL) {
-					return new BTreeInternalPage(id, pageBuf, keyField);
-				} else if (id.pgcateg() == BTreePageId.LEAF) {
-					return new BTreeLeafPage(id, pageBuf, keyField);
-				} else { // id.pgcateg() == BTreePageId.HEADER
-					return new BTreeHeaderPage(id, pageBuf);
-				}
+				return newPage(id, pageBuf);
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
-		} finally {
-			// Close the file on success or error
-			try {
-				if (bis != null)
-					bis.close();
-			} catch (IOException ioe) {
-				// Ignore failures closing the file
-			}
+		}
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid, ByteBuffer image) {
+		BTreePageId id = (BTreePageId) pid;
+		int size = id.pgcateg() == BTreePageId.ROOT_PTR ? BTreeRootPtrPage.getPageSize() : BufferPool.getPageSize();
+		if (image.remaining() != size) {
+			return null;
+		}
+		// B+树的page构造函数只接受数组 先拷到线程本地的buffer里
+		byte[] pageBuf = PageFileChannel.borrowBuffer(size);
+		image.get(pageBuf);
+		try {
+			return newPage(id, pageBuf);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Page newPage(BTreePageId id, byte[] pageBuf) throws IOException {
+		if (id.pgcateg() == BTreePageId.ROOT_PTR) {
+			return new BTreeRootPtrPage(id, pageBuf);
+		} else if (id.pgcateg() == BTreePageId.INTERNAL) {
+			return new BTreeInternalPage(id, pageBuf, keyField);
+		} else if (id.pgcateg() == BTreePageId.LEAF) {
+			return new BTreeLeafPage(id, pageBuf, keyField);
+		} else { // id.pgcateg() == BTreePageId.HEADER
+			return new BTreeHeaderPage(id, pageBuf);
 		}
 	}
 
@@ -150,17 +158,51 @@ public class BTreeFile implements DbFile {
 		BTreePageId id = (BTreePageId) page.getId();
 
 		byte[] data = page.getPageData();
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
 		if (id.pgcateg() == BTreePageId.ROOT_PTR) {
-			rf.write(data);
-			rf.close();
+			channel.write(data, 0);
 		} else {
-			rf.seek(BTreeRootPtrPage.getPageSize() + (page.getId().getPageNumber() - 1) * BufferPool.getPageSize());
-			rf.write(data);
-			rf.close();
+			channel.write(data, pageOffset(id.getPageNumber()));
 		}
 	}
 
+	/**
+	 * Write several pages to disk, sorted by their offset in the file, with
+	 * runs of adjacent pages coalesced into single writes.
+	 *
+	 * @param pages - the pages to write, in any order
+	 */
+	public void writePages(List<Page> pages) throws IOException {
+		List<Page> sorted = new ArrayList<>(pages);
+		sorted.sort(Comparator.comparingLong(BTreeFile::offsetOf));
+		channel.writePages(sorted, BTreeFile::offsetOf);
+	}
+
+	private static long offsetOf(Page page) {
+		BTreePageId id = (BTreePageId) page.getId();
+		return id.pgcateg() == BTreePageId.ROOT_PTR ? 0 : pageOffset(id.getPageNumber());
+	}
+
+	/**
+	 * Force the pages written so far to the storage device.
+	 */
+	public void force() throws IOException {
+		channel.force();
+	}
+
+	/**
+	 * Close the file channel of this BTreeFile. It is reopened on the next page I/O.
+	 */
+	public void close() {
+		channel.close();
+	}
+
+	/**
+	 * Returns the offset in the file of a non root pointer page.
+	 */
+	private static long pageOffset(int pgNo) {
+		return BTreeRootPtrPage.getPageSize() + (long) (pgNo - 1) * BufferPool.getPageSize();
+	}
+
 	/**
 	 * Returns the number of pages in this BTreeFile.
 	 */
@@ -830,13 +872,10 @@ public class BTreeFile implements DbFile {
 		synchronized (this) {
 			if (f.length() == 0) {
 				// create the root pointer page and the root page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
 				byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
 				byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
-				bw.write(emptyRootPtrData);
-				bw.write(emptyLeafData);
-				bw.close();
+				channel.append(emptyRootPtrData);
+				channel.append(emptyLeafData);
 			}
 		}
 
@@ -890,11 +929,8 @@ public class BTreeFile implements DbFile {
 		if (headerId == null) {
 			synchronized (this) {
 				// create the new page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
 				byte[] emptyData = BTreeInternalPage.createEmptyPageData();
-				bw.write(emptyData);
-				bw.close();
+				channel.append(emptyData);
 				emptyPageNo = numPages();
 			}
 		}
@@ -924,10 +960,7 @@ public class BTreeFile implements DbFile {
 		BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 
 		// write empty page to disk
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
-		rf.seek(BTreeRootPtrPage.getPageSize() + (emptyPageNo - 1) * BufferPool.getPageSize());
-		rf.write(BTreePage.createEmptyPageData());
-		rf.close();
+		channel.write(BTreePage.createEmptyPageData(), pageOffset(emptyPageNo));
 
 		// make sure the page is not in the buffer pool	or in the local cache		
 		Database.getBufferPool().discardPage(newPageId);
@@ -1057,6 +1090,8 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 
 	Iterator<Tuple> it = null;
 	BTreeLeafPage curp = null;
+	// 还要读多少个叶子节点才发起下一次预读
+	int leavesUntilPrefetch = 0;
 
 	TransactionId tid;
 	BTreeFile f;
@@ -1101,6 +1136,7 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 			} else {
 				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
 						nextp, Permissions.READ_ONLY);
+				prefetchSiblings();
 				it = curp.iterator();
 				if (!it.hasNext())
 					it = null;
@@ -1112,6 +1148,20 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 		return it.next();
 	}
 
+	/**
+	 * Read ahead along the right sibling chain once the leaves prefetched by the
+	 * previous request are half consumed.
+	 */
+	private void prefetchSiblings() {
+		if (--leavesUntilPrefetch > 0) {
+			return;
+		}
+		PagePrefetcher prefetcher = Database.getBufferPool().getPrefetcher();
+		int depth = prefetcher.getMaxDepth();
+		prefetcher.prefetchSiblings(curp.getRightSiblingId(), depth);
+		leavesUntilPrefetch = Math.max(1, depth / 2);
+	}
+
 	/**
 	 * rewind this iterator back to the beginning of the tuples
 	 */
@@ -1127,6 +1177,7 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 		super.close();
 		it = null;
 		curp = null;
+		leavesUntilPrefetch = 0;
 	}
 }
 
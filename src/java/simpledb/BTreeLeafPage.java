@@ -17,7 +17,8 @@ import java.util.NoSuchElementException;
  */
 public class BTreeLeafPage extends BTreePage {
 	private final byte header[];
-	private final Tuple tuples[];
+	// tuple在第一次被访问的时候才解码
+	private final TupleSlots tuples;
 	private final int numSlots;
 
 	private int leftSibling; // leaf node or 0
@@ -76,14 +77,8 @@ public class BTreeLeafPage extends BTreePage {
 		for (int i = 0; i < header.length; i++)
 			header[i] = dis.readByte();
 
-		tuples = new Tuple[numSlots];
-		try {
-			// allocate and read the actual records of this page
-			for (int i = 0; i < tuples.length; i++)
-				tuples[i] = readNextTuple(dis, i);
-		} catch (NoSuchElementException e) {
-			e.printStackTrace();
-		}
+		// keep the raw records of this page, they are decoded on demand
+		tuples = new TupleSlots(id, td, numSlots, dis);
 		dis.close();
 
 		setBeforeImage();
@@ -157,40 +152,6 @@ public class BTreeLeafPage extends BTreePage {
 		}
 	}
 
-	/**
-	 * Read tuples from the source file.
-	 */
-	private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-		// if associated bit is not set, read forward to the next tuple, and
-		// return null.
-		if (!isSlotUsed(slotId)) {
-			for (int i = 0; i < td.getSize(); i++) {
-				try {
-					dis.readByte();
-				} catch (IOException e) {
-					throw new NoSuchElementException("error reading empty tuple");
-				}
-			}
-			return null;
-		}
-
-		// read fields in the tuple
-		Tuple t = new Tuple(td);
-		RecordId rid = new RecordId(pid, slotId);
-		t.setRecordId(rid);
-		try {
-			for (int j = 0; j < td.numFields(); j++) {
-				Field f = td.getFieldType(j).parse(dis);
-				t.setField(j, f);
-			}
-		} catch (java.text.ParseException e) {
-			e.printStackTrace();
-			throw new NoSuchElementException("parsing error!");
-		}
-
-		return t;
-	}
-
 	/**
 	 * Generates a byte array representing the contents of this page.
 	 * Used to serialize this page to disk.
@@ -238,7 +199,7 @@ public class BTreeLeafPage extends BTreePage {
 		}
 
 		// create the tuples
-		for (int i = 0; i < tuples.length; i++) {
+		for (int i = 0; i < numSlots; i++) {
 
 			// empty slot
 			if (!isSlotUsed(i)) {
@@ -253,20 +214,16 @@ public class BTreeLeafPage extends BTreePage {
 				continue;
 			}
 
-			// non-empty slot
-			for (int j = 0; j < td.numFields(); j++) {
-				Field f = tuples[i].getField(j);
-				try {
-					f.serialize(dos);
-
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+			// non-empty slot, not decoded slots are copied as is
+			try {
+				tuples.write(i, dos);
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
 		}
 
 		// padding
-		int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length
+		int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * numSlots
 				+ 3 * INDEX_SIZE); //- numSlots * td.getSize();
 		byte[] zeroes = new byte[zerolen];
 		try {
@@ -335,7 +292,8 @@ public class BTreeLeafPage extends BTreePage {
 		Field key = t.getField(keyField);
 		for (int i = 0; i < numSlots; i++) {
 			if (isSlotUsed(i)) {
-				if (tuples[i].getField(keyField).compare(Predicate.Op.LESS_THAN_OR_EQ, key))
+				// 只解码key字段 不用把整个tuple解出来
+				if (tuples.getField(i, keyField).compare(Predicate.Op.LESS_THAN_OR_EQ, key))
 					lessOrEqKey = i;
 				else
 					break;
@@ -364,7 +322,7 @@ public class BTreeLeafPage extends BTreePage {
 				pid.getPageNumber(), goodSlot);
 		RecordId rid = new RecordId(pid, goodSlot);
 		t.setRecordId(rid);
-		tuples[goodSlot] = t;
+		tuples.set(goodSlot, t);
 	}
 
 	/**
@@ -374,9 +332,7 @@ public class BTreeLeafPage extends BTreePage {
 	private void moveRecord(int from, int to) {
 		if (!isSlotUsed(to) && isSlotUsed(from)) {
 			markSlotUsed(to, true);
-			RecordId rid = new RecordId(pid, to);
-			tuples[to] = tuples[from];
-			tuples[to].setRecordId(rid);
+			tuples.move(from, to);
 			markSlotUsed(from, false);
 		}
 	}
@@ -502,6 +458,35 @@ public class BTreeLeafPage extends BTreePage {
 		return new BTreeLeafPageReverseIterator(this);
 	}
 
+	/**
+	 * Return one field of the tuple in the given slot, without decoding the
+	 * rest of the tuple.
+	 *
+	 * @throws NoSuchElementException if the slot is empty
+	 */
+	public Field getField(int slot, int field) {
+		checkUsed(slot);
+		return tuples.getField(slot, field);
+	}
+
+	/**
+	 * Return the value of an INT_TYPE field of the tuple in the given slot,
+	 * without allocating a Tuple or Field.
+	 *
+	 * @throws NoSuchElementException   if the slot is empty
+	 * @throws IllegalArgumentException if the field is not an int
+	 */
+	public int getInt(int slot, int field) {
+		checkUsed(slot);
+		return tuples.getInt(slot, field);
+	}
+
+	private void checkUsed(int slot) {
+		if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+			throw new NoSuchElementException("slot " + slot + " is empty");
+		}
+	}
+
 	/**
 	 * protected method used by the iterator to get the ith tuple out of this page
 	 *
@@ -511,7 +496,7 @@ public class BTreeLeafPage extends BTreePage {
 	 */
 	Tuple getTuple(int i) throws NoSuchElementException {
 
-		if (i >= tuples.length)
+		if (i >= numSlots)
 			throw new NoSuchElementException();
 
 		try {
@@ -523,7 +508,7 @@ public class BTreeLeafPage extends BTreePage {
 			}
 
 			Debug.log(Debug.LEVEL_DEBUG, "BTreeLeafPage.getTuple: returning tuple %d", i);
-			return tuples[i];
+			return tuples.get(i);
 
 		} catch (ArrayIndexOutOfBoundsException e) {
 			throw new NoSuchElementException();
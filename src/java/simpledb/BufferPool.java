@@ -1,8 +1,23 @@
 package simpledb;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -12,8 +27,34 @@ import java.util.Iterator;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Resident pages are kept in a lock-striped {@link PageTable}, so concurrent
+ * hits on different pages do not serialize on a global monitor. Optionally a
+ * {@link PageArena} of off-heap frames keeps the images of clean pages
+ * evicted from the table, which lets the pool grow in bytes without growing
+ * the Java heap. Below that, an optional {@link CompressedPageCache} keeps
+ * the images of evicted clean pages compressed, so a working set a few times
+ * larger than the pool is served without disk reads.
+ * <p>
+ * By default the pool is NO STEAL: a page dirtied by a running transaction
+ * stays in memory until the transaction completes. In STEAL mode a
+ * {@link PageCleaner} writes such pages back ahead of eviction, after logging
+ * them, and the pool keeps their before-images to undo them on abort.
+ * <p>
+ * In NO FORCE mode, which requires STEAL, a commit only logs the pages of the
+ * transaction and forces the log. The pages stay dirty, marked as
+ * {@link #COMMITTED}, until the cleaner writes them back, and
+ * {@link LogFile#recover()} redoes them after a crash.
+ * <p>
+ * Thread safety: the PageTable synchronizes lookups, loads and evictions
+ * per partition. insertTuple and deleteTuple hold the read side of the
+ * mutation latch, and the PageCleaner holds the write side while it writes
+ * pages back. The mode switches ({@link #setSteal}, {@link #setForce}), the
+ * compressed cache and the access trace are volatile and may be changed
+ * while the pool is in use; later calls see the new setting. So may the
+ * capacity ({@link #resize}) and the quotas.
  *
- * @Threadsafe, all fields are final
+ * @Threadsafe
  */
 public class BufferPool {
 	/**
@@ -22,13 +63,45 @@ public class BufferPool {
 	 * constructor instead.
 	 */
 	public static final int DEFAULT_PAGES = 50;
+	/**
+	 * Clean pages evicted per step while a shrunk pool gives back memory.
+	 */
+	static final int SHRINK_BATCH_PAGES = 16;
+	private static final long SHRINK_PAUSE_MS = 1;
 	/**
 	 * Bytes per page, including header.
 	 */
 	private static final int DEFAULT_PAGE_SIZE = 4096;
 	private static int pageSize = DEFAULT_PAGE_SIZE;
 
-	private PageLruCache pages;
+	private final PageTable pages;
+	private final PagePrefetcher prefetcher;
+	// 堆外的第二层缓存 为null时不启用
+	private final PageArena arena;
+	// 压缩的第二层缓存 为null时不启用
+	private volatile CompressedPageCache compressed;
+
+	// 可选的page访问记录 用于PageTraceReplay回放
+	private volatile PrintWriter accessTrace;
+
+	/**
+	 * Marks the dirty pages whose changes are committed but not written back
+	 * yet, in NO FORCE mode.
+	 */
+	public static final TransactionId COMMITTED = new TransactionId();
+
+	// 每次resize加一 旧的缩容线程看到后退出
+	private final AtomicInteger resizeGeneration = new AtomicInteger();
+
+	private final PageCleaner cleaner;
+	private volatile boolean steal;
+	private volatile boolean force = true;
+	// insertTuple/deleteTuple持有读锁 cleaner写page时持有写锁 保证不会写出修改了一半的page
+	private final ReentrantReadWriteLock mutationLatch = new ReentrantReadWriteLock();
+	// STEAL模式下 未提交就写回磁盘的page的before image abort时写回去
+	private final Map<TransactionId, Map<PageId, Page>> stolen = new ConcurrentHashMap<>();
+
+	private final BufferPoolStats stats = new BufferPoolStats();
 
 	/**
 	 * Creates a BufferPool that caches up to numPages pages.
@@ -37,8 +110,302 @@ public class BufferPool {
 	 */
 	public BufferPool(int numPages) {
 		// some code goes here
-		this.pages = new PageLruCache(numPages);
+		this(numPages, ReplacementPolicy.Type.LRU);
+	}
+
+	/**
+	 * Creates a BufferPool that caches up to numPages pages and evicts them
+	 * with the given replacement policy.
+	 *
+	 * @param numPages maximum number of pages in this buffer pool.
+	 * @param policy   the page replacement policy
+	 */
+	public BufferPool(int numPages, ReplacementPolicy.Type policy) {
+		this(numPages, policy, 0);
+	}
+
+	/**
+	 * Creates a BufferPool that caches up to numPages decoded pages on the
+	 * Java heap, backed by off-heap frames of offHeapBytes bytes in total for
+	 * the images of clean pages evicted from the heap.
+	 *
+	 * @param numPages     maximum number of decoded pages in this buffer pool.
+	 * @param policy       the page replacement policy of the decoded pages
+	 * @param offHeapBytes bytes of the off-heap frames, 0 to disable them
+	 */
+	public BufferPool(int numPages, ReplacementPolicy.Type policy, long offHeapBytes) {
+		this.pages = new PageTable(numPages, policy);
+		this.prefetcher = new PagePrefetcher(this, numPages);
+		if (offHeapBytes >= getPageSize()) {
+			this.arena = new PageArena(offHeapBytes, getPageSize());
+		} else {
+			this.arena = null;
+		}
+		this.pages.setEvictionListener(new PageTable.EvictionListener() {
+			@Override
+			public void evicted(Page page) {
+				stats.evicted();
+				CompressedPageCache c = compressed;
+				if (arena != null && arena.store(page)) {
+					// 压缩缓存里可能还有更早的版本
+					if (c != null) {
+						c.remove(page.getId());
+					}
+					return;
+				}
+				if (c != null && !c.store(page)) {
+					c.remove(page.getId());
+				}
+			}
+
+			@Override
+			public void evictionFailed(PageId pid) {
+				stats.evictionFailed();
+			}
+		});
+		this.cleaner = new PageCleaner(this);
+	}
+
+	/**
+	 * Switch between STEAL and NO STEAL mode. In STEAL mode the background
+	 * {@link PageCleaner} runs, and dirty pages of running transactions may be
+	 * written to disk before they commit.
+	 */
+	public void setSteal(boolean steal) throws IOException {
+		if (!steal && !force) {
+			setForce(true);
+		}
+		this.steal = steal;
+		if (steal) {
+			cleaner.start();
+		} else {
+			cleaner.stop();
+		}
+	}
+
+	public boolean isSteal() {
+		return this.steal;
+	}
+
+	/**
+	 * Switch between FORCE and NO FORCE mode. In NO FORCE mode a transaction
+	 * which logged its BEGIN record commits by logging its pages; they are
+	 * written back later by the cleaner. NO FORCE requires STEAL. Switching
+	 * back to FORCE writes back the pages of committed transactions.
+	 */
+	public void setForce(boolean force) throws IOException {
+		if (!force && !steal) {
+			throw new IllegalStateException("NO FORCE requires STEAL");
+		}
+		this.force = force;
+		if (force) {
+			mutationLatch.writeLock().lock();
+			try {
+				writeBack(dirtyPages(COMMITTED));
+			} finally {
+				mutationLatch.writeLock().unlock();
+			}
+		}
+	}
+
+	public boolean isForce() {
+		return this.force;
+	}
+
+	/**
+	 * @return the background page cleaner of this buffer pool
+	 */
+	public PageCleaner getCleaner() {
+		return this.cleaner;
+	}
+
+	/**
+	 * Stop the background threads of this buffer pool. Called when the pool
+	 * is replaced.
+	 */
+	void close() {
+		cleaner.stop();
+	}
+
+	/**
+	 * Change the number of pages this buffer pool caches while it is in use.
+	 * Growing takes effect at once. After shrinking, a background thread
+	 * evicts clean pages in small batches, and every miss evicts one extra
+	 * page, so the pool gives back memory gradually instead of dropping its
+	 * cache at once. Dirty pages are never evicted to shrink the pool.
+	 *
+	 * @param numPages the new maximum number of pages in this buffer pool
+	 */
+	public void resize(int numPages) {
+		pages.resize(numPages);
+		prefetcher.setPoolPages(numPages);
+		int generation = resizeGeneration.incrementAndGet();
+		if (pages.bytes() <= pages.capacityBytes()) {
+			return;
+		}
+		Thread shrinker = new Thread(() -> shrink(generation), "simpledb-shrink");
+		shrinker.setDaemon(true);
+		shrinker.start();
+	}
+
+	private void shrink(int generation) {
+		while (generation == resizeGeneration.get() && pages.bytes() > pages.capacityBytes()) {
+			// 没有干净的page可以淘汰了 剩下的交给之后的miss
+			if (pages.trim(SHRINK_BATCH_PAGES) == 0) {
+				break;
+			}
+			try {
+				Thread.sleep(SHRINK_PAUSE_MS);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+		Debug.log(Debug.LEVEL_DEBUG, "[BufferPool#resize] %d pages resident, capacity %d",
+				pages.size(), pages.capacity());
+	}
+
+	/**
+	 * Set the buffer quota of a table, see {@link BufferQuota}. Usually called
+	 * through {@link Catalog#setBufferQuota(int, BufferQuota)}.
+	 */
+	public void setQuota(int tableId, BufferQuota quota) {
+		pages.setQuota(tableId, quota);
+	}
+
+	/**
+	 * @return size, capacity and hit ratio of every shared partition and
+	 * every dedicated pool
+	 */
+	public List<PageTable.PartitionStats> getPartitionStats() {
+		return pages.stats();
+	}
+
+	/**
+	 * Write the ids of the resident pages to a manifest, the most recently
+	 * used first, for {@link #warmUp(File)} after a restart.
+	 */
+	public void writeManifest(File manifest) throws IOException {
+		PageManifest.write(manifest, pages.hotPages());
+	}
+
+	/**
+	 * Load the pages listed in a manifest written by
+	 * {@link #writeManifest(File)}. Only the hottest pages which fit in the
+	 * pool are loaded, in file offset order, by the background I/O threads of
+	 * the prefetcher. The call returns at once, so traffic is admitted while
+	 * the pool warms up. Pages of tables which are no longer in the catalog
+	 * are skipped.
+	 *
+	 * @return the number of pages queued for loading
+	 */
+	public int warmUp(File manifest) {
+		List<PageId> load = new ArrayList<>();
+		long bytes = 0;
+		for (PageId pid : PageManifest.read(manifest)) {
+			if (onDisk(pid)) {
+				bytes += Database.getCatalog().getDatabaseFile(pid.getTableId()).getPageSize();
+				if (bytes > pages.capacityBytes()) {
+					break;
+				}
+				load.add(pid);
+			}
+		}
+		// 按文件和page号排序 后台线程按顺序读 磁盘上基本是顺序IO
+		load.sort(Comparator.comparingInt(PageId::getTableId).thenComparingInt(PageId::getPageNumber));
+		for (PageId pid : load) {
+			prefetcher.prefetch(pid);
+		}
+		Debug.log(Debug.LEVEL_DEBUG, "[BufferPool#warmUp] loading %d pages from %s", load.size(), manifest);
+		return load.size();
+	}
+
+	private static boolean onDisk(PageId pid) {
+		DbFile file;
+		try {
+			file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+		} catch (NoSuchElementException e) {
+			return false;
+		}
+		if (file instanceof HeapFile) {
+			return pid.getPageNumber() < ((HeapFile) file).numPages();
+		}
+		if (file instanceof BTreeFile) {
+			return pid.getPageNumber() <= ((BTreeFile) file).numPages();
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of pages resident in this buffer pool
+	 */
+	public int numPages() {
+		return pages.size();
+	}
 
+	/**
+	 * @return the maximum number of pages in this buffer pool, in pages of
+	 * {@link #getPageSize()}; a page of a larger page size takes several
+	 */
+	public int getCapacity() {
+		return pages.capacity();
+	}
+
+	/**
+	 * @return the capacity of this buffer pool in bytes
+	 */
+	public long getCapacityBytes() {
+		return pages.capacityBytes();
+	}
+
+	/**
+	 * @return the current values of the counters of this buffer pool
+	 */
+	public BufferPoolStats.Snapshot getStats() {
+		return stats.snapshot(dirtyPages(null).size());
+	}
+
+	/**
+	 * Set the counters of this buffer pool back to zero
+	 */
+	public void resetStats() {
+		stats.reset();
+	}
+
+	/**
+	 * @return the off-heap frames of this buffer pool, or null if it has none
+	 */
+	public PageArena getArena() {
+		return this.arena;
+	}
+
+	/**
+	 * Keep the clean pages evicted from this buffer pool compressed in memory,
+	 * in at most budgetBytes bytes. A budget of 0 drops the cache.
+	 */
+	public void setCompressedCache(long budgetBytes) {
+		this.compressed = budgetBytes > 0 ? new CompressedPageCache(budgetBytes) : null;
+	}
+
+	/**
+	 * @return the compressed page cache of this buffer pool, or null if it has none
+	 */
+	public CompressedPageCache getCompressedCache() {
+		return this.compressed;
+	}
+
+	/**
+	 * @return the read-ahead prefetcher of this buffer pool
+	 */
+	public PagePrefetcher getPrefetcher() {
+		return this.prefetcher;
+	}
+
+	/**
+	 * Record every getPage call as a "tableId pageNo" line, to be replayed by
+	 * {@link PageTraceReplay}. Pass null to stop recording.
+	 */
+	public void setAccessTrace(PrintWriter trace) {
+		this.accessTrace = trace;
 	}
 
 	public static int getPageSize() {
@@ -73,10 +440,9 @@ public class BufferPool {
 	public Page getPage(TransactionId tid, PageId pid, Permissions perm)
 			throws TransactionAbortedException, DbException {
 		// some code goes here
-		if (!pages.containsKey(pid)) {
-			DbFile dbFile = Database.getCatalog().getDatabaseFile(pid.getTableId());
-			Page p = dbFile.readPage(pid);
-			this.pages.put(pid, p);
+		PrintWriter trace = this.accessTrace;
+		if (trace != null) {
+			trace.println(pid.getTableId() + " " + pid.getPageNumber());
 		}
 
 		if (!Database.getLockManager().acquireLock(tid, pid, perm)) {
@@ -85,7 +451,202 @@ public class BufferPool {
 
 		Debug.log(Debug.LEVEL_DEBUG, "[BufferPool#getPage] acquire success tid=%d, tableId=%d, pageNo=%d, perm=%s",
 				tid.getId(), pid.getTableId(), pid.getPageNumber(), perm.toString());
-		return pages.get(pid);
+		Page page = pages.get(pid);
+		if (page != null) {
+			stats.hit(pid);
+			return page;
+		}
+		stats.miss(pid);
+		return load(tid, pid);
+	}
+
+	private Page load(TransactionId tid, PageId pid) throws DbException {
+		try {
+			return pages.getOrLoad(pid, this::readPage);
+		} catch (DbException e) {
+			if (!steal || !makeRoom(tid, pid)) {
+				throw e;
+			}
+			return pages.getOrLoad(pid, this::readPage);
+		}
+	}
+
+	/**
+	 * Asynchronous variant of {@link #getPage(TransactionId, PageId, Permissions)}.
+	 * The lock is acquired on the calling thread, which may block as in
+	 * getPage. A resident page is returned in a completed future; a missing
+	 * page is read on the I/O threads of {@link PageIO}, so the caller can
+	 * issue many reads before waiting for any of them.
+	 *
+	 * @return a future completed with the page, or exceptionally with a
+	 * {@link TransactionAbortedException} or {@link DbException}
+	 */
+	public CompletableFuture<Page> getPageAsync(TransactionId tid, PageId pid, Permissions perm) {
+		PrintWriter trace = this.accessTrace;
+		if (trace != null) {
+			trace.println(pid.getTableId() + " " + pid.getPageNumber());
+		}
+		if (!Database.getLockManager().acquireLock(tid, pid, perm)) {
+			return PageIO.failed(new TransactionAbortedException());
+		}
+		Page page = pages.get(pid);
+		if (page != null) {
+			stats.hit(pid);
+			return CompletableFuture.completedFuture(page);
+		}
+		stats.miss(pid);
+		CompletableFuture<Page> res = new CompletableFuture<>();
+		try {
+			PageIO.executor().execute(() -> {
+				try {
+					res.complete(load(tid, pid));
+				} catch (DbException | RuntimeException e) {
+					res.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			res.completeExceptionally(e);
+		}
+		return res;
+	}
+
+	/**
+	 * Write back dirty pages in the foreground because the cleaner did not
+	 * keep up, STEAL mode only.
+	 *
+	 * @return true if any page was written
+	 */
+	private boolean makeRoom(TransactionId tid, PageId pid) throws DbException {
+		try {
+			// 没有在修改page的时候可以拿latch写所有的脏page
+			if (mutationLatch.getReadHoldCount() == 0 && mutationLatch.writeLock().tryLock()) {
+				try {
+					List<Page> dirty = dirtyPages(null);
+					steal(dirty);
+					return !dirty.isEmpty();
+				} finally {
+					mutationLatch.writeLock().unlock();
+				}
+			}
+			// 否则只写自己的脏page 只有自己在改 不用latch
+			List<Page> own = dirtyPages(tid);
+			own.removeIf(p -> p.getId().equals(pid));
+			steal(own);
+			return !own.isEmpty();
+		} catch (IOException e) {
+			throw new DbException("could not write back dirty pages: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Retrieve the specified page for a bulk read, e.g. a large sequential scan.
+	 * Behaves like {@link #getPage(TransactionId, PageId, Permissions)}, except
+	 * that a READ_ONLY page which is not resident is read into the given ring
+	 * instead of the buffer pool, so the scan does not evict other pages.
+	 *
+	 * @param ring the private frames of the scan, or null to use the buffer pool
+	 */
+	public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+			throws TransactionAbortedException, DbException {
+		if (ring == null || perm != Permissions.READ_ONLY) {
+			return getPage(tid, pid, perm);
+		}
+		if (!Database.getLockManager().acquireLock(tid, pid, perm)) {
+			throw new TransactionAbortedException();
+		}
+		Page page = pages.get(pid);
+		if (page != null) {
+			stats.hit(pid);
+			return page;
+		}
+		stats.miss(pid);
+		return ring.getOrLoad(pid, this::readRingPage);
+	}
+
+	/**
+	 * Bring a page into the buffer pool without locking it, used by the
+	 * prefetcher. The page is only read from disk if it is not resident.
+	 */
+	Page loadPage(PageId pid) throws DbException {
+		return pages.getOrLoad(pid, this::readPage);
+	}
+
+	/**
+	 * @return the resident version of the page, or null. No lock is taken and
+	 * the access is not recorded.
+	 */
+	Page peekPage(PageId pid) {
+		return pages.peek(pid);
+	}
+
+	/**
+	 * @return true if the page is resident in the buffer pool
+	 */
+	boolean isResident(PageId pid) {
+		return pages.containsKey(pid);
+	}
+
+	/**
+	 * Read a page from its DbFile. Called by the page table on a miss, at most
+	 * once per page at a time.
+	 */
+	private Page readPage(PageId pid) {
+		if (arena != null) {
+			Page page = arena.take(pid, BufferPool::decode);
+			if (page != null) {
+				return page;
+			}
+		}
+		CompressedPageCache c = compressed;
+		if (c != null) {
+			Page page = c.take(pid, BufferPool::decode);
+			if (page != null) {
+				return page;
+			}
+		}
+		return readFromFile(pid);
+	}
+
+	/**
+	 * Read a page for a buffer ring. The image stays in the off-heap frames,
+	 * the ring only holds a private copy.
+	 */
+	private Page readRingPage(PageId pid) {
+		if (arena != null) {
+			Page page = arena.peek(pid, BufferPool::decode);
+			if (page != null) {
+				return page;
+			}
+		}
+		CompressedPageCache c = compressed;
+		if (c != null) {
+			Page page = c.peek(pid, BufferPool::decode);
+			if (page != null) {
+				return page;
+			}
+		}
+		return readFromFile(pid);
+	}
+
+	private Page readFromFile(PageId pid) {
+		DbFile dbFile = Database.getCatalog().getDatabaseFile(pid.getTableId());
+		long start = System.nanoTime();
+		Page page = dbFile.readPage(pid);
+		stats.read(1, dbFile.getPageSize(), System.nanoTime() - start);
+		return page;
+	}
+
+	/**
+	 * Write pages of one file and count them
+	 */
+	private void writePages(DbFile table, List<Page> batch) throws IOException {
+		long start = System.nanoTime();
+		table.writePages(batch);
+		stats.write(batch.size(), (long) batch.size() * table.getPageSize(), System.nanoTime() - start);
+	}
+
+	private static Page decode(PageId pid, ByteBuffer image) {
+		return Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid, image);
 	}
 
 	/**
@@ -135,18 +696,46 @@ public class BufferPool {
 		// some code goes here
 		// not necessary for lab1|lab2
 
-		if (commit) {
-			flushPages(tid);
-		} else {
-			Iterator<PageLruCache.PageNode> iterator = this.pages.iterator();
-			while (iterator.hasNext()) {
-				PageLruCache.PageNode entry = iterator.next();
-				if (tid.equals(entry.page.isDirty())) {
-					discardPage(entry.pageId);
+		mutationLatch.readLock().lock();
+		try {
+			Map<PageId, Page> undo = stolen.remove(tid);
+			if (commit) {
+				flushPages(tid);
+				// 提交前已经写回的page(flushAllPages或STEAL)也要更新before image
+				for (PageId pid : Database.getLockManager().relatedPages(tid)) {
+					Page page = this.pages.peek(pid);
+					if (page != null) {
+						page.setBeforeImage();
+					}
+				}
+			} else {
+				for (Page page : this.pages.pages()) {
+					if (!tid.equals(page.isDirty())) {
+						continue;
+					}
+					if (force) {
+						discardPage(page.getId());
+					} else {
+						// NO FORCE时before image里可能有还没写回的已提交修改 不能直接丢掉
+						Page before = page.getBeforeImage();
+						before.markDirty(true, COMMITTED);
+						try {
+							this.pages.put(page.getId(), before);
+						} catch (DbException e) {
+							throw new IOException(e.getMessage());
+						}
+					}
+				}
+				if (undo != null) {
+					rollbackStolen(undo);
 				}
 			}
+		} finally {
+			mutationLatch.readLock().unlock();
 		}
 
+		// 回滚以后 被这个事务填满的page又有空位了
+		FreeSpaceMap.transactionComplete(tid, commit);
 		Database.getLockManager().completeTransaction(tid);
 	}
 
@@ -170,10 +759,16 @@ public class BufferPool {
 		// some code goes here
 		// not necessary for lab1
 		DbFile dbFile = Database.getCatalog().getDatabaseFile(tableId);
-		ArrayList<Page> affectPages = dbFile.insertTuple(tid, t);
-		for (Page page : affectPages) {
-			page.markDirty(true, tid);
+		mutationLatch.readLock().lock();
+		try {
+			ArrayList<Page> affectPages = dbFile.insertTuple(tid, t);
+			for (Page page : affectPages) {
+				this.pages.markDirty(page, tid);
+			}
+		} finally {
+			mutationLatch.readLock().unlock();
 		}
+		cleaner.dirtied();
 	}
 
 	/**
@@ -194,10 +789,16 @@ public class BufferPool {
 		// some code goes here
 		// not necessary for lab1
 		DbFile dbFile = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
-		ArrayList<Page> affectPages = dbFile.deleteTuple(tid, t);
-		for (Page page : affectPages) {
-			page.markDirty(true, tid);
+		mutationLatch.readLock().lock();
+		try {
+			ArrayList<Page> affectPages = dbFile.deleteTuple(tid, t);
+			for (Page page : affectPages) {
+				this.pages.markDirty(page, tid);
+			}
+		} finally {
+			mutationLatch.readLock().unlock();
 		}
+		cleaner.dirtied();
 	}
 
 	/**
@@ -205,16 +806,16 @@ public class BufferPool {
 	 * NB: Be careful using this routine -- it writes dirty data to disk so will
 	 * break simpledb if running in NO STEAL mode.
 	 */
-	public synchronized void flushAllPages() throws IOException {
+	public void flushAllPages() throws IOException {
 		// some code goes here
 		// not necessary for lab1
-		Iterator<PageLruCache.PageNode> iterator = this.pages.iterator();
-		while (iterator.hasNext()) {
-			PageLruCache.PageNode entry = iterator.next();
-			if (entry.page != null) {
-				this.flushPage(entry.pageId);
+		List<Page> dirty = new ArrayList<>();
+		for (Page page : this.pages.pages()) {
+			if (page.isDirty() != null) {
+				dirty.add(page);
 			}
 		}
+		writeBack(dirty);
 	}
 
 	/**
@@ -226,10 +827,25 @@ public class BufferPool {
 	 * Also used by B+ tree files to ensure that deleted pages
 	 * are removed from the cache so they can be reused safely
 	 */
-	public synchronized void discardPage(PageId pid) {
+	public void discardPage(PageId pid) {
 		// some code goes here
 		// not necessary for lab1
 		this.pages.remove(pid);
+		dropImage(pid);
+	}
+
+	/**
+	 * Drop the images of the page kept below the page table, because the page
+	 * on disk changed or was discarded.
+	 */
+	private void dropImage(PageId pid) {
+		if (arena != null) {
+			arena.remove(pid);
+		}
+		CompressedPageCache c = compressed;
+		if (c != null) {
+			c.remove(pid);
+		}
 	}
 
 	/**
@@ -237,56 +853,190 @@ public class BufferPool {
 	 *
 	 * @param pid an ID indicating the page to flush
 	 */
-	private synchronized void flushPage(PageId pid) throws IOException {
+	private void flushPage(PageId pid) throws IOException {
 		// some code goes here
 		// not necessary for lab1
 		Page dirtyPage = this.pages.get(pid);
-		if (dirtyPage != null) {
-
-			Iterator<Tuple> tuples = ((HeapPage)dirtyPage).iterator();
-			while (tuples.hasNext()) {
-				Tuple t = tuples.next();
-				Debug.log(Debug.LEVEL_DEBUG, "[flushPage] dirtyPageTuples=%s", t.toString());
-			}
-
-
+		if (dirtyPage != null && dirtyPage.isDirty() != null) {
 			DbFile table = Database.getCatalog().getDatabaseFile(pid.getTableId());
-			table.writePage(dirtyPage);
-			dirtyPage.markDirty(false, null);
+			writePages(table, Collections.singletonList(dirtyPage));
+			this.pages.markDirty(dirtyPage, null);
+			// 磁盘上的page已经更新 下层缓存的旧镜像作废
+			dropImage(pid);
 		}
-		Database.getLockManager().releasePageIdLock(pid);
 	}
 
 	/**
 	 * Write all pages of the specified transaction to disk.
 	 */
-	public synchronized void flushPages(TransactionId tid) throws IOException {
+	public void flushPages(TransactionId tid) throws IOException {
 		// some code goes here
 		// not necessary for lab1|lab2
-		Iterator<PageLruCache.PageNode> iterator = this.pages.iterator();
-		Debug.log(Debug.LEVEL_DEBUG, "[flushPages] hasNext="+ iterator.hasNext());
+		// a page dirtied by tid is X-locked by tid, no other transaction can touch it here
+		List<Page> dirty = new ArrayList<>();
+		for (Page page : this.pages.pages()) {
+			if (tid.equals(page.isDirty())) {
+				Debug.log(Debug.LEVEL_DEBUG, "[flushPages] Dirty page found! pageNo=%d", page.getId().getPageNumber());
+				dirty.add(page);
+			}
+		}
+		LogFile log = Database.getLogFile();
+		if (!force && log.isActive(tid)) {
+			// NO FORCE 只写日志 page留给cleaner写
+			for (Page page : dirty) {
+				log.logWrite(tid, page.getBeforeImage(), page);
+			}
+			// WAL 标记为COMMITTED以后cleaner随时会写page 在那之前日志必须落盘
+			// logCommit在mutationLatch外面 不能指望它先force
+			log.force();
+			for (Page page : dirty) {
+				page.setBeforeImage();
+				this.pages.markDirty(page, COMMITTED);
+			}
+			return;
+		}
+		writeBack(dirty);
+		for (Page page : dirty) {
+			// set before image
+			page.setBeforeImage();
+		}
+	}
 
-		while (iterator.hasNext()) {
-			PageLruCache.PageNode entry = iterator.next();
-			Debug.log(Debug.LEVEL_DEBUG, "[flushPages] loop page cache pageNo=%d",entry.pageId.getPageNumber());
+	/**
+	 * @return the dirty pages of the transaction, or of all transactions if
+	 * tid is null
+	 */
+	List<Page> dirtyPages(TransactionId tid) {
+		List<Page> dirty = new ArrayList<>();
+		for (Page page : this.pages.pages()) {
+			TransactionId dirtier = page.isDirty();
+			if (dirtier != null && (tid == null || tid.equals(dirtier))) {
+				dirty.add(page);
+			}
+		}
+		return dirty;
+	}
 
-			if (tid.equals(entry.page.isDirty())) {
-				Debug.log(Debug.LEVEL_DEBUG, "[flushPages] Dirty page found! pageNo=%d", entry.pageId.getPageNumber());
-				flushPage(entry.pageId);
+	/**
+	 * @return the fraction of the bytes of the pool holding dirty pages
+	 */
+	double dirtyRatio() {
+		// 计数在PageTable里维护 写路径上不用扫整个pool
+		return (double) this.pages.dirtyBytes() / this.pages.capacityBytes();
+	}
+
+	ReentrantReadWriteLock mutationLatch() {
+		return this.mutationLatch;
+	}
 
-				// set before image
-				entry.page.setBeforeImage();
+	/**
+	 * Write dirty pages of running transactions back to disk, STEAL mode only.
+	 * Pages of logged transactions are undone by {@link LogFile#rollback};
+	 * for the other transactions the first before-image of every page is kept
+	 * to undo it on abort. The caller makes sure no transaction is modifying
+	 * these pages.
+	 */
+	void steal(List<Page> victims) throws IOException {
+		LogFile log = Database.getLogFile();
+		List<Page> written = new ArrayList<>();
+		for (Page page : victims) {
+			TransactionId tid = page.isDirty();
+			if (tid == null) {
+				continue;
+			}
+			if (tid != COMMITTED && !log.isActive(tid)) {
+				// 同一个page被偷写多次时 保留最早的before image
+				stolen.computeIfAbsent(tid, k -> new ConcurrentHashMap<>())
+						.putIfAbsent(page.getId(), page.getBeforeImage());
 			}
+			written.add(page);
 		}
+		writeBack(written);
 	}
 
 	/**
-	 * Discards a page from the buffer pool.
-	 * Flushes the page to disk to ensure dirty pages are updated on disk.
+	 * Put the before-images of the pages an aborted transaction had written
+	 * back to disk, and drop the pages from the pool.
 	 */
-	private synchronized void evictPage() throws DbException {
-		// some code goes here
-		// not necessary for lab1
-		// 用了LRUMap 所以这里这个方法不用实现了
+	private void rollbackStolen(Map<PageId, Page> undo) throws IOException {
+		Map<Integer, List<Page>> byTable = new HashMap<>();
+		for (Page before : undo.values()) {
+			byTable.computeIfAbsent(before.getId().getTableId(), k -> new ArrayList<>()).add(before);
+		}
+		for (Map.Entry<Integer, List<Page>> e : byTable.entrySet()) {
+			DbFile table = Database.getCatalog().getDatabaseFile(e.getKey());
+			writePages(table, e.getValue());
+			table.force();
+		}
+		for (PageId pid : undo.keySet()) {
+			// 等预读完成 否则预读可能把回滚前的镜像放回pool
+			prefetcher.awaitLoaded(pid);
+			discardPage(pid);
+		}
+	}
+
+	/**
+	 * Write dirty pages back in one batch per file: every DbFile gets all its
+	 * pages at once, so it can write them in page order and coalesce adjacent
+	 * pages, and is forced to disk only once. The batches of different files
+	 * are written in parallel with {@link DbFile#writePagesAsync}; the pages
+	 * are marked clean once every batch is on disk.
+	 * <p>
+	 * Pages of running logged transactions are logged first, and the log is
+	 * forced before any page is written.
+	 */
+	private void writeBack(List<Page> dirty) throws IOException {
+		if (dirty.isEmpty()) {
+			return;
+		}
+		LogFile log = Database.getLogFile();
+		boolean logged = false;
+		for (Page page : dirty) {
+			TransactionId tid = page.isDirty();
+			if (tid != null && tid != COMMITTED && log.isActive(tid)) {
+				log.logWrite(tid, page.getBeforeImage(), page);
+				logged = true;
+			}
+		}
+		if (logged) {
+			// WAL 先写日志再写page
+			log.force();
+		}
+		// 按表分组 每个文件只写一批 只fsync一次 不同文件在I/O线程上并行写
+		Map<Integer, List<Page>> byTable = new HashMap<>();
+		for (Page page : dirty) {
+			byTable.computeIfAbsent(page.getId().getTableId(), k -> new ArrayList<>()).add(page);
+		}
+		List<CompletableFuture<Void>> writes = new ArrayList<>(byTable.size());
+		for (Map.Entry<Integer, List<Page>> e : byTable.entrySet()) {
+			DbFile table = Database.getCatalog().getDatabaseFile(e.getKey());
+			List<Page> batch = e.getValue();
+			long start = System.nanoTime();
+			writes.add(table.writePagesAsync(batch).thenRun(() ->
+					stats.write(batch.size(), (long) batch.size() * table.getPageSize(), System.nanoTime() - start)));
+		}
+		// 全部落盘以后才能标记为clean
+		join(writes);
+		for (Page page : dirty) {
+			this.pages.markDirty(page, null);
+			dropImage(page.getId());
+		}
+	}
+
+	/**
+	 * Wait for all the writes to complete.
+	 *
+	 * @throws IOException the first failure of a write
+	 */
+	private static void join(List<CompletableFuture<Void>> writes) throws IOException {
+		try {
+			CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			throw new IOException(cause);
+		}
 	}
 }
@@ -0,0 +1,187 @@
+package simpledb;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BufferPoolStats counts the work done by one BufferPool: page hits and
+ * misses per table, pages and bytes read and written, the time spent in
+ * {@link DbFile#readPage(PageId)} and {@link DbFile#writePages}, and
+ * evictions.
+ * <p>
+ * The counters are {@link LongAdder}s, so threads counting concurrently do
+ * not contend on a shared cache line. {@link #snapshot()} sums them up, and
+ * {@link #reset()} sets them back to zero, e.g. between benchmark runs.
+ *
+ * @Threadsafe
+ */
+public class BufferPoolStats {
+
+	private static class TableCounters {
+		final LongAdder hits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+	}
+
+	private final ConcurrentHashMap<Integer, TableCounters> tables = new ConcurrentHashMap<>();
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder readBytes = new LongAdder();
+	private final LongAdder readNanos = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+	private final LongAdder writeBytes = new LongAdder();
+	private final LongAdder writeNanos = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder evictionFailures = new LongAdder();
+
+	private TableCounters table(int tableId) {
+		TableCounters c = tables.get(tableId);
+		return c != null ? c : tables.computeIfAbsent(tableId, k -> new TableCounters());
+	}
+
+	void hit(PageId pid) {
+		table(pid.getTableId()).hits.increment();
+	}
+
+	void miss(PageId pid) {
+		table(pid.getTableId()).misses.increment();
+	}
+
+	void read(int pages, long bytes, long nanos) {
+		reads.add(pages);
+		readBytes.add(bytes);
+		readNanos.add(nanos);
+	}
+
+	void write(int pages, long bytes, long nanos) {
+		writes.add(pages);
+		writeBytes.add(bytes);
+		writeNanos.add(nanos);
+	}
+
+	void evicted() {
+		evictions.increment();
+	}
+
+	void evictionFailed() {
+		evictionFailures.increment();
+	}
+
+	/**
+	 * Set all counters back to zero. Counts racing with the reset may be
+	 * kept or lost.
+	 */
+	public void reset() {
+		tables.clear();
+		reads.reset();
+		readBytes.reset();
+		readNanos.reset();
+		writes.reset();
+		writeBytes.reset();
+		writeNanos.reset();
+		evictions.reset();
+		evictionFailures.reset();
+	}
+
+	/**
+	 * @param dirtyPages the number of dirty pages in the pool now
+	 * @return the current values of the counters
+	 */
+	Snapshot snapshot(int dirtyPages) {
+		Map<Integer, long[]> perTable = new HashMap<>();
+		for (Map.Entry<Integer, TableCounters> e : tables.entrySet()) {
+			perTable.put(e.getKey(), new long[]{e.getValue().hits.sum(), e.getValue().misses.sum()});
+		}
+		return new Snapshot(perTable, reads.sum(), readBytes.sum(), readNanos.sum(),
+				writes.sum(), writeBytes.sum(), writeNanos.sum(),
+				evictions.sum(), evictionFailures.sum(), dirtyPages);
+	}
+
+	/**
+	 * The values of the counters at one point in time.
+	 *
+	 * @Immutable
+	 */
+	public static class Snapshot {
+		// tableId -> {hits, misses}
+		private final Map<Integer, long[]> tables;
+		public final long reads;
+		public final long readBytes;
+		public final long readNanos;
+		public final long writes;
+		public final long writeBytes;
+		public final long writeNanos;
+		public final long evictions;
+		public final long evictionFailures;
+		public final int dirtyPages;
+
+		Snapshot(Map<Integer, long[]> tables, long reads, long readBytes, long readNanos,
+				long writes, long writeBytes, long writeNanos,
+				long evictions, long evictionFailures, int dirtyPages) {
+			this.tables = Collections.unmodifiableMap(tables);
+			this.reads = reads;
+			this.readBytes = readBytes;
+			this.readNanos = readNanos;
+			this.writes = writes;
+			this.writeBytes = writeBytes;
+			this.writeNanos = writeNanos;
+			this.evictions = evictions;
+			this.evictionFailures = evictionFailures;
+			this.dirtyPages = dirtyPages;
+		}
+
+		public long hits(int tableId) {
+			long[] c = tables.get(tableId);
+			return c == null ? 0 : c[0];
+		}
+
+		public long misses(int tableId) {
+			long[] c = tables.get(tableId);
+			return c == null ? 0 : c[1];
+		}
+
+		public long hits() {
+			long res = 0;
+			for (long[] c : tables.values()) {
+				res += c[0];
+			}
+			return res;
+		}
+
+		public long misses() {
+			long res = 0;
+			for (long[] c : tables.values()) {
+				res += c[1];
+			}
+			return res;
+		}
+
+		/**
+		 * @return the fraction of getPage calls on the table served from memory
+		 */
+		public double hitRatio(int tableId) {
+			return ratio(hits(tableId), misses(tableId));
+		}
+
+		/**
+		 * @return the fraction of all getPage calls served from memory
+		 */
+		public double hitRatio() {
+			return ratio(hits(), misses());
+		}
+
+		private static double ratio(long hits, long misses) {
+			return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("hits %d, misses %d, hit ratio %.3f, "
+							+ "reads %d (%d bytes, %.1f ms), writes %d (%d bytes, %.1f ms), "
+							+ "evictions %d, eviction failures %d, dirty pages %d",
+					hits(), misses(), hitRatio(), reads, readBytes, readNanos / 1e6,
+					writes, writeBytes, writeNanos / 1e6, evictions, evictionFailures, dirtyPages);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package simpledb;
+
+/**
+ * BufferQuota is the buffer setting of one table, kept by the {@link Catalog}
+ * and enforced by the BufferPool.
+ * <p>
+ * A table either shares the partitions of the pool with the other tables, or
+ * has a dedicated pool of its own which no other table can evict from. In the
+ * shared partitions a table may have
+ * <ul>
+ * <li>a reserved minimum of pages, which other tables do not evict, and</li>
+ * <li>a maximum share of the pool; a table at its share evicts its own pages
+ * to make room for its misses.</li>
+ * </ul>
+ * Reserves are best effort: if every clean page is reserved, a miss still
+ * evicts one rather than fail.
+ * <p>
+ * Pages are counted in pages of {@link BufferPool#getPageSize()}; a table with
+ * larger pages uses up its reserve, share or dedicated pool faster.
+ *
+ * @Immutable
+ */
+public class BufferQuota {
+
+	/**
+	 * No reserve, no maximum, no dedicated pool.
+	 */
+	public static final BufferQuota NONE = new BufferQuota(0, 1.0, 0);
+
+	private final int reservedPages;
+	private final double maxShare;
+	private final int dedicatedPages;
+
+	private BufferQuota(int reservedPages, double maxShare, int dedicatedPages) {
+		if (reservedPages < 0 || dedicatedPages < 0 || maxShare <= 0 || maxShare > 1) {
+			throw new IllegalArgumentException("bad buffer quota");
+		}
+		this.reservedPages = reservedPages;
+		this.maxShare = maxShare;
+		this.dedicatedPages = dedicatedPages;
+	}
+
+	/**
+	 * @return a quota reserving the given number of pages in the shared pool
+	 */
+	public static BufferQuota reserve(int pages) {
+		return new BufferQuota(pages, 1.0, 0);
+	}
+
+	/**
+	 * @return a quota limiting the table to the given fraction of the shared pool
+	 */
+	public static BufferQuota maxShare(double share) {
+		return new BufferQuota(0, share, 0);
+	}
+
+	/**
+	 * @return a quota giving the table a dedicated pool of the given size
+	 */
+	public static BufferQuota dedicated(int pages) {
+		if (pages <= 0) {
+			throw new IllegalArgumentException("a dedicated pool needs at least one page");
+		}
+		return new BufferQuota(0, 1.0, pages);
+	}
+
+	/**
+	 * @return this quota with a reserved minimum of pages
+	 */
+	public BufferQuota withReserve(int pages) {
+		return new BufferQuota(pages, maxShare, dedicatedPages);
+	}
+
+	/**
+	 * @return this quota with a maximum share of the shared pool
+	 */
+	public BufferQuota withMaxShare(double share) {
+		return new BufferQuota(reservedPages, share, dedicatedPages);
+	}
+
+	public int getReservedPages() {
+		return reservedPages;
+	}
+
+	public double getMaxShare() {
+		return maxShare;
+	}
+
+	public int getDedicatedPages() {
+		return dedicatedPages;
+	}
+
+	public boolean isDedicated() {
+		return dedicatedPages > 0;
+	}
+
+	@Override
+	public String toString() {
+		if (isDedicated()) {
+			return "dedicated " + dedicatedPages;
+		}
+		return "reserve " + reservedPages + " max " + maxShare;
+	}
+}
@@ -0,0 +1,66 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BufferRing is a small private ring of page frames used by bulk reads such as
+ * large sequential scans.
+ * <p>
+ * A page that is already resident in the BufferPool is served from the pool.
+ * A miss is read into the ring instead of the pool; once the ring is full the
+ * oldest frame is recycled for the next page. A scan over a table much bigger
+ * than the pool therefore does not evict the hot pages of other queries.
+ * <p>
+ * Pages held by a ring are read only copies: they are never dirtied and
+ * never flushed. A ring belongs to a single iterator and is not thread safe.
+ */
+public class BufferRing {
+
+	/**
+	 * Default number of frames of a ring.
+	 */
+	public static final int DEFAULT_RING_PAGES = 8;
+
+	private final Page[] frames;
+	private final Map<PageId, Integer> slotOf;
+	private int next;
+
+	public BufferRing() {
+		this(DEFAULT_RING_PAGES);
+	}
+
+	public BufferRing(int numPages) {
+		if (numPages <= 0) {
+			throw new IllegalArgumentException("ring must have at least one frame");
+		}
+		this.frames = new Page[numPages];
+		this.slotOf = new HashMap<>();
+	}
+
+	/**
+	 * Return the page from the ring, loading it into the oldest frame if it is
+	 * not in the ring.
+	 */
+	Page getOrLoad(PageId pid, PageTable.PageLoader loader) throws DbException {
+		Integer slot = slotOf.get(pid);
+		if (slot != null) {
+			return frames[slot];
+		}
+		Page page = loader.load(pid);
+		if (page == null) {
+			throw new DbException("failed to load page " + pid.getPageNumber() + " of table " + pid.getTableId());
+		}
+		if (frames[next] != null) {
+			slotOf.remove(frames[next].getId());
+		}
+		frames[next] = page;
+		slotOf.put(pid, next);
+		next = (next + 1) % frames.length;
+		return page;
+	}
+
+	public int capacity() {
+		return frames.length;
+	}
+}
@@ -0,0 +1,28 @@
+package simpledb;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An OutputStream writing into the remaining bytes of a ByteBuffer, so that
+ * pages can be serialized into a reused buffer instead of a fresh array.
+ * The stream advances the position of the given buffer.
+ */
+class ByteBufferOutputStream extends OutputStream {
+
+	private final ByteBuffer buf;
+
+	ByteBufferOutputStream(ByteBuffer buf) {
+		this.buf = buf;
+	}
+
+	@Override
+	public void write(int b) {
+		buf.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		buf.put(b, off, len);
+	}
+}
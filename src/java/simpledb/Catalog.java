@@ -6,7 +6,9 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.UUID;
@@ -46,6 +48,14 @@ public class Catalog {
 	 * @param pkeyField the name of the primary key field
 	 */
 	public void addTable(DbFile file, String name, String pkeyField) {
+		addTable(file, name, pkeyField, BufferQuota.NONE);
+	}
+
+	/**
+	 * Add a new table to the catalog with the given buffer settings, see
+	 * {@link #setBufferQuota(int, BufferQuota)}.
+	 */
+	public void addTable(DbFile file, String name, String pkeyField, BufferQuota quota) {
 		// some code goes here
 		for (int i = tables.size() - 1; i >= 0; i--) {
 			Table t = this.tables.get(i);
@@ -53,11 +63,19 @@ public class Catalog {
 			if (Objects.equals(t.tableName, name) || file.getId() == t.dbFile.getId()) {
 				this.tables.remove(t);
 				this.tableIds.remove((Integer) t.dbFile.getId());
+				if (t.dbFile != file) {
+					t.dbFile.close();
+				}
+				if (t.quota != BufferQuota.NONE && t.dbFile.getId() != file.getId()) {
+					Database.getBufferPool().setQuota(t.dbFile.getId(), BufferQuota.NONE);
+				}
 				// remember to delete the element in tableIds
 			}
 		}
-		this.tables.add(new Table(file, name, pkeyField));
+		Table table = new Table(file, name, pkeyField);
+		this.tables.add(table);
 		this.tableIds.add(file.getId());
+		setBufferQuota(table, quota);
 	}
 
 	public void addTable(DbFile file, String name) {
@@ -135,6 +153,52 @@ public class Catalog {
 		throw new NoSuchElementException();
 	}
 
+	/**
+	 * Set the buffer settings of a table: a number of pages reserved in the
+	 * shared buffer pool, a maximum share of it, or a dedicated pool. The
+	 * setting is applied to the current buffer pool at once and to every
+	 * buffer pool created later.
+	 *
+	 * @throws NoSuchElementException if the table doesn't exist
+	 */
+	public void setBufferQuota(int tableid, BufferQuota quota) throws NoSuchElementException {
+		for (Table t : this.tables) {
+			if (t.dbFile.getId() == tableid) {
+				setBufferQuota(t, quota);
+				return;
+			}
+		}
+		throw new NoSuchElementException();
+	}
+
+	private void setBufferQuota(Table t, BufferQuota quota) {
+		BufferQuota old = t.quota;
+		t.quota = quota == null ? BufferQuota.NONE : quota;
+		if (old != BufferQuota.NONE || t.quota != BufferQuota.NONE) {
+			Database.getBufferPool().setQuota(t.dbFile.getId(), t.quota);
+		}
+	}
+
+	public BufferQuota getBufferQuota(int tableid) throws NoSuchElementException {
+		for (Table t : this.tables) {
+			if (t.dbFile.getId() == tableid) {
+				return t.quota;
+			}
+		}
+		throw new NoSuchElementException();
+	}
+
+	/**
+	 * Apply the buffer settings of all tables to a new buffer pool
+	 */
+	void applyBufferQuotas(BufferPool bufferPool) {
+		for (Table t : this.tables) {
+			if (t.quota != BufferQuota.NONE) {
+				bufferPool.setQuota(t.dbFile.getId(), t.quota);
+			}
+		}
+	}
+
 	public Iterator<Integer> tableIdIterator() {
 		// some code goes here
 		return this.tableIds.iterator();
@@ -155,12 +219,25 @@ public class Catalog {
 	 */
 	public void clear() {
 		// some code goes here
+		closeFiles();
 		this.tables.clear();
 		this.tableIds.clear();
 	}
 
+	/**
+	 * Close the open file handles of every table. The tables stay usable.
+	 */
+	public void closeFiles() {
+		for (Table t : this.tables) {
+			t.dbFile.close();
+		}
+	}
+
 	/**
 	 * Reads the schema from a file and creates the appropriate tables in the database.
+	 * A line may end with the page size and the buffer settings of the table,
+	 * e.g. {@code name (f1 int, f2 int) reserve 64 max 0.5} or
+	 * {@code name (f1 int, f2 int) pagesize 32768 dedicated 128}.
 	 *
 	 * @param catalogFile
 	 */
@@ -205,8 +282,10 @@ public class Catalog {
 				Type[] typeAr = types.toArray(new Type[0]);
 				String[] namesAr = names.toArray(new String[0]);
 				TupleDesc t = new TupleDesc(typeAr, namesAr);
-				HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t);
-				addTable(tabHf, name, primaryKey);
+				Map<String, String> settings = parseSettings(line.substring(line.indexOf(")") + 1));
+				int pageSize = Integer.parseInt(settings.getOrDefault("pagesize", "0"));
+				HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t, pageSize);
+				addTable(tabHf, name, primaryKey, parseBufferQuota(settings));
 				System.out.println("Added table : " + name + " with schema " + t);
 			}
 		} catch (IOException e) {
@@ -218,10 +297,51 @@ public class Catalog {
 		}
 	}
 
+	/**
+	 * Parse the settings at the end of a schema line, pairs of a key and a value
+	 */
+	private static Map<String, String> parseSettings(String settings) {
+		Map<String, String> res = new LinkedHashMap<>();
+		if (settings.trim().isEmpty()) {
+			return res;
+		}
+		String[] els = settings.trim().split("\\s+");
+		if (els.length % 2 != 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		for (int i = 0; i + 1 < els.length; i += 2) {
+			res.put(els[i].toLowerCase(), els[i + 1]);
+		}
+		return res;
+	}
+
+	private static BufferQuota parseBufferQuota(Map<String, String> settings) {
+		BufferQuota quota = BufferQuota.NONE;
+		for (Map.Entry<String, String> e : settings.entrySet()) {
+			switch (e.getKey()) {
+			case "reserve":
+				quota = quota.withReserve(Integer.parseInt(e.getValue()));
+				break;
+			case "max":
+				quota = quota.withMaxShare(Double.parseDouble(e.getValue()));
+				break;
+			case "dedicated":
+				quota = BufferQuota.dedicated(Integer.parseInt(e.getValue()));
+				break;
+			case "pagesize":
+				break;
+			default:
+				throw new IndexOutOfBoundsException();
+			}
+		}
+		return quota;
+	}
+
 	private class Table {
 		DbFile dbFile;
 		String tableName;
 		String pkField;
+		BufferQuota quota = BufferQuota.NONE;
 
 		Table(DbFile dbFile, String tableName, String pkField) {
 			this.dbFile = dbFile;
@@ -0,0 +1,102 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * CLOCK (second chance) replacement. Resident pages sit in a ring of slots;
+ * a hit only sets the reference bit of the slot, without any list mutation
+ * or lock. The clock hand clears reference bits while sweeping and evicts the
+ * first unreferenced evictable page.
+ */
+public class ClockPolicy implements ReplacementPolicy {
+
+	private static class Slot {
+		PageId pid;
+		volatile boolean referenced;
+	}
+
+	private final ConcurrentHashMap<PageId, Slot> slots;
+	private final ArrayList<Slot> ring;
+	private final ArrayDeque<Slot> freeSlots;
+	private int hand;
+
+	public ClockPolicy(int capacity) {
+		this.slots = new ConcurrentHashMap<>(capacity);
+		this.ring = new ArrayList<>(capacity);
+		this.freeSlots = new ArrayDeque<>();
+	}
+
+	@Override
+	public void recordAccess(PageId pid) {
+		Slot s = slots.get(pid);
+		if (s != null) {
+			s.referenced = true;
+		}
+	}
+
+	@Override
+	public synchronized void recordInsert(PageId pid) {
+		Slot s = slots.get(pid);
+		if (s == null) {
+			s = freeSlots.poll();
+			if (s == null) {
+				s = new Slot();
+				ring.add(s);
+			}
+			s.pid = pid;
+			slots.put(pid, s);
+		}
+		s.referenced = true;
+	}
+
+	@Override
+	public synchronized void recordRemove(PageId pid) {
+		Slot s = slots.remove(pid);
+		if (s != null) {
+			s.pid = null;
+			s.referenced = false;
+			freeSlots.add(s);
+		}
+	}
+
+	@Override
+	public synchronized PageId victim(Predicate<PageId> evictable) {
+		// 两圈之内所有引用位都会被清掉 还找不到说明没有可以淘汰的page
+		for (int i = 0, n = ring.size() * 2 + 1; i < n && !ring.isEmpty(); i++) {
+			Slot s = ring.get(hand);
+			hand = (hand + 1) % ring.size();
+			if (s.pid == null) {
+				continue;
+			}
+			if (s.referenced) {
+				s.referenced = false;
+				continue;
+			}
+			if (evictable.test(s.pid)) {
+				PageId pid = s.pid;
+				recordRemove(pid);
+				return pid;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized List<PageId> recencyOrder() {
+		// 时钟没有完整的访问顺序 引用位还在的page排在前面
+		List<PageId> res = new ArrayList<>(slots.size());
+		List<PageId> cold = new ArrayList<>();
+		for (int i = 1; i <= ring.size(); i++) {
+			Slot s = ring.get(Math.floorMod(hand - i, ring.size()));
+			if (s.pid != null) {
+				(s.referenced ? res : cold).add(s.pid);
+			}
+		}
+		res.addAll(cold);
+		return res;
+	}
+}
@@ -0,0 +1,213 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedPageCache keeps the images of clean pages evicted from the
+ * BufferPool Deflate-compressed on the Java heap. Page images compress very
+ * well, empty slots and the padding of fixed-width strings are zeros, so a
+ * cache of a given size holds several times as many pages as the pool.
+ * <p>
+ * Like the {@link PageArena}, the cache is exclusive: a page taken back into
+ * the pool leaves the cache. The cache is bounded by the bytes of the
+ * compressed images; the least recently stored or peeked images are dropped
+ * first. Compression and decompression run outside the cache lock.
+ *
+ * @Threadsafe
+ */
+public class CompressedPageCache {
+
+	private static final ThreadLocal<Deflater> DEFLATER =
+			ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+	private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+	private static class Entry {
+		final byte[] data;
+		final int length;
+
+		Entry(byte[] data, int length) {
+			this.data = data;
+			this.length = length;
+		}
+	}
+
+	private final long budgetBytes;
+	// guarded by this, access order
+	private final LinkedHashMap<PageId, Entry> entries;
+	private long bytes;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param budgetBytes maximum number of bytes of the compressed images
+	 */
+	public CompressedPageCache(long budgetBytes) {
+		if (budgetBytes <= 0) {
+			throw new IllegalArgumentException("budget must be positive");
+		}
+		this.budgetBytes = budgetBytes;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Compress the image of a clean page into the cache, replacing any older
+	 * image of the same page.
+	 *
+	 * @return false if the compressed image is larger than the budget
+	 */
+	public boolean store(Page page) {
+		byte[] data = page.getPageData();
+		byte[] compressed = compress(data);
+		if (compressed.length > budgetBytes) {
+			return false;
+		}
+		synchronized (this) {
+			Entry old = entries.put(page.getId(), new Entry(compressed, data.length));
+			if (old != null) {
+				bytes -= old.data.length;
+			}
+			bytes += compressed.length;
+			// 超出预算 从最久没用的开始丢
+			for (Iterator<Entry> it = entries.values().iterator(); bytes > budgetBytes && it.hasNext(); ) {
+				bytes -= it.next().data.length;
+				it.remove();
+				evictions.increment();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the page from the cache and decode it.
+	 *
+	 * @return the decoded page, or null if the page is not in the cache
+	 */
+	public Page take(PageId pid, PageArena.Decoder decoder) {
+		Entry e;
+		synchronized (this) {
+			e = entries.remove(pid);
+			if (e != null) {
+				bytes -= e.data.length;
+			}
+		}
+		return decode(pid, e, decoder);
+	}
+
+	/**
+	 * Decode the page, leaving it in the cache.
+	 *
+	 * @return the decoded page, or null if the page is not in the cache
+	 */
+	public Page peek(PageId pid, PageArena.Decoder decoder) {
+		Entry e;
+		synchronized (this) {
+			e = entries.get(pid);
+		}
+		return decode(pid, e, decoder);
+	}
+
+	private Page decode(PageId pid, Entry e, PageArena.Decoder decoder) {
+		if (e == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return decoder.decode(pid, ByteBuffer.wrap(decompress(e)));
+	}
+
+	/**
+	 * Drop the image of the page, if any.
+	 */
+	public synchronized void remove(PageId pid) {
+		Entry e = entries.remove(pid);
+		if (e != null) {
+			bytes -= e.data.length;
+		}
+	}
+
+	public synchronized boolean contains(PageId pid) {
+		return entries.containsKey(pid);
+	}
+
+	/**
+	 * @return the number of pages in the cache
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the bytes of the compressed images in the cache
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public long getBudget() {
+		return budgetBytes;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of images dropped to stay within the budget
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public double hitRatio() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	private static byte[] compress(byte[] data) {
+		Deflater deflater = DEFLATER.get();
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] buf = new byte[Math.max(64, data.length / 4)];
+		int n = 0;
+		while (!deflater.finished()) {
+			if (n == buf.length) {
+				buf = Arrays.copyOf(buf, buf.length * 2);
+			}
+			n += deflater.deflate(buf, n, buf.length - n);
+		}
+		return Arrays.copyOf(buf, n);
+	}
+
+	private static byte[] decompress(Entry e) {
+		Inflater inflater = INFLATER.get();
+		inflater.reset();
+		inflater.setInput(e.data);
+		byte[] data = new byte[e.length];
+		try {
+			int n = 0;
+			while (n < data.length && !inflater.finished()) {
+				n += inflater.inflate(data, n, data.length - n);
+			}
+		} catch (DataFormatException ex) {
+			// 数据是自己压缩的 不应该发生
+			throw new IllegalStateException(ex);
+		}
+		return data;
+	}
+}
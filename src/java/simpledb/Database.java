@@ -52,6 +52,22 @@ public class Database {
 		return _instance.get()._bufferpool;
 	}
 
+	/**
+	 * Return the current counters of the buffer pool of the static Database
+	 * instance
+	 */
+	public static BufferPoolStats.Snapshot getStats() {
+		return _instance.get()._bufferpool.getStats();
+	}
+
+	/**
+	 * Set the counters of the buffer pool back to zero, e.g. before a
+	 * benchmark run
+	 */
+	public static void resetStats() {
+		_instance.get()._bufferpool.resetStats();
+	}
+
 	/**
 	 * Return the catalog of the static Database instance
 	 */
@@ -70,11 +86,30 @@ public class Database {
 	 * return it
 	 */
 	public static BufferPool resetBufferPool(int pages) {
+		return resetBufferPool(pages, ReplacementPolicy.Type.LRU);
+	}
+
+	/**
+	 * Create a new instance of the buffer pool using the given page replacement
+	 * policy and return it
+	 */
+	public static BufferPool resetBufferPool(int pages, ReplacementPolicy.Type policy) {
+		return resetBufferPool(pages, policy, 0);
+	}
+
+	/**
+	 * Create a new instance of the buffer pool backed by offHeapBytes bytes of
+	 * off-heap page frames and return it
+	 */
+	public static BufferPool resetBufferPool(int pages, ReplacementPolicy.Type policy, long offHeapBytes) {
 		java.lang.reflect.Field bufferPoolF = null;
 		try {
 			bufferPoolF = Database.class.getDeclaredField("_bufferpool");
 			bufferPoolF.setAccessible(true);
-			bufferPoolF.set(_instance.get(), new BufferPool(pages));
+			_instance.get()._bufferpool.close();
+			BufferPool bufferPool = new BufferPool(pages, policy, offHeapBytes);
+			_instance.get()._catalog.applyBufferQuotas(bufferPool);
+			bufferPoolF.set(_instance.get(), bufferPool);
 		} catch (NoSuchFieldException | SecurityException | IllegalAccessException | IllegalArgumentException e) {
 			e.printStackTrace();
 		}
@@ -82,8 +117,26 @@ public class Database {
 		return _instance.get()._bufferpool;
 	}
 
+	/**
+	 * Create a new lock manager handling deadlocks with the given policy and
+	 * return it. Call it at startup, before any transaction takes a lock.
+	 */
+	public static LockManager resetLockManager(LockManager.Policy policy) {
+		try {
+			java.lang.reflect.Field lockManagerF = Database.class.getDeclaredField("_lockManager");
+			lockManagerF.setAccessible(true);
+			lockManagerF.set(_instance.get(), new LockManager(policy));
+		} catch (NoSuchFieldException | SecurityException | IllegalAccessException | IllegalArgumentException e) {
+			e.printStackTrace();
+		}
+		return _instance.get()._lockManager;
+	}
+
 	// reset the database, used for unit tests only.
 	public static void reset() {
+		// 关闭旧catalog里的文件句柄 避免测试反复reset时泄漏
+		_instance.get()._catalog.closeFiles();
+		_instance.get()._bufferpool.close();
 		_instance.set(new Database());
 	}
 
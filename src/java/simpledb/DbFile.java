@@ -1,7 +1,11 @@
 package simpledb;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The interface for database files on disk. Each table is represented by a
@@ -87,4 +91,74 @@ public interface DbFile {
 	 * @return TupleDesc of this DbFile.
 	 */
 	public TupleDesc getTupleDesc();
+
+	/**
+	 * Returns the size in bytes of the pages of this DbFile. Files which do not
+	 * choose their own page size use {@link BufferPool#getPageSize()}.
+	 */
+	public default int getPageSize() {
+		return BufferPool.getPageSize();
+	}
+
+	/**
+	 * Write several pages to disk, e.g. all dirty pages of a committing
+	 * transaction. Implementations may sort and coalesce the writes; the
+	 * default writes the pages one by one in page number order.
+	 *
+	 * @param pages the pages to write, in any order
+	 */
+	public default void writePages(List<Page> pages) throws IOException {
+		List<Page> sorted = new ArrayList<>(pages);
+		sorted.sort(Comparator.comparingInt(p -> p.getId().getPageNumber()));
+		for (Page p : sorted) {
+			writePage(p);
+		}
+	}
+
+	/**
+	 * Read a page on the I/O threads of {@link PageIO}, without blocking the
+	 * caller.
+	 *
+	 * @return a future completed with the page
+	 */
+	public default CompletableFuture<Page> readPageAsync(PageId id) {
+		return PageIO.read(this, id);
+	}
+
+	/**
+	 * Write several pages and force them to disk on the I/O threads of
+	 * {@link PageIO}, without blocking the caller.
+	 *
+	 * @return a future completed once the pages are on disk
+	 */
+	public default CompletableFuture<Void> writePagesAsync(List<Page> pages) {
+		return PageIO.write(this, pages);
+	}
+
+	/**
+	 * Force the pages written so far to the storage device.
+	 */
+	public default void force() throws IOException {
+	}
+
+	/**
+	 * Build a page from an image of its on-disk bytes, for example a frame of
+	 * an off-heap page cache, instead of reading it from disk.
+	 *
+	 * @param image the page bytes, from its position to its limit
+	 * @return the page, or null if this DbFile does not decode images; the
+	 * caller then falls back to {@link #readPage(PageId)}
+	 * @see PageArena
+	 */
+	public default Page readPage(PageId id, ByteBuffer image) {
+		return null;
+	}
+
+	/**
+	 * Release the operating system resources, such as open file handles, held
+	 * by this DbFile. The file stays usable: resources are reacquired on the
+	 * next access.
+	 */
+	public default void close() {
+	}
 }
@@ -11,6 +11,8 @@ public class Filter extends Operator {
 
 	private Predicate predicate;
 	private OpIterator child;
+	// 谓词已经下推到了SeqScan 子节点返回的tuple都满足谓词
+	private boolean pushedDown;
 
 	/**
 	 * Constructor accepts a predicate to apply and a child operator to read
@@ -39,6 +41,7 @@ public class Filter extends Operator {
 			TransactionAbortedException {
 		// some code goes here
 		super.open();
+		this.pushedDown = this.child instanceof SeqScan && ((SeqScan) this.child).pushDown(this.predicate);
 		this.child.open();
 	}
 
@@ -74,7 +77,7 @@ public class Filter extends Operator {
 		Tuple cur;
 		while (child.hasNext()) {
 			cur = this.child.next();
-			if (this.predicate.filter(cur)) {
+			if (this.pushedDown || this.predicate.filter(cur)) {
 				return cur;
 			}
 		}
@@ -0,0 +1,168 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FreeSpaceMap remembers which pages of a HeapFile may have an empty slot, so
+ * that inserts go straight to a page with room instead of locking every page
+ * from page 0 on.
+ * <p>
+ * The map is an in-memory bitmap. It is built on the first insert by reading
+ * only the slot header of each page from disk, without taking any lock; pages
+ * resident in the BufferPool are judged by their version in the pool, which
+ * may hold changes not written back yet. Afterwards it is kept up to date by
+ * inserts and deletes. It is only a hint: an insert verifies the page under
+ * its exclusive lock and clears the bit of a page found full. The pages a
+ * transaction found or made full are marked free again if it aborts; only
+ * the maps a transaction touched are notified when it completes.
+ * <p>
+ * Different transactions start their search at different pages, so concurrent
+ * inserters spread over the pages with room rather than queueing on the
+ * exclusive lock of the same page.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+	// 每个事务标记过满page的map 事务结束时只通知这些map
+	private static final ConcurrentHashMap<TransactionId, Set<FreeSpaceMap>> TOUCHED = new ConcurrentHashMap<>();
+
+	private final HeapFile file;
+	private BitSet free;
+	private int builtPageSize;
+	// 每个事务标记为满的page 事务回滚时恢复
+	private final Map<TransactionId, BitSet> filledBy = new HashMap<>();
+
+	public FreeSpaceMap(HeapFile file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return a page which may have an empty slot, or -1 if the file has none
+	 */
+	public synchronized int pageWithSpace(TransactionId tid) {
+		BitSet map = map();
+		int numPages = file.numPages();
+		if (numPages == 0 || map.isEmpty()) {
+			return -1;
+		}
+		// 不同的事务从不同的page开始找 同一个事务每次都从同一个page开始
+		long h = tid.getId() * 0x9E3779B97F4A7C15L;
+		int start = (int) Math.floorMod(h ^ (h >>> 32), (long) numPages);
+		int pgNo = map.nextSetBit(start);
+		if (pgNo < 0 || pgNo >= numPages) {
+			pgNo = map.nextSetBit(0);
+		}
+		return pgNo < numPages ? pgNo : -1;
+	}
+
+	/**
+	 * Record that the page has no empty slot.
+	 */
+	public synchronized void markFull(int pgNo) {
+		markFull(null, pgNo);
+	}
+
+	/**
+	 * Record that the page has no empty slot, as seen by the transaction. The
+	 * page is marked free again if the transaction aborts.
+	 */
+	public synchronized void markFull(TransactionId tid, int pgNo) {
+		map().clear(pgNo);
+		if (tid != null) {
+			filledBy.computeIfAbsent(tid, k -> new BitSet()).set(pgNo);
+			TOUCHED.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(this);
+		}
+	}
+
+	/**
+	 * Called by the BufferPool when the transaction commits or aborts. Every
+	 * map the transaction marked a page full in forgets these pages, and
+	 * marks them free again if it aborted.
+	 */
+	public static void transactionComplete(TransactionId tid, boolean commit) {
+		Set<FreeSpaceMap> maps = TOUCHED.remove(tid);
+		if (maps != null) {
+			for (FreeSpaceMap map : maps) {
+				map.complete(tid, commit);
+			}
+		}
+	}
+
+	private synchronized void complete(TransactionId tid, boolean commit) {
+		BitSet filled = filledBy.remove(tid);
+		if (filled != null && !commit && free != null) {
+			free.or(filled);
+		}
+	}
+
+	/**
+	 * Record that the page has at least one empty slot.
+	 */
+	public synchronized void markFree(int pgNo) {
+		map().set(pgNo);
+	}
+
+	/**
+	 * Drop the map, it is rebuilt from disk on the next use.
+	 */
+	public synchronized void invalidate() {
+		free = null;
+	}
+
+	private BitSet map() {
+		int pageSize = file.getPageSize();
+		if (free == null || builtPageSize != pageSize) {
+			free = rebuild(pageSize);
+			builtPageSize = pageSize;
+		}
+		return free;
+	}
+
+	/**
+	 * Read the slot header of every page and mark the pages with an empty slot.
+	 */
+	private BitSet rebuild(int pageSize) {
+		int numSlots = pageSize * 8 / (file.getTupleDesc().getSize() * 8 + 1);
+		int headerSize = (numSlots + 7) / 8;
+		int numPages = file.numPages();
+		BitSet map = new BitSet(numPages);
+		byte[] header = new byte[headerSize];
+		for (int pgNo = 0; pgNo < numPages; pgNo++) {
+			int n;
+			try {
+				n = file.channel.read(header, 0, (long) pgNo * pageSize);
+			} catch (IOException e) {
+				// 读不到的page当作有空位 插入的时候会再检查
+				e.printStackTrace();
+				n = -1;
+			}
+			Page resident = Database.getBufferPool().peekPage(new HeapPageId(file.getId(), pgNo));
+			if (resident instanceof HeapPage) {
+				// pool里的版本可能有还没写回的修改
+				if (((HeapPage) resident).getNumEmptySlots() > 0) {
+					map.set(pgNo);
+				}
+			} else if (n < headerSize || hasEmptySlot(header, numSlots)) {
+				map.set(pgNo);
+			}
+		}
+		Debug.log(Debug.LEVEL_DEBUG, "[FreeSpaceMap] rebuilt, %d of %d pages have room",
+				map.cardinality(), numPages);
+		return map;
+	}
+
+	private static boolean hasEmptySlot(byte[] header, int numSlots) {
+		for (int i = 0; i < numSlots; i++) {
+			if ((header[i >> 3] >> (i & 7) & 1) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -1,12 +1,13 @@
 package simpledb;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -23,6 +24,10 @@ public class HeapFile implements DbFile {
 
 	private File file;
 	private TupleDesc tupleDesc;
+	// 0表示跟随BufferPool的全局page大小
+	private final int pageSize;
+	final PageFileChannel channel;
+	private final FreeSpaceMap freeSpace;
 
 	/**
 	 * Constructs a heap file backed by the specified file.
@@ -31,9 +36,27 @@ public class HeapFile implements DbFile {
 	 *          file.
 	 */
 	public HeapFile(File f, TupleDesc td) {
+		this(f, td, 0);
+	}
+
+	/**
+	 * Constructs a heap file backed by the specified file, with pages of the
+	 * given size. A large page size suits tables which are mostly scanned.
+	 *
+	 * @param f        the file that stores the on-disk backing store for this heap
+	 *                 file.
+	 * @param pageSize bytes per page, 0 to use {@link BufferPool#getPageSize()}
+	 */
+	public HeapFile(File f, TupleDesc td, int pageSize) {
 		// some code goes here
+		if (pageSize < 0 || (pageSize > 0 && pageSize < td.getSize() + 1)) {
+			throw new IllegalArgumentException("page size " + pageSize + " can not hold a tuple");
+		}
 		this.file = f;
 		this.tupleDesc = td;
+		this.pageSize = pageSize;
+		this.channel = new PageFileChannel(f);
+		this.freeSpace = new FreeSpaceMap(this);
 
 		Debug.log("[HeapFile] construct numOfPage=" + numPages() + " f.length=" + this.file.length());
 	}
@@ -72,16 +95,24 @@ public class HeapFile implements DbFile {
 		return this.tupleDesc;
 	}
 
+	// see DbFile.java for javadocs
+	public int getPageSize() {
+		return pageSize > 0 ? pageSize : BufferPool.getPageSize();
+	}
+
 	// see DbFile.java for javadocs
 	public Page readPage(PageId pid) {
 		// some code goes here
 		Page page = null;
-		byte[] data = new byte[BufferPool.getPageSize()];
-		int offset = pid.getPageNumber() * BufferPool.getPageSize();
-
-		try (RandomAccessFile rf = new RandomAccessFile(getFile(), "r")) {
-			rf.seek(offset);
-			rf.read(data, 0, BufferPool.getPageSize());
+		// HeapPage会把数据解析出来 不会持有这个数组 所以可以复用
+		byte[] data = PageFileChannel.borrowBuffer(getPageSize());
+		long offset = (long) pid.getPageNumber() * data.length;
+
+		try {
+			int n = channel.read(data, 0, offset);
+			if (n < data.length) {
+				Arrays.fill(data, Math.max(n, 0), data.length, (byte) 0);
+			}
 			page = new HeapPage((HeapPageId) pid, data);
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -89,14 +120,43 @@ public class HeapFile implements DbFile {
 		return page;
 	}
 
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid, ByteBuffer image) {
+		if (image.remaining() != getPageSize()) {
+			return null;
+		}
+		try {
+			return new HeapPage((HeapPageId) pid, image);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
 	// see DbFile.java for javadocs
 	public void writePage(Page page) throws IOException {
 		// some code goes here
 		// not necessary for lab1
-		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
-			raf.seek(page.getId().getPageNumber() * BufferPool.getPageSize());
-			raf.write(page.getPageData());
-		}
+		channel.write(page.getPageData(), (long) page.getId().getPageNumber() * getPageSize());
+	}
+
+	// see DbFile.java for javadocs
+	public void writePages(List<Page> pages) throws IOException {
+		List<Page> sorted = new ArrayList<>(pages);
+		sorted.sort(Comparator.comparingInt(p -> p.getId().getPageNumber()));
+		int size = getPageSize();
+		channel.writePages(sorted, p -> (long) p.getId().getPageNumber() * size);
+	}
+
+	// see DbFile.java for javadocs
+	public void force() throws IOException {
+		channel.force();
+	}
+
+	// see DbFile.java for javadocs
+	public void close() {
+		channel.close();
+		freeSpace.invalidate();
 	}
 
 	/**
@@ -104,7 +164,7 @@ public class HeapFile implements DbFile {
 	 */
 	public int numPages() {
 		// some code goes here
-		return (int) file.length() / BufferPool.getPageSize();
+		return (int) (file.length() / getPageSize());
 	}
 
 	// see DbFile.java for javadocs
@@ -116,31 +176,45 @@ public class HeapFile implements DbFile {
 			throw new DbException("not a member of this file");
 		}
 		ArrayList<Page> res = new ArrayList<>();
-		int pgNo = 0;
-		while (pgNo < numPages()) {
-			PageId id = new HeapPageId(getId(), pgNo++);
+		// 通过空闲空间表直接找到有空位的page 不用从page 0开始一页页加锁
+		int pgNo;
+		while ((pgNo = freeSpace.pageWithSpace(tid)) >= 0) {
+			PageId id = new HeapPageId(getId(), pgNo);
 			Page hp = Database.getBufferPool().getPage(tid, id, Permissions.READ_WRITE);
 			if (!(hp instanceof HeapPage)) {
 				throw new DbException("invalid page type");
 			}
 			if (((HeapPage) hp).getNumEmptySlots() > 0) {
-				((HeapPage) hp).insertTuple(t);
+				insertInto(tid, (HeapPage) hp, t);
 				res.add(hp);
 				return res;
 			}
+			freeSpace.markFull(tid, pgNo);
 		}
 
 		// 插入新的page 这里必须要先写入磁盘 然后再加载进内存
-		HeapPageId hid = new HeapPageId(getId(), numPages());
-		Page blankPage = new HeapPage(hid, HeapPage.createEmptyPageData());
-		this.writePage(blankPage);
+		HeapPageId hid;
+		synchronized (this) {
+			// 并发插入的事务不能分配到同一个新page
+			hid = new HeapPageId(getId(), numPages());
+			Page blankPage = new HeapPage(hid, HeapPage.createEmptyPageData(getPageSize()));
+			this.writePage(blankPage);
+		}
+		freeSpace.markFree(hid.getPageNumber());
 		// 加载入内存
 		HeapPage newPage = (HeapPage) Database.getBufferPool().getPage(tid, hid, Permissions.READ_WRITE);
-		newPage.insertTuple(t);
+		insertInto(tid, newPage, t);
 		res.add(newPage);
 		return res;
 	}
 
+	private void insertInto(TransactionId tid, HeapPage page, Tuple t) throws DbException {
+		page.insertTuple(t);
+		if (page.getNumEmptySlots() == 0) {
+			freeSpace.markFull(tid, page.getId().getPageNumber());
+		}
+	}
+
 	// see DbFile.java for javadocs
 	public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
 			TransactionAbortedException {
@@ -154,6 +228,7 @@ public class HeapFile implements DbFile {
 			throw new DbException("illegal page type");
 		}
 		((HeapPage) page).deleteTuple(t);
+		freeSpace.markFree(page.getId().getPageNumber());
 		ArrayList<Page> res = new ArrayList<>();
 		res.add(page);
 		return res;
@@ -162,25 +237,55 @@ public class HeapFile implements DbFile {
 	// see DbFile.java for javadocs
 	public DbFileIterator iterator(TransactionId tid) {
 		// some code goes here
-		return new HeapFileIterator(this, tid);
+		return new HeapFileIterator(this, tid, null, null);
+	}
+
+	/**
+	 * Returns an iterator for a bulk read: pages which are not resident in the
+	 * buffer pool are read into the given ring rather than into the pool.
+	 *
+	 * @see BufferRing
+	 */
+	public DbFileIterator iterator(TransactionId tid, BufferRing ring) {
+		return new HeapFileIterator(this, tid, ring, null);
+	}
+
+	/**
+	 * Returns an iterator over the tuples which pass the predicate. The
+	 * predicate is evaluated on the raw slots of each page, so tuples which do
+	 * not pass are never decoded.
+	 *
+	 * @param ring the ring to read pages through, or null to read through the
+	 *             buffer pool
+	 * @see Predicate#filter(HeapPage, int)
+	 */
+	public DbFileIterator iterator(TransactionId tid, BufferRing ring, Predicate predicate) {
+		return new HeapFileIterator(this, tid, ring, predicate);
 	}
 
 	private class HeapFileIterator implements DbFileIterator {
 
 		private HeapFile heapFile;
 		private TransactionId tid;
+		private BufferRing ring;
+		private Predicate predicate;
+		private PagePrefetcher.Stream readAhead;
 		private Iterator<Tuple> curPageTuples;
 		private int curPageNo;
 
-		public HeapFileIterator(HeapFile heapFile, TransactionId tid) {
+		public HeapFileIterator(HeapFile heapFile, TransactionId tid, BufferRing ring, Predicate predicate) {
 			this.heapFile = heapFile;
 			this.tid = tid;
+			this.ring = ring;
+			this.predicate = predicate;
 
 			Debug.log("[HeapFile#HeapFileIterator] numOfPages:" + heapFile.numPages());
 		}
 
 		@Override
 		public void open() throws DbException, TransactionAbortedException {
+			// 用ring读的时候不预读 否则预读的page还是会挤占buffer pool
+			this.readAhead = ring == null ? Database.getBufferPool().getPrefetcher().newStream() : null;
 			this.curPageNo = 0;
 			this.curPageTuples = getNextPageTuples(curPageNo);
 		}
@@ -224,15 +329,19 @@ public class HeapFile implements DbFile {
 		public void close() {
 			this.curPageNo = 0;
 			this.curPageTuples = null;
+			this.readAhead = null;
 		}
 
 		private Iterator<Tuple> getNextPageTuples(int pageNo) throws TransactionAbortedException, DbException {
 			PageId pid = new HeapPageId(heapFile.getId(), pageNo);
-			HeapPage hp = ((HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY));
+			if (readAhead != null) {
+				readAhead.beforeRead(pageNo, heapFile.numPages(), no -> new HeapPageId(heapFile.getId(), no));
+			}
+			HeapPage hp = ((HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY, ring));
 
 			Debug.log("[HeapFile#HeapFileIterator] HeapPage numSlots=" + hp.numSlots + " emptySlots=" + hp.getNumEmptySlots());
 
-			return hp.iterator();
+			return predicate == null ? hp.iterator() : hp.iterator(predicate);
 		}
 	}
 
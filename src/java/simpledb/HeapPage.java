@@ -1,16 +1,23 @@
 package simpledb;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * The before-image is copy-on-write: it is only serialized when the page is
+ * first modified after {@link #setBeforeImage()}, so pages which are only
+ * read never copy their data. The buffers of before-images which are no
+ * longer needed are recycled.
  *
  * @see HeapFile
  * @see BufferPool
@@ -19,12 +26,21 @@ public class HeapPage implements Page {
 
 	final HeapPageId pid;
 	final TupleDesc td;
+	// 每个文件可以有自己的page大小
+	final int pageSize;
 	final byte header[];
-	final Tuple tuples[];
+	// tuple在第一次被访问的时候才解码
+	final TupleSlots tuples;
 	final int numSlots;
-	private final Byte oldDataLock = new Byte((byte) 0);
+	private final Object oldDataLock = new Object();
+	// 为null表示上次setBeforeImage以后page没有被修改过 before image就是当前内容
 	byte[] oldData;
 
+	// 回收的before image缓冲区 给下一次修改用 按page大小分开
+	private static final ConcurrentHashMap<Integer, ArrayBlockingQueue<byte[]>> FREE_BUFFERS =
+			new ConcurrentHashMap<>();
+	private static final int FREE_BUFFERS_PER_SIZE = 64;
+
 	private boolean isDirty;
 	private TransactionId markDirtyTid;
 	/**
@@ -32,41 +48,51 @@ public class HeapPage implements Page {
 	 * The format of a HeapPage is a set of header bytes indicating
 	 * the slots of the page that are in use, some number of tuple slots.
 	 * Specifically, the number of tuples is equal to: <p>
-	 * floor((BufferPool.getPageSize()*8) / (tuple size * 8 + 1))
+	 * floor((page size*8) / (tuple size * 8 + 1))
 	 * <p> where tuple size is the size of tuples in this
 	 * database table, which can be determined via {@link Catalog#getTupleDesc}.
 	 * The number of 8-bit header words is equal to:
 	 * <p>
 	 * ceiling(no. tuple slots / 8)
 	 * <p>
+	 * The page size is the one of the DbFile of the table, see
+	 * {@link DbFile#getPageSize()}.
 	 *
 	 * @see Database#getCatalog
 	 * @see Catalog#getTupleDesc
 	 * @see BufferPool#getPageSize()
 	 */
 	public HeapPage(HeapPageId id, byte[] data) throws IOException {
+		this(id, new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	/**
+	 * Create a HeapPage straight from a buffer, for example a slice of a
+	 * memory-mapped file, without copying it into an array first. The
+	 * buffer's remaining bytes must hold the page.
+	 *
+	 * @see MappedHeapFile
+	 */
+	public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+		this(id, new DataInputStream(new ByteBufferInputStream(data)));
+	}
+
+	private HeapPage(HeapPageId id, DataInputStream dis) throws IOException {
 		this.pid = id;
-		this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+		DbFile file = Database.getCatalog().getDatabaseFile(id.getTableId());
+		this.td = file.getTupleDesc();
+		this.pageSize = file.getPageSize();
 		this.numSlots = getNumTuples();
 		this.isDirty = false;
-		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
 
 		// allocate and read the header slots of this page
 		header = new byte[getHeaderSize()];
 		for (int i = 0; i < header.length; i++)
 			header[i] = dis.readByte();
 
-		tuples = new Tuple[numSlots];
-		try {
-			// allocate and read the actual records of this page
-			for (int i = 0; i < tuples.length; i++)
-				tuples[i] = readNextTuple(dis, i);
-		} catch (NoSuchElementException e) {
-			e.printStackTrace();
-		}
+		// keep the raw records of this page, they are decoded on demand
+		tuples = new TupleSlots(id, td, numSlots, dis);
 		dis.close();
-
-		setBeforeImage();
 	}
 
 	/**
@@ -79,8 +105,22 @@ public class HeapPage implements Page {
 	 * @return The returned ByteArray.
 	 */
 	public static byte[] createEmptyPageData() {
-		int len = BufferPool.getPageSize();
-		return new byte[len]; //all 0
+		return createEmptyPageData(BufferPool.getPageSize());
+	}
+
+	/**
+	 * @return the bytes of an empty HeapPage of the given page size
+	 */
+	public static byte[] createEmptyPageData(int pageSize) {
+		return new byte[pageSize]; //all 0
+	}
+
+	/**
+	 * @return the page size of the file this page belongs to
+	 */
+	@Override
+	public int getSize() {
+		return this.pageSize;
 	}
 
 	/**
@@ -90,7 +130,7 @@ public class HeapPage implements Page {
 	 */
 	private int getNumTuples() {
 		// some code goes here
-		return BufferPool.getPageSize() * 8 / (this.td.getSize() * 8 + 1);
+		return this.pageSize * 8 / (this.td.getSize() * 8 + 1);
 	}
 
 	/**
@@ -109,11 +149,10 @@ public class HeapPage implements Page {
 	 */
 	public HeapPage getBeforeImage() {
 		try {
-			byte[] oldDataRef = null;
+			// 在锁里解析 解析完之前缓冲区不能被回收
 			synchronized (oldDataLock) {
-				oldDataRef = oldData;
+				return new HeapPage(pid, oldData != null ? oldData : getPageData());
 			}
-			return new HeapPage(pid, oldDataRef);
 		} catch (IOException e) {
 			e.printStackTrace();
 			//should never happen -- we parsed it OK before!
@@ -124,8 +163,40 @@ public class HeapPage implements Page {
 
 	public void setBeforeImage() {
 		synchronized (oldDataLock) {
-			oldData = getPageData().clone();
+			if (oldData != null) {
+				freeBuffers(pageSize).offer(oldData);
+				oldData = null;
+			}
+		}
+	}
+
+	/**
+	 * Capture the before-image if this is the first modification since
+	 * {@link #setBeforeImage()}. Called before the page is changed.
+	 */
+	private void beforeModify() {
+		synchronized (oldDataLock) {
+			if (oldData != null) {
+				return;
+			}
+			byte[] buf = freeBuffers(pageSize).poll();
+			if (buf == null) {
+				buf = new byte[pageSize];
+			}
+			writePageData(buf);
+			oldData = buf;
+		}
+	}
+
+	/**
+	 * @return the recycled before-image buffers of the given page size
+	 */
+	private static ArrayBlockingQueue<byte[]> freeBuffers(int pageSize) {
+		ArrayBlockingQueue<byte[]> buffers = FREE_BUFFERS.get(pageSize);
+		if (buffers == null) {
+			buffers = FREE_BUFFERS.computeIfAbsent(pageSize, k -> new ArrayBlockingQueue<>(FREE_BUFFERS_PER_SIZE));
 		}
+		return buffers;
 	}
 
 	/**
@@ -137,38 +208,45 @@ public class HeapPage implements Page {
 	}
 
 	/**
-	 * Suck up tuples from the source file.
+	 * Return the tuple in the given slot, decoding it if it has not been
+	 * accessed before.
+	 *
+	 * @return the tuple, or null if the slot is empty
 	 */
-	@SuppressWarnings("all")
-	private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-		// if associated bit is not set, read forward to the next tuple, and
-		// return null.
-		if (!isSlotUsed(slotId)) {
-			for (int i = 0; i < td.getSize(); i++) {
-				try {
-					dis.readByte();
-				} catch (IOException e) {
-					throw new NoSuchElementException("error reading empty tuple");
-				}
-			}
-			return null;
+	public Tuple getTuple(int slot) {
+		if (slot < 0 || slot >= numSlots) {
+			throw new NoSuchElementException();
 		}
+		return isSlotUsed(slot) ? tuples.get(slot) : null;
+	}
 
-		// read fields in the tuple
-		Tuple t = new Tuple(td);
-		RecordId rid = new RecordId(pid, slotId);
-		t.setRecordId(rid);
-		try {
-			for (int j = 0; j < td.numFields(); j++) {
-				Field f = td.getFieldType(j).parse(dis);
-				t.setField(j, f);
-			}
-		} catch (java.text.ParseException e) {
-			e.printStackTrace();
-			throw new NoSuchElementException("parsing error!");
-		}
+	/**
+	 * Return one field of the tuple in the given slot, without decoding the
+	 * rest of the tuple.
+	 *
+	 * @throws NoSuchElementException if the slot is empty
+	 */
+	public Field getField(int slot, int field) {
+		checkUsed(slot);
+		return tuples.getField(slot, field);
+	}
+
+	/**
+	 * Return the value of an INT_TYPE field of the tuple in the given slot,
+	 * without allocating a Tuple or Field.
+	 *
+	 * @throws NoSuchElementException   if the slot is empty
+	 * @throws IllegalArgumentException if the field is not an int
+	 */
+	public int getInt(int slot, int field) {
+		checkUsed(slot);
+		return tuples.getInt(slot, field);
+	}
 
-		return t;
+	private void checkUsed(int slot) {
+		if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+			throw new NoSuchElementException("slot " + slot + " is empty");
+		}
 	}
 
 	/**
@@ -182,11 +260,18 @@ public class HeapPage implements Page {
 	 * @return A byte array correspond to the bytes of this page.
 	 * @see #HeapPage
 	 */
-	@SuppressWarnings("all")
 	public byte[] getPageData() {
-		int len = BufferPool.getPageSize();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
+		byte[] data = new byte[pageSize];
+		writePageData(data);
+		return data;
+	}
+
+	/**
+	 * Serialize this page into the given array of pageSize bytes
+	 */
+	@SuppressWarnings("all")
+	private void writePageData(byte[] data) {
+		DataOutputStream dos = new DataOutputStream(new ByteBufferOutputStream(ByteBuffer.wrap(data)));
 
 		// create the header of the page
 		for (int i = 0; i < header.length; i++) {
@@ -199,7 +284,7 @@ public class HeapPage implements Page {
 		}
 
 		// create the tuples
-		for (int i = 0; i < tuples.length; i++) {
+		for (int i = 0; i < numSlots; i++) {
 
 			// empty slot
 			if (!isSlotUsed(i)) {
@@ -214,21 +299,17 @@ public class HeapPage implements Page {
 				continue;
 			}
 
-			// non-empty slot
-			for (int j = 0; j < td.numFields(); j++) {
-				Field f = tuples[i].getField(j);
-				try {
-					f.serialize(dos);
-
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+			// non-empty slot, not decoded slots are copied as is
+			try {
+				tuples.write(i, dos);
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
 		}
 
 		// padding
 		int zerolen =
-				BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
+				pageSize - (header.length + td.getSize() * numSlots); //- numSlots * td.getSize();
 		byte[] zeroes = new byte[zerolen];
 		try {
 			dos.write(zeroes, 0, zerolen);
@@ -241,8 +322,6 @@ public class HeapPage implements Page {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-
-		return baos.toByteArray();
 	}
 
 	/**
@@ -268,6 +347,7 @@ public class HeapPage implements Page {
 		if (!isSlotUsed(no)) {
 			throw new DbException("tuple already empty");
 		}
+		beforeModify();
 		this.markSlotUsed(no, false);
 	}
 
@@ -287,7 +367,8 @@ public class HeapPage implements Page {
 		}
 		for (int i = 0; i < numSlots; i++) {
 			if (!isSlotUsed(i)) {
-				this.tuples[i] = t;
+				beforeModify();
+				this.tuples.set(i, t);
 				t.setRecordId(new RecordId(this.pid, i));
 				this.markSlotUsed(i, true);
 				return;
@@ -390,7 +471,46 @@ public class HeapPage implements Page {
 					throw new NoSuchElementException();
 				}
 				count++;
-				return tuples[index++];
+				return tuples.get(index++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * @return an iterator over the tuples on this page which pass the
+	 * predicate. The predicate is evaluated on the raw slots, so only the
+	 * tuples which pass are decoded.
+	 * @see Predicate#filter(HeapPage, int)
+	 */
+	public Iterator<Tuple> iterator(Predicate p) {
+		return new Iterator<Tuple>() {
+			private int index = nextMatch(0);
+
+			private int nextMatch(int from) {
+				while (from < numSlots && (!isSlotUsed(from) || !p.filter(HeapPage.this, from))) {
+					from++;
+				}
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return index < numSlots;
+			}
+
+			@Override
+			public Tuple next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Tuple t = tuples.get(index);
+				index = nextMatch(index + 1);
+				return t;
 			}
 
 			@Override
@@ -0,0 +1,146 @@
+package simpledb;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a deadlock-prone locking workload against a LockManager with every
+ * {@link LockManager.Policy} and reports the throughput and the abort rate of
+ * each policy.
+ * <p>
+ * Each thread runs short transactions that lock two pages picked at random
+ * from a small set, like the transactions of DeadlockTest: a read lock then a
+ * write lock, two write locks, or a read lock upgraded to a write lock. An
+ * aborted transaction releases its locks, backs off for a random short time
+ * and restarts with the same TransactionId, so it keeps its age under
+ * wait-die and wound-wait. Usage:
+ * <pre>
+ *     java simpledb.LockBenchmark [threads] [pages] [seconds]
+ * </pre>
+ */
+public class LockBenchmark {
+
+	/**
+	 * Time a transaction works between two lock requests.
+	 */
+	private static final long WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	public static class Result {
+		public final LockManager.Policy policy;
+		public final long commits;
+		public final long aborts;
+		public final long millis;
+
+		Result(LockManager.Policy policy, long commits, long aborts, long millis) {
+			this.policy = policy;
+			this.commits = commits;
+			this.aborts = aborts;
+			this.millis = millis;
+		}
+
+		/**
+		 * @return committed transactions per second
+		 */
+		public double throughput() {
+			return millis == 0 ? 0 : commits * 1000.0 / millis;
+		}
+
+		/**
+		 * @return the fraction of transaction attempts that aborted
+		 */
+		public double abortRate() {
+			return commits + aborts == 0 ? 0 : (double) aborts / (commits + aborts);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-10s commits %8d, %10.1f txn/s, aborts %7d, abort rate %.4f",
+					policy, commits, throughput(), aborts, abortRate());
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int pages = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		long seconds = args.length > 2 ? Long.parseLong(args[2]) : 5;
+		System.out.println("Running " + threads + " threads on " + pages + " pages for " + seconds + " s");
+		for (LockManager.Policy policy : LockManager.Policy.values()) {
+			System.out.println(run(policy, threads, pages, seconds * 1000));
+		}
+	}
+
+	/**
+	 * Run the workload on a new LockManager with the given policy.
+	 */
+	public static Result run(LockManager.Policy policy, int threads, int pages, long millis)
+			throws InterruptedException {
+		LockManager lm = new LockManager(policy);
+		AtomicBoolean stop = new AtomicBoolean();
+		LongAdder commits = new LongAdder();
+		LongAdder aborts = new LongAdder();
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			long seed = i;
+			workers[i] = new Thread(() -> {
+				Random r = new Random(seed);
+				while (!stop.get()) {
+					TransactionId tid = new TransactionId();
+					PageId first = new HeapPageId(1, r.nextInt(pages));
+					PageId second = new HeapPageId(1, r.nextInt(pages));
+					int kind = r.nextInt(3);
+					while (!stop.get()) {
+						boolean ok = runTransaction(lm, tid, kind, first, second);
+						lm.completeTransaction(tid);
+						if (ok) {
+							commits.increment();
+							break;
+						}
+						aborts.increment();
+						// 和DeadlockTest一样 重启前随机等一会
+						LockSupport.parkNanos(WORK_NANOS * (1 + r.nextInt(4)));
+					}
+				}
+			}, "lock-benchmark-" + i);
+			workers[i].start();
+		}
+		long start = System.nanoTime();
+		Thread.sleep(millis);
+		stop.set(true);
+		for (Thread t : workers) {
+			t.join();
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		return new Result(policy, commits.sum(), aborts.sum(), elapsed);
+	}
+
+	/**
+	 * @return false if a lock request failed and the transaction must abort
+	 */
+	private static boolean runTransaction(LockManager lm, TransactionId tid, int kind, PageId first,
+			PageId second) {
+		switch (kind) {
+		case 0:
+			// t1 p0.read, t2 p1.read, t1 p1.write, t2 p0.write
+			return lock(lm, tid, first, Permissions.READ_ONLY)
+					&& lock(lm, tid, second, Permissions.READ_WRITE);
+		case 1:
+			return lock(lm, tid, first, Permissions.READ_WRITE)
+					&& lock(lm, tid, second, Permissions.READ_WRITE);
+		default:
+			// 读锁升级为写锁
+			return lock(lm, tid, first, Permissions.READ_ONLY)
+					&& lock(lm, tid, first, Permissions.READ_WRITE);
+		}
+	}
+
+	private static boolean lock(LockManager lm, TransactionId tid, PageId pid, Permissions perm) {
+		if (!lm.acquireLock(tid, pid, perm)) {
+			return false;
+		}
+		LockSupport.parkNanos(WORK_NANOS);
+		return true;
+	}
+}
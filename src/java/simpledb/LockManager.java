@@ -1,311 +1,884 @@
 package simpledb;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Transaction Lock Manager. Offer Page level Lock and unlock control.
+ * Transaction Lock Manager. Offer table and page level Lock and unlock control.
+ * <p>
+ * Locking is multi-granular: before a page is locked S (READ_ONLY) or X
+ * (READ_WRITE), its table is locked in the matching intention mode IS or IX,
+ * see {@link LockMode}. A table lock in S, SIX or X covers the pages of the
+ * table, which then need no page locks of their own. Once a transaction holds
+ * more than {@link #getEscalationThreshold()} page locks on one table, the
+ * lock manager tries to escalate: it upgrades the table lock to S (if the
+ * transaction only read the table) or X, without waiting, and drops the page
+ * locks. A long scan thus holds a single table lock instead of one lock per
+ * page.
+ * <p>
+ * Every locked table and page has a {@link LockEntry} with the transactions
+ * holding the lock and a FIFO queue of the requests waiting for it. A request
+ * is granted at once only if it is compatible with the holders and nobody is
+ * queued before it, so a stream of readers cannot starve a writer. An upgrade
+ * to a stronger mode is queued before all other requests, since its
+ * transaction already holds the lock.
+ * <p>
+ * Waiters do not poll: whoever changes the holders of a lock grants the
+ * requests at the head of its queue and wakes the waiting threads up. A
+ * request still waiting after {@link #getLockTimeout()} ms fails, so locks
+ * leaked by a transaction which never completes cannot block the others
+ * forever.
+ * <p>
+ * Every waiting request publishes the transactions it waits for; together
+ * they form the waits-for graph. Deadlocks are found by a detector on a
+ * background thread, which runs every {@link #getDetectionInterval()} ms
+ * while some request waits, and aborts the youngest transaction of each
+ * cycle: its acquireLock returns false. A request granted at once never
+ * touches the graph or the detector.
+ * <p>
+ * Instead of detecting deadlocks, a lock manager can prevent them with one of
+ * the timestamp {@link Policy policies}, where a smaller TransactionId is an
+ * older transaction. Under wait-die an older transaction may wait for a
+ * younger one, a younger requester dies at once. Under wound-wait a younger
+ * transaction may wait for an older one, an older requester wounds the
+ * younger holders: a wounded transaction fails its next acquireLock, or the
+ * one it waits in, and so gets a TransactionAbortedException from
+ * BufferPool.getPage. Either way the waits-for graph has no cycle and no
+ * detector runs.
+ * <p>
+ * The tables and pages locked by each transaction are indexed, so
+ * completing a transaction touches only its own locks and does not block
+ * other transactions. A lock nobody holds or waits for is dropped from the
+ * lock table.
  */
 public class LockManager {
 
-	// 记录每个page的锁状态
-	private ConcurrentHashMap<PageId, List<LockNode>> lockState;
+	/**
+	 * How deadlocks are handled, chosen when the lock manager is created.
+	 */
+	public enum Policy {
+		/**
+		 * Wait freely, a background detector aborts the youngest transaction
+		 * of each waits-for cycle
+		 */
+		DETECT,
+		/**
+		 * Older transactions wait for younger ones, younger requesters abort
+		 */
+		WAIT_DIE,
+		/**
+		 * Younger transactions wait for older ones, older requesters abort
+		 * the younger holders
+		 */
+		WOUND_WAIT
+	}
 
-	// 用于实现page级别的锁同步
-	private ConcurrentHashMap<PageId, Object> synchronizeControl;
+	/**
+	 * Default interval of the deadlock detector in milliseconds.
+	 */
+	public static final long DEFAULT_DETECTION_INTERVAL = 20;
 
-	// 当前有依赖的tid集合 用于死锁检测
-	private ConcurrentHashMap<TransactionId, Set<TransactionId>> dependencyOnTids;
+	/**
+	 * Default number of page locks a transaction may hold on one table before
+	 * they are escalated to a table lock.
+	 */
+	public static final int DEFAULT_ESCALATION_THRESHOLD = 1000;
 
-	// 当前正在等待获取锁的tid集合
-	private Set<TransactionId> waitingTransactions;
+	/**
+	 * Default time in milliseconds a request waits for a lock before it fails.
+	 */
+	public static final long DEFAULT_LOCK_TIMEOUT = 5000;
+
+	// 所有LockManager共用一个检测线程 没有等待时不占用
+	private static final ScheduledExecutorService DETECTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "simpledb-deadlock-detector");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// 每个table(TableKey)和page(PageId)的锁状态
+	private final ConcurrentHashMap<Object, LockEntry> lockTable;
+
+	// 正在等待的事务 -> 它的请求 请求的blockers就是等待图的边
+	private final ConcurrentHashMap<TransactionId, LockRequest> waiting;
+
+	// 每个事务持有的锁
+	private final ConcurrentHashMap<TransactionId, TxnLocks> txnLocks;
+
+	private volatile int escalationThreshold = DEFAULT_ESCALATION_THRESHOLD;
+	private final LongAdder escalations = new LongAdder();
+
+	private volatile long detectionInterval = DEFAULT_DETECTION_INTERVAL;
+	// 检测任务是否已经安排
+	private final AtomicBoolean detecting = new AtomicBoolean();
+	private final LongAdder aborts = new LongAdder();
+	private volatile long lockTimeout = DEFAULT_LOCK_TIMEOUT;
+	private final LongAdder timeouts = new LongAdder();
+
+	private final Policy policy;
+	// 被wound的事务 下次acquireLock时失败
+	private final Set<TransactionId> wounded;
 
 	public LockManager() {
-		this.lockState = new ConcurrentHashMap<>();
-		this.synchronizeControl = new ConcurrentHashMap<>();
-		this.dependencyOnTids = new ConcurrentHashMap<>();
-		this.waitingTransactions = new HashSet<>();
+		this(Policy.DETECT);
 	}
 
+	public LockManager(Policy policy) {
+		this.policy = policy;
+		this.wounded = ConcurrentHashMap.newKeySet();
+		this.lockTable = new ConcurrentHashMap<>();
+		this.waiting = new ConcurrentHashMap<>();
+		this.txnLocks = new ConcurrentHashMap<>();
+	}
+
+	public long getDetectionInterval() {
+		return this.detectionInterval;
+	}
+
+	/**
+	 * @param millis the interval between two runs of the deadlock detector
+	 */
+	public void setDetectionInterval(long millis) {
+		if (millis <= 0) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		this.detectionInterval = millis;
+	}
+
+	public long getLockTimeout() {
+		return this.lockTimeout;
+	}
+
+	/**
+	 * @param millis the time a request waits for a lock before it fails
+	 */
+	public void setLockTimeout(long millis) {
+		if (millis <= 0) {
+			throw new IllegalArgumentException("timeout must be positive");
+		}
+		this.lockTimeout = millis;
+	}
+
+	/**
+	 * @return the number of requests which failed because they waited longer
+	 * than the lock timeout
+	 */
+	public long getTimeouts() {
+		return this.timeouts.sum();
+	}
+
+	public Policy getPolicy() {
+		return this.policy;
+	}
+
+	public int getEscalationThreshold() {
+		return this.escalationThreshold;
+	}
+
+	/**
+	 * @param pages the number of page locks a transaction may hold on one
+	 *              table before they are escalated to a table lock
+	 */
+	public void setEscalationThreshold(int pages) {
+		if (pages <= 0) {
+			throw new IllegalArgumentException("threshold must be positive");
+		}
+		this.escalationThreshold = pages;
+	}
+
+	/**
+	 * @return the number of times page locks were escalated to a table lock
+	 */
+	public long getEscalations() {
+		return this.escalations.sum();
+	}
+
+	/**
+	 * @return the number of transactions aborted to break or to prevent
+	 * deadlocks: victims of the detector, requesters that died and wounded
+	 * transactions
+	 */
+	public long getAborts() {
+		return this.aborts.sum();
+	}
+
+	/**
+	 * Acquire a lock on the page, and the intention lock on its table, waiting
+	 * as long as other transactions hold conflicting locks.
+	 *
+	 * @return true if the lock is granted, false if the transaction was chosen
+	 * as the victim of a deadlock, died or was wounded, waited longer than the
+	 * lock timeout, or the thread was interrupted
+	 */
 	public boolean acquireLock(TransactionId tid, PageId pid, Permissions permissions) {
 		Debug.log("[LockManager#acquireLock] start acquire tid=%d, tableId=%d, pageNo=%d, perm=%s",
 				tid.getId(), pid.getTableId(), pid.getPageNumber(), permissions.toString());
 
-		this.synchronizeControl.putIfAbsent(pid, new Object());
-		this.lockState.putIfAbsent(pid, new LinkedList<>());
-
-		// 这里添加一个waitingTids 是为解决以下这种场景：
-		// t1 acquires p0.read; t2 acquires p0.read;
-		// t1 attempts to upgrade to p0.write; t2 attempts to upgrade to p0.write
-		// 因为获取的是同一个page的锁，所以当t1正在while循环获取的时候，是没办法感知t2正被拦在synchronized外面等待获取同一个page的锁
-		// 所以记录一个waiting list.
-		this.waitingTransactions.add(tid);
+		if (this.policy == Policy.WOUND_WAIT && this.wounded.contains(tid)) {
+			return false;
+		}
+		int tableId = pid.getTableId();
+		// 只读不建 已经结束的事务再来请求时不会留下空的索引
+		TxnLocks txn = this.txnLocks.get(tid);
+		LockMode tableMode = txn == null ? null : txn.tables.get(tableId);
+		LockMode pageMode = LockMode.of(permissions);
+		if (tableMode != null && tableMode.covers(pageMode)) {
+			if (pageMode == LockMode.X) {
+				// 没有page锁 但提交时要知道写过哪些page
+				txn.pages.add(pid);
+			}
+			return true;
+		}
+		LockMode intention = LockMode.intention(permissions);
+		if ((tableMode == null || !tableMode.covers(intention)) && !lock(new TableKey(tableId), tid, intention)) {
+			return false;
+		}
+		if (!lock(pid, tid, pageMode)) {
+			return false;
+		}
+		// 授予锁的时候由locked(..)创建
+		txn = this.txnLocks.get(tid);
+		if (txn != null && txn.pageLocks(tableId).get() > this.escalationThreshold) {
+			escalate(tid, txn, tableId);
+		}
+		return true;
+	}
 
-		int loopCount = 0;
+	private boolean lock(Object key, TransactionId tid, LockMode mode) {
+		while (true) {
+			LockEntry entry = this.lockTable.computeIfAbsent(key, LockEntry::new);
+			synchronized (entry) {
+				// 被releasePageIdLock摘掉了 重新取一个
+				if (entry.retired) {
+					continue;
+				}
+				return acquire(entry, tid, mode);
+			}
+		}
+	}
 
-		synchronized (this.synchronizeControl.get(pid)) {
-			this.waitingTransactions.remove(tid);
+	/**
+	 * Called with the monitor of the entry held.
+	 */
+	private boolean acquire(LockEntry entry, TransactionId tid, LockMode mode) {
+		LockMode held = entry.holders.get(tid);
+		if (held != null && held.covers(mode)) {
+			return true;
+		}
+		LockRequest request = new LockRequest(entry, tid, held == null ? mode : held.combine(mode), held != null);
+		if ((request.upgrade || entry.queue.isEmpty()) && entry.compatible(request)) {
+			entry.holders.put(tid, request.mode);
+			locked(entry, tid, request.mode, held);
+			if (!entry.queue.isEmpty()) {
+				publishWaits(entry);
+			}
+			return true;
+		}
 
-			while (true) {
-				if (lockState.get(pid).size() == 0) {
-					lockState.get(pid).add(new LockNode(tid, permissions, pid));
-					this.dependencyOnTids.remove(tid);
-					return true;
+		entry.enqueue(request);
+		this.waiting.put(tid, request);
+		publishWaits(entry);
+		if (this.policy == Policy.DETECT) {
+			startDetector();
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.lockTimeout);
+		try {
+			while (!request.granted) {
+				// 先登记到waiting再检查wounded 和wound(..)的顺序相反 两边至少有一边能看到对方
+				if (request.aborted || (this.policy == Policy.WOUND_WAIT && this.wounded.contains(tid))) {
+					Debug.log(Debug.LEVEL_DEBUG, "hasDeadLock:  tid=%d, tableId=%d, pageNo=%d, mode=%s",
+							tid.getId(), entry.tableId, entry.pageNo, request.mode);
+					return false;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					// 没有环但一直拿不到锁 多半是有事务没有complete 漏掉了锁
+					this.timeouts.increment();
+					Debug.log(Debug.LEVEL_DEBUG, "lock timeout:  tid=%d, tableId=%d, pageNo=%d, mode=%s",
+							tid.getId(), entry.tableId, entry.pageNo, request.mode);
+					return false;
 				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(entry, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			this.waiting.remove(tid, request);
+			if (!request.granted) {
+				// 放弃等待(包括线程被stop) 排在后面的请求可能因此可以授予了
+				entry.queue.remove(request);
+				grant(entry);
+				retireIfIdle(entry);
+			}
+		}
+	}
 
-				// 加S锁 如果没有X锁就可以加S锁
-				// 注意这里如果是同一个事务之前有X锁然后现在变成S锁是允许的 需要特殊处理
-				if (permissions == Permissions.READ_ONLY) {
-					boolean hasXLock = false;
-					for (LockNode n : lockState.get(pid)) {
-						if (n.isXLock() && !n.belongTo(tid)) {
-							hasXLock = true;
-							this.dependencyOnTids.putIfAbsent(tid, new HashSet<>());
-							this.dependencyOnTids.get(tid).add(n.tid);
-						}
-					}
-					if (!hasXLock) {
-						this.lockState.get(pid).add(new LockNode(tid, permissions, pid));
-						this.dependencyOnTids.remove(tid);
-						return true;
-					} else {
-						if (hasDeadLockDependency(this.dependencyOnTids, this.waitingTransactions, tid, tid,
-								new HashSet<>())) {
-							this.dependencyOnTids.remove(tid);
-
-							Debug.log(Debug.LEVEL_DEBUG, "hasDeadLock:  tid=%d, tableId=%d, pageNo=%d, perm=%s",
-									tid.getId(), pid.getTableId(), pid.getPageNumber(), permissions);
-
-							return false;
-						}
-					}
+	/**
+	 * Upgrade the table lock of the transaction to S or X if that is possible
+	 * without waiting, and release its page locks on the table. Pages locked
+	 * X stay in the index of the transaction, for {@link #relatedPages}.
+	 */
+	private void escalate(TransactionId tid, TxnLocks txn, int tableId) {
+		LockMode target = txn.tables.get(tableId) == LockMode.IS ? LockMode.S : LockMode.X;
+		LockEntry entry = this.lockTable.get(new TableKey(tableId));
+		if (entry == null) {
+			return;
+		}
+		synchronized (entry) {
+			LockMode held = entry.holders.get(tid);
+			if (entry.retired || held == null) {
+				return;
+			}
+			// 不排队 授予不了就下次再试 升级优先于队列里的请求
+			LockRequest request = new LockRequest(entry, tid, held.combine(target), true);
+			if (!entry.compatible(request)) {
+				return;
+			}
+			entry.holders.put(tid, request.mode);
+			locked(entry, tid, request.mode, held);
+			publishWaits(entry);
+		}
+		for (Iterator<PageId> it = txn.pages.iterator(); it.hasNext(); ) {
+			PageId pid = it.next();
+			if (pid.getTableId() != tableId) {
+				continue;
+			}
+			if (release(pid, tid) == LockMode.S) {
+				it.remove();
+			}
+		}
+		txn.pageLocks.remove(tableId);
+		this.escalations.increment();
+		Debug.log(Debug.LEVEL_DEBUG, "[LockManager#escalate] tid=%d, tableId=%d, mode=%s",
+				tid.getId(), tableId, target);
+	}
 
-					// 加X锁 如果有其他事务同时用到这个page则不能升级
-				} else {
-					boolean canUpdateLock = true;
-					for (LockNode n : lockState.get(pid)) {
-						if (!n.belongTo(tid)) {
-							canUpdateLock = false;
-							this.dependencyOnTids.putIfAbsent(tid, new HashSet<>());
-							this.dependencyOnTids.get(tid).add(n.tid);
-						}
-					}
-					if (canUpdateLock) {
-						for (LockNode n : lockState.get(pid)) {
-							n.upgradeToXLock();
-						}
-						this.dependencyOnTids.remove(tid);
-						return true;
-					} else {
-						if (hasDeadLockDependency(this.dependencyOnTids, this.waitingTransactions, tid, tid,
-								new HashSet<>())) {
-							this.dependencyOnTids.remove(tid);
-
-							Debug.log(Debug.LEVEL_DEBUG, "hasDeadLock:  tid=%d, tableId=%d, pageNo=%d, perm=%s",
-									tid.getId(), pid.getTableId(), pid.getPageNumber(), permissions);
-
-							return false;
-						}
+	/**
+	 * Record a granted lock in the index of the transaction, creating the
+	 * index on its first lock. This is the only place an index is created: a
+	 * transaction which keeps locking after completeTransaction gets a new
+	 * index only together with a lock it really holds, which its next
+	 * completeTransaction releases and removes with the index. Called with
+	 * the monitor of the entry held.
+	 *
+	 * @param mode     the mode the transaction holds now
+	 * @param previous the mode it held before, or null
+	 */
+	private void locked(LockEntry entry, TransactionId tid, LockMode mode, LockMode previous) {
+		TxnLocks txn = this.txnLocks.computeIfAbsent(tid, k -> new TxnLocks());
+		if (entry.key instanceof TableKey) {
+			txn.tables.put(entry.tableId, mode);
+		} else if (previous == null) {
+			txn.pages.add((PageId) entry.key);
+			txn.pageLocks(entry.tableId).incrementAndGet();
+		}
+	}
+
+	/**
+	 * Release the lock of the transaction on the table or page and grant the
+	 * waiters.
+	 *
+	 * @return the mode the transaction held, or null
+	 */
+	private LockMode release(Object key, TransactionId tid) {
+		LockEntry entry = this.lockTable.get(key);
+		if (entry == null) {
+			return null;
+		}
+		synchronized (entry) {
+			LockMode held = entry.holders.remove(tid);
+			if (held != null) {
+				grant(entry);
+				retireIfIdle(entry);
+			}
+			return held;
+		}
+	}
+
+	/**
+	 * Drop the entry from the lock table if nobody holds or waits for it.
+	 * Called with the monitor of the entry held.
+	 */
+	private void retireIfIdle(LockEntry entry) {
+		if (entry.holders.isEmpty() && entry.queue.isEmpty()) {
+			entry.retired = true;
+			this.lockTable.remove(entry.key, entry);
+		}
+	}
+
+	/**
+	 * Let every queued request of the entry publish who it waits for now.
+	 * Called with the monitor of the entry held.
+	 */
+	private void publishWaits(LockEntry entry) {
+		for (LockRequest r : entry.queue) {
+			r.blockers = entry.blockers(r);
+			if (this.policy != Policy.DETECT) {
+				prevent(r);
+			}
+		}
+	}
+
+	/**
+	 * Keep the edges of the waits-for graph pointing one way: from older to
+	 * younger transactions under wait-die, from younger to older ones under
+	 * wound-wait. Called with the monitor of the entry of the request held.
+	 */
+	private void prevent(LockRequest r) {
+		for (TransactionId blocker : r.blockers) {
+			if (this.policy == Policy.WAIT_DIE) {
+				if (blocker.getId() < r.tid.getId()) {
+					if (abortRequest(r)) {
+						this.aborts.increment();
 					}
+					return;
 				}
+			} else if (blocker.getId() > r.tid.getId()) {
+				wound(blocker);
+			}
+		}
+	}
 
-				try {
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+	/**
+	 * Mark the transaction as wounded. If it waits for a lock, its request is
+	 * aborted on the detector thread: the request may wait on another entry,
+	 * whose monitor must not be taken while this one is held.
+	 */
+	private void wound(TransactionId tid) {
+		if (!this.wounded.add(tid)) {
+			return;
+		}
+		this.aborts.increment();
+		Debug.log(Debug.LEVEL_DEBUG, "[LockManager#wound] tid=%d", tid.getId());
+		if (this.waiting.containsKey(tid)) {
+			DETECTOR.execute(() -> abort(tid, false));
+		}
+	}
 
-				Debug.log(Debug.LEVEL_DEBUG, "[LockManager#acquireLock] tid=%d, tableId=%d, pageNo=%d, perm=%s",
-						tid.getId(), pid.getTableId(), pid.getPageNumber(), permissions);
+	private void startDetector() {
+		if (this.detecting.compareAndSet(false, true)) {
+			DETECTOR.schedule(this::runDetector, this.detectionInterval, TimeUnit.MILLISECONDS);
+		}
+	}
 
-				// timeout deadlock detection
-				if (++loopCount > 10) {
-					return false;
+	private void runDetector() {
+		try {
+			detectDeadlocks();
+		} finally {
+			if (!this.waiting.isEmpty()) {
+				DETECTOR.schedule(this::runDetector, this.detectionInterval, TimeUnit.MILLISECONDS);
+			} else {
+				this.detecting.set(false);
+				// 和新来的等待者竞争 它看到detecting为true就不会启动
+				if (!this.waiting.isEmpty()) {
+					startDetector();
 				}
 			}
 		}
 	}
 
 	/**
-	 * 有死锁的条件是：有事务循环依赖（包括正在等待获取锁的事务）
+	 * Find the cycles of the waits-for graph and abort the youngest
+	 * transaction of each one.
 	 */
-	private boolean hasDeadLockDependency(ConcurrentHashMap<TransactionId, Set<TransactionId>> dependency,
-			Set<TransactionId> waitingTids, TransactionId curTid, TransactionId loopTid, Set<TransactionId> visited) {
-		if (visited.contains(loopTid))
+	void detectDeadlocks() {
+		Map<TransactionId, Set<TransactionId>> graph = new HashMap<>();
+		for (LockRequest r : this.waiting.values()) {
+			graph.put(r.tid, r.blockers);
+		}
+		List<TransactionId> cycle;
+		while ((cycle = findCycle(graph)) != null) {
+			TransactionId victim = cycle.get(0);
+			for (TransactionId t : cycle) {
+				if (t.getId() > victim.getId()) {
+					victim = t;
+				}
+			}
+			if (stillWaiting(cycle)) {
+				abort(victim, true);
+			}
+			graph.remove(victim);
+		}
+	}
+
+	/**
+	 * @return the transactions of a cycle in the graph, in waits-for order,
+	 * or null if the graph has no cycle
+	 */
+	private static List<TransactionId> findCycle(Map<TransactionId, Set<TransactionId>> graph) {
+		Set<TransactionId> done = new HashSet<>();
+		List<TransactionId> path = new ArrayList<>();
+		for (TransactionId t : graph.keySet()) {
+			List<TransactionId> cycle = findCycle(graph, t, done, path);
+			if (cycle != null) {
+				return cycle;
+			}
+		}
+		return null;
+	}
+
+	private static List<TransactionId> findCycle(Map<TransactionId, Set<TransactionId>> graph, TransactionId t,
+			Set<TransactionId> done, List<TransactionId> path) {
+		int i = path.indexOf(t);
+		if (i >= 0) {
+			return new ArrayList<>(path.subList(i, path.size()));
+		}
+		if (done.contains(t)) {
+			return null;
+		}
+		path.add(t);
+		for (TransactionId next : graph.getOrDefault(t, Collections.emptySet())) {
+			List<TransactionId> cycle = findCycle(graph, next, done, path);
+			if (cycle != null) {
+				return cycle;
+			}
+		}
+		path.remove(path.size() - 1);
+		done.add(t);
+		return null;
+	}
+
+	/**
+	 * The graph is read without stopping the transactions. A cycle of a
+	 * deadlock does not go away, so a cycle whose edges are all still there
+	 * is a deadlock and not a mix of old and new edges.
+	 */
+	private boolean stillWaiting(List<TransactionId> cycle) {
+		for (int i = 0; i < cycle.size(); i++) {
+			LockRequest r = this.waiting.get(cycle.get(i));
+			if (r == null || r.granted || !r.blockers.contains(cycle.get((i + 1) % cycle.size()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Abort the request the transaction waits in, if any.
+	 *
+	 * @param count whether to count the abort, a wounded transaction is
+	 *              counted when it is wounded
+	 */
+	private void abort(TransactionId victim, boolean count) {
+		LockRequest r = this.waiting.get(victim);
+		if (r == null) {
+			return;
+		}
+		synchronized (r.entry) {
+			if (abortRequest(r) && count) {
+				this.aborts.increment();
+			}
+		}
+	}
+
+	/**
+	 * Called with the monitor of the entry of the request held.
+	 *
+	 * @return false if the request was already granted or aborted
+	 */
+	private boolean abortRequest(LockRequest r) {
+		if (r.granted || r.aborted) {
 			return false;
-		visited.add(loopTid);
-		for (TransactionId t : dependency.getOrDefault(loopTid, new HashSet<>())) {
-			if (t.equals(curTid) || waitingTids.contains(t) ||
-					hasDeadLockDependency(dependency, waitingTids, curTid, t, visited)) {
-				return true;
+		}
+		r.aborted = true;
+		r.entry.notifyAll();
+		return true;
+	}
+
+	/**
+	 * Grant the requests at the head of the queue that are compatible with
+	 * the holders, and let the others publish who they wait for now. Called
+	 * with the monitor of the entry held, after the holders or the queue
+	 * changed.
+	 */
+	private void grant(LockEntry entry) {
+		boolean changed = false;
+		for (Iterator<LockRequest> it = entry.queue.iterator(); it.hasNext(); ) {
+			LockRequest r = it.next();
+			if (!entry.compatible(r)) {
+				break;
 			}
+			it.remove();
+			LockMode held = entry.holders.get(r.tid);
+			LockMode mode = held == null ? r.mode : held.combine(r.mode);
+			entry.holders.put(r.tid, mode);
+			locked(entry, r.tid, mode, held);
+			r.granted = true;
+			this.waiting.remove(r.tid, r);
+			changed = true;
 		}
-		return false;
-	}
-
-	//	/**
-	//	 * 仅仅利用timeout来实现的死锁检测
-	//	 */
-	//	public boolean acquireLock(TransactionId tid, PageId pid, Permissions permissions) {
-	//		Debug.log("[LockManager#acquireLock] start acquire tid=%d, tableId=%d, pageNo=%d, perm=%s",
-	//				tid.getId(), pid.getTableId(), pid.getPageNumber(), permissions.toString());
-	//
-	//		this.synchronizeControl.putIfAbsent(pid, new Object());
-	//		this.lockState.putIfAbsent(pid, new LinkedList<>());
-	//
-	//		int loopCount = 0;
-	//
-	//		synchronized (this.synchronizeControl.get(pid)) {
-	//			while (true) {
-	//				if (lockState.get(pid).size() == 0) {
-	//					lockState.get(pid).add(new LockNode(tid, permissions, pid));
-	//					return true;
-	//				}
-	//
-	//				// 加S锁 如果没有X锁就可以加S锁
-	//				// 注意这里如果是同一个事务之前有X锁然后现在变成S锁是允许的 需要特殊处理
-	//				if (permissions == Permissions.READ_ONLY) {
-	//					boolean hasXLock = false;
-	//					for (LockNode n : lockState.get(pid)) {
-	//						if (n.isXLock()) {
-	//							if (!n.belongTo(tid)) {
-	//								hasXLock = true;
-	//                              break;
-	//							}
-	//						}
-	//					}
-	//					if (!hasXLock) {
-	//						lockState.get(pid).add(new LockNode(tid, permissions, pid));
-	//						return true;
-	//					}
-	//					// 加X锁 如果有其他事务同时用到这个page则不能升级
-	//				} else {
-	//					boolean canUpdateLock = true;
-	//					for (LockNode n : lockState.get(pid)) {
-	//						if (!n.belongTo(tid)) {
-	//							canUpdateLock = false;
-	//							break;
-	//						}
-	//					}
-	//					if (canUpdateLock) {
-	//						for (LockNode n : lockState.get(pid)) {
-	//							n.upgradeToXLock();
-	//						}
-	//						return true;
-	//					}
-	//				}
-	//
-	//				try {
-	//					Thread.sleep(100);
-	//				} catch (InterruptedException e) {
-	//					e.printStackTrace();
-	//				}
-	//
-	//				Debug.log(Debug.LEVEL_DEBUG, "[LockManager#acquireLock] tid=%d, tableId=%d, pageNo=%d, perm=%s",
-	//						tid.getId(), pid.getTableId(), pid.getPageNumber(), permissions);
-	//
-	//				// timeout deadlock detection
-	//				if (++loopCount > 5) {
-	//					return false;
-	//				}
-	//			}
-	//		}
-	//	}
+		publishWaits(entry);
+		if (changed) {
+			entry.notifyAll();
+		}
+	}
 
+	/**
+	 * @return whether the transaction holds a lock on the page, or a table
+	 * lock covering it
+	 */
 	public boolean holdsLock(TransactionId tid, PageId pid) {
-		this.synchronizeControl.putIfAbsent(pid, new Object());
-		synchronized (this.synchronizeControl.get(pid)) {
-			for (LockNode n : this.lockState.get(pid)) {
-				if (n.belongTo(tid)) {
-					return true;
-				}
-			}
+		TxnLocks txn = this.txnLocks.get(tid);
+		if (txn == null) {
+			return false;
+		}
+		LockMode tableMode = txn.tables.get(pid.getTableId());
+		if (tableMode != null && tableMode.covers(LockMode.S)) {
+			return true;
+		}
+		LockEntry entry = this.lockTable.get(pid);
+		if (entry == null) {
+			// 这个page从来没有被加过锁
+			return false;
+		}
+		synchronized (entry) {
+			return entry.holders.containsKey(tid);
 		}
-		return false;
 	}
 
 	/**
-	 * 对于某个事务 释放它在某个page上的锁
+	 * 对于某个事务 释放它在某个page上的锁 被table锁覆盖的page没有自己的锁
 	 */
 	public boolean releaseLock(TransactionId tid, PageId pid) {
-		synchronized (this.synchronizeControl.get(pid)) {
-			for (int i = this.lockState.get(pid).size() - 1; i >= 0; i--) {
-				if (this.lockState.get(pid).get(i).belongTo(tid)) {
-					this.lockState.get(pid).remove(i);
-				}
-			}
+		if (release(pid, tid) == null) {
+			return false;
+		}
+		TxnLocks txn = this.txnLocks.get(tid);
+		if (txn != null && txn.pages.remove(pid)) {
+			txn.pageLocks(pid.getTableId()).decrementAndGet();
 		}
 		return true;
 	}
 
 	/**
-	 * 目前的设计需要遍历这个lockState的map 所以在方法级别加上synchronized
+	 * Release all locks of the transaction. Only the tables and pages in the
+	 * index of the transaction are visited, one monitor at a time.
+	 *
+	 * @return the pages the transaction held locks on
 	 */
-	public synchronized List<PageId> completeTransaction(TransactionId tid) {
+	public List<PageId> completeTransaction(TransactionId tid) {
+		TxnLocks txn = this.txnLocks.remove(tid);
 		List<PageId> resList = new ArrayList<>();
-		for (Map.Entry<PageId, List<LockNode>> e : this.lockState.entrySet()) {
-			for (int i = e.getValue().size() - 1; i >= 0; i--) {
-				if (e.getValue().get(i).belongTo(tid)) {
-					resList.add(e.getValue().get(i).pid);
-					e.getValue().remove(i);
+		if (txn != null) {
+			for (PageId pid : txn.pages) {
+				if (release(pid, tid) != null) {
+					resList.add(pid);
 				}
 			}
+			for (Integer tableId : txn.tables.keySet()) {
+				release(new TableKey(tableId), tid);
+			}
 		}
+		// 锁都放掉之后才清除 否则可能在释放过程中又被wound
+		this.wounded.remove(tid);
 		return resList;
 	}
 
 	/**
-	 * 释放用于pageID并发控制的object 防止synchronizeControl一直增长
+	 * 释放page的锁状态 防止lockTable一直增长 有事务持有或等待时保留
 	 *
 	 * @param pid
 	 */
 	public void releasePageIdLock(PageId pid) {
-		this.synchronizeControl.remove(pid);
+		LockEntry entry = this.lockTable.get(pid);
+		if (entry == null) {
+			return;
+		}
+		synchronized (entry) {
+			retireIfIdle(entry);
+		}
 	}
 
 	/**
-	 * 获取该事物涉及锁的所有page
+	 * 获取该事物涉及锁的所有page 包括在table锁下写过的page
 	 */
-	public synchronized List<PageId> relatedPages(TransactionId tid) {
-		List<PageId> resList = new ArrayList<>();
-		for (Map.Entry<PageId, List<LockNode>> e : this.lockState.entrySet()) {
-			for (LockNode n : e.getValue()) {
-				if (n.belongTo(tid)) {
-					resList.add(n.pid);
-				}
-			}
+	public List<PageId> relatedPages(TransactionId tid) {
+		TxnLocks txn = this.txnLocks.get(tid);
+		return txn == null ? new ArrayList<>() : new ArrayList<>(txn.pages);
+	}
+
+	/**
+	 * @return the number of table and page locks in the lock table
+	 */
+	public int size() {
+		return this.lockTable.size();
+	}
+
+	/**
+	 * @return whether the transaction is queued for a lock, neither granted
+	 * nor aborted yet. Taking the monitor of the entry makes sure a waiter
+	 * seen here has reached its wait.
+	 */
+	boolean isWaiting(TransactionId tid) {
+		LockRequest r = this.waiting.get(tid);
+		if (r == null) {
+			return false;
 		}
-		return resList;
+		synchronized (r.entry) {
+			return !r.granted && !r.aborted;
+		}
+	}
+
+	/**
+	 * @return whether the lock manager keeps an index of locks for the
+	 * transaction
+	 */
+	boolean isTracked(TransactionId tid) {
+		return this.txnLocks.containsKey(tid);
 	}
 
-	class LockNode {
-		TransactionId tid;
-		Permissions permissions;
-		PageId pid;
+	/**
+	 * The key of the lock of a table in the lock table.
+	 */
+	static final class TableKey {
+		final int tableId;
 
-		LockNode(TransactionId tid, Permissions permissions, PageId pid) {
-			this.tid = tid;
-			this.permissions = permissions;
-			this.pid = pid;
+		TableKey(int tableId) {
+			this.tableId = tableId;
 		}
 
-		boolean isXLock() {
-			return this.permissions == Permissions.READ_WRITE;
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof TableKey && ((TableKey) o).tableId == this.tableId;
 		}
 
-		void upgradeToXLock() {
-			this.permissions = Permissions.READ_WRITE;
+		@Override
+		public int hashCode() {
+			return Integer.hashCode(this.tableId);
 		}
+	}
 
-		boolean belongTo(TransactionId tid) {
-			return this.tid.equals(tid);
+	/**
+	 * The locks of one transaction.
+	 */
+	static class TxnLocks {
+		// 持有page锁的page 和在table锁下写过的page
+		final Set<PageId> pages = ConcurrentHashMap.newKeySet();
+		// tableId -> 持有的table锁
+		final ConcurrentHashMap<Integer, LockMode> tables = new ConcurrentHashMap<>();
+		// tableId -> 持有的page锁数量 用于判断是否升级为table锁
+		final ConcurrentHashMap<Integer, AtomicInteger> pageLocks = new ConcurrentHashMap<>();
+
+		AtomicInteger pageLocks(int tableId) {
+			AtomicInteger n = this.pageLocks.get(tableId);
+			return n != null ? n : this.pageLocks.computeIfAbsent(tableId, k -> new AtomicInteger());
 		}
 	}
-}
 
+	/**
+	 * The lock of one table or page. All fields are guarded by the monitor of
+	 * the entry, which is also the monitor the waiting requests wait on.
+	 */
+	static class LockEntry {
+		// TableKey或PageId
+		final Object key;
+		final int tableId;
+		// table锁是-1
+		final int pageNo;
+		final LinkedHashMap<TransactionId, LockMode> holders = new LinkedHashMap<>();
+		// 升级请求在队首 其他请求按到达顺序
+		final ArrayDeque<LockRequest> queue = new ArrayDeque<>();
+		// 已经从lockTable中摘掉 不能再用
+		boolean retired;
+
+		LockEntry(Object key) {
+			this.key = key;
+			if (key instanceof PageId) {
+				this.tableId = ((PageId) key).getTableId();
+				this.pageNo = ((PageId) key).getPageNumber();
+			} else {
+				this.tableId = ((TableKey) key).tableId;
+				this.pageNo = -1;
+			}
+		}
+
+		void enqueue(LockRequest request) {
+			if (!request.upgrade) {
+				this.queue.addLast(request);
+				return;
+			}
+			// 排在已有的升级请求之后
+			ArrayDeque<LockRequest> upgrades = new ArrayDeque<>();
+			while (!this.queue.isEmpty() && this.queue.peekFirst().upgrade) {
+				upgrades.addLast(this.queue.pollFirst());
+			}
+			this.queue.addFirst(request);
+			while (!upgrades.isEmpty()) {
+				this.queue.addFirst(upgrades.pollLast());
+			}
+		}
+
+		boolean compatible(LockRequest request) {
+			for (Map.Entry<TransactionId, LockMode> h : this.holders.entrySet()) {
+				if (!h.getKey().equals(request.tid) && !request.mode.compatible(h.getValue())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return the transactions the request waits for: the holders and
+		 * the requests queued before it that it conflicts with
+		 */
+		Set<TransactionId> blockers(LockRequest request) {
+			Set<TransactionId> res = new HashSet<>();
+			for (Map.Entry<TransactionId, LockMode> h : this.holders.entrySet()) {
+				if (!h.getKey().equals(request.tid) && !request.mode.compatible(h.getValue())) {
+					res.add(h.getKey());
+				}
+			}
+			for (LockRequest r : this.queue) {
+				if (r == request) {
+					break;
+				}
+				if (!r.tid.equals(request.tid) && !request.mode.compatible(r.mode)) {
+					res.add(r.tid);
+				}
+			}
+			return Collections.unmodifiableSet(res);
+		}
+	}
 
+	/**
+	 * A request waiting in the queue of an entry. The flags are set with the
+	 * monitor of the entry held; the detector reads them without it.
+	 */
+	static class LockRequest {
+		final LockEntry entry;
+		final TransactionId tid;
+		// 升级请求是升级后的模式
+		final LockMode mode;
+		final boolean upgrade;
+		volatile boolean granted;
+		// 被死锁检测选为牺牲者
+		volatile boolean aborted;
+		volatile Set<TransactionId> blockers = Collections.emptySet();
+
+		LockRequest(LockEntry entry, TransactionId tid, LockMode mode, boolean upgrade) {
+			this.entry = entry;
+			this.tid = tid;
+			this.mode = mode;
+			this.upgrade = upgrade;
+		}
+	}
+}
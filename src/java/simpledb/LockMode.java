@@ -0,0 +1,73 @@
+package simpledb;
+
+/**
+ * The modes of a lock in multi-granularity locking. Tables are locked in any
+ * mode; pages only in S or X, after the intention mode on their table.
+ * <ul>
+ * <li>IS: some pages of the table will be read</li>
+ * <li>IX: some pages of the table will be written</li>
+ * <li>S: the whole table is read</li>
+ * <li>SIX: the whole table is read and some pages will be written</li>
+ * <li>X: the whole table is written</li>
+ * </ul>
+ */
+public enum LockMode {
+	IS, IX, S, SIX, X;
+
+	// COMPATIBLE[a][b]: a和b可以被不同事务同时持有
+	private static final boolean[][] COMPATIBLE = {
+			//       IS     IX     S      SIX    X
+			/* IS  */ {true, true, true, true, false},
+			/* IX  */ {true, true, false, false, false},
+			/* S   */ {true, false, true, false, false},
+			/* SIX */ {true, false, false, false, false},
+			/* X   */ {false, false, false, false, false},
+	};
+
+	// SUPREMUM[a][b]: 同时包含a和b的最弱的模式
+	private static final LockMode[][] SUPREMUM = {
+			//       IS   IX   S    SIX  X
+			/* IS  */ {IS, IX, S, SIX, X},
+			/* IX  */ {IX, IX, SIX, SIX, X},
+			/* S   */ {S, SIX, S, SIX, X},
+			/* SIX */ {SIX, SIX, SIX, SIX, X},
+			/* X   */ {X, X, X, X, X},
+	};
+
+	/**
+	 * @return whether other transactions may hold the two modes at the same
+	 * time
+	 */
+	public boolean compatible(LockMode other) {
+		return COMPATIBLE[ordinal()][other.ordinal()];
+	}
+
+	/**
+	 * @return the weakest mode granting everything this mode and the other
+	 * one grant
+	 */
+	public LockMode combine(LockMode other) {
+		return SUPREMUM[ordinal()][other.ordinal()];
+	}
+
+	/**
+	 * @return whether this mode grants everything the other one grants
+	 */
+	public boolean covers(LockMode other) {
+		return combine(other) == this;
+	}
+
+	/**
+	 * @return the page lock mode for the permissions
+	 */
+	public static LockMode of(Permissions perm) {
+		return perm == Permissions.READ_ONLY ? S : X;
+	}
+
+	/**
+	 * @return the table intention mode for page locks with the permissions
+	 */
+	public static LockMode intention(Permissions perm) {
+		return perm == Permissions.READ_ONLY ? IS : IX;
+	}
+}
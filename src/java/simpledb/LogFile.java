@@ -7,7 +7,10 @@ import java.io.RandomAccessFile;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -92,6 +95,8 @@ public class LogFile {
 	//    int pageSize;
 	int totalRecords = 0; // for PatchTest //protected by this
 	HashMap<Long, Long> tidToFirstLogRecord = new HashMap<Long, Long>();
+	long forcedOffset = 0; //protected by this
+	private volatile File manifestFile;
 	private RandomAccessFile raf;
 
 	/**
@@ -137,6 +142,14 @@ public class LogFile {
 		}
 	}
 
+	/**
+	 * @return true if the transaction has a BEGIN record and has neither
+	 * committed nor aborted yet
+	 */
+	public synchronized boolean isActive(TransactionId tid) {
+		return tidToFirstLogRecord.containsKey(tid.getId());
+	}
+
 	public synchronized int getTotalRecords() {
 		return totalRecords;
 	}
@@ -263,28 +276,27 @@ public class LogFile {
 			Class<?> idClass = Class.forName(idClassName);
 			Class<?> pageClass = Class.forName(pageClassName);
 
-			Constructor<?>[] idConsts = idClass.getDeclaredConstructors();
 			int numIdArgs = raf.readInt();
 			Object idArgs[] = new Object[numIdArgs];
+			Class<?> idArgTypes[] = new Class<?>[numIdArgs];
 			for (int i = 0; i < numIdArgs; i++) {
-				idArgs[i] = new Integer(raf.readInt());
+				idArgs[i] = raf.readInt();
+				idArgTypes[i] = int.class;
 			}
-			pid = (PageId) idConsts[0].newInstance(idArgs);
+			// 页面类有多个构造函数 按参数类型找 不能依赖getDeclaredConstructors的顺序
+			pid = (PageId) idClass.getDeclaredConstructor(idArgTypes).newInstance(idArgs);
 
-			Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
+			Constructor<?> pageConst = pageClass.getDeclaredConstructor(idClass, byte[].class);
 			int pageSize = raf.readInt();
 
 			byte[] pageData = new byte[pageSize];
-			raf.read(pageData); //read before image
-
-			Object[] pageArgs = new Object[2];
-			pageArgs[0] = pid;
-			pageArgs[1] = pageData;
+			raf.readFully(pageData); //read before image
 
-			newPage = (Page) pageConsts[0].newInstance(pageArgs);
+			newPage = (Page) pageConst.newInstance(pid, pageData);
 
 			//            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
-		} catch (ClassNotFoundException | InstantiationException | InvocationTargetException | IllegalAccessException e) {
+		} catch (ClassNotFoundException | NoSuchMethodException | InstantiationException
+				| InvocationTargetException | IllegalAccessException e) {
 			e.printStackTrace();
 			throw new IOException();
 		}
@@ -328,6 +340,7 @@ public class LogFile {
 				Iterator<Long> els = keys.iterator();
 				force();
 				Database.getBufferPool().flushAllPages();
+				writeManifest();
 				startCpOffset = raf.getFilePointer();
 				raf.writeInt(CHECKPOINT_RECORD);
 				raf.writeLong(-1); //no tid , but leave space for convenience
@@ -357,6 +370,39 @@ public class LogFile {
 		logTruncate();
 	}
 
+	/**
+	 * Set the file listing the hot pages of the buffer pool, rewritten on
+	 * every checkpoint and loaded by {@link BufferPool#warmUp(File)}. By
+	 * default no manifest is written.
+	 *
+	 * @param manifestFile the manifest, or null to write none
+	 */
+	public void setManifestFile(File manifestFile) {
+		this.manifestFile = manifestFile;
+	}
+
+	/**
+	 * @return the manifest written on every checkpoint, or null if none is
+	 * written
+	 */
+	public File getManifestFile() {
+		return manifestFile;
+	}
+
+	private void writeManifest() {
+		File manifest = this.manifestFile;
+		if (manifest == null) {
+			return;
+		}
+		try {
+			Database.getBufferPool().writeManifest(manifest);
+		} catch (IOException e) {
+			// 清单只用于预热 写失败不影响checkpoint
+			Debug.log(Debug.LEVEL_ERROR, "[LogFile] could not write the page manifest %s: %s",
+					manifest, e.getMessage());
+		}
+	}
+
 	/**
 	 * Truncate any unneeded portion of the log to reduce its space
 	 * consumption
@@ -471,10 +517,85 @@ public class LogFile {
 			synchronized (this) {
 				preAppend();
 				// some code goes here
+				Long first = tidToFirstLogRecord.get(tid.getId());
+				if (first == null) {
+					throw new NoSuchElementException("transaction " + tid.getId() + " is not running");
+				}
+				// 同一个page被写了多次 要恢复的是最早的before image
+				Map<PageId, Page> undo = new LinkedHashMap<>();
+				scan(first, (type, recordTid, before, after) -> {
+					if (type == UPDATE_RECORD && recordTid == tid.getId()) {
+						undo.putIfAbsent(before.getId(), before);
+					}
+				});
+				installPages(undo);
 			}
 		}
 	}
 
+	/**
+	 * Receives the records of the log in order, see {@link #scan}.
+	 */
+	private interface RecordVisitor {
+		/**
+		 * @param before the before image of an UPDATE record, null otherwise
+		 * @param after  the after image of an UPDATE record, null otherwise
+		 */
+		void visit(int type, long tid, Page before, Page after) throws IOException;
+	}
+
+	/**
+	 * Read the records from the given offset to the end of the log, then put
+	 * the file pointer back at the end of the log.
+	 */
+	private void scan(long offset, RecordVisitor visitor) throws IOException {
+		raf.seek(offset);
+		try {
+			while (true) {
+				int type;
+				try {
+					type = raf.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				long tid = raf.readLong();
+				Page before = null;
+				Page after = null;
+				switch (type) {
+				case UPDATE_RECORD:
+					before = readPageData(raf);
+					after = readPageData(raf);
+					break;
+				case CHECKPOINT_RECORD:
+					int numXactions = raf.readInt();
+					raf.skipBytes(numXactions * 2 * LONG_SIZE);
+					break;
+				}
+				raf.readLong();
+				visitor.visit(type, tid, before, after);
+			}
+		} finally {
+			raf.seek(raf.length());
+		}
+	}
+
+	/**
+	 * Write the page images to their files, bypassing the buffer pool, and
+	 * drop the cached versions of the pages.
+	 */
+	private void installPages(Map<PageId, Page> images) throws IOException {
+		Set<DbFile> written = new HashSet<>();
+		for (Page page : images.values()) {
+			DbFile file = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
+			file.writePage(page);
+			written.add(file);
+			Database.getBufferPool().discardPage(page.getId());
+		}
+		for (DbFile file : written) {
+			file.force();
+		}
+	}
+
 	/**
 	 * Shutdown the logging system, writing out whatever state
 	 * is necessary so that start up can happen quickly (without
@@ -484,6 +605,7 @@ public class LogFile {
 		try {
 			logCheckpoint();  //simple way to shutdown is to write a checkpoint record
 			raf.close();
+			Database.getCatalog().closeFiles();
 		} catch (IOException e) {
 			System.out.println("ERROR SHUTTING DOWN -- IGNORING.");
 			e.printStackTrace();
@@ -500,6 +622,53 @@ public class LogFile {
 			synchronized (this) {
 				recoveryUndecided = false;
 				// some code goes here
+				if (raf.length() < LONG_SIZE) {
+					return;
+				}
+				// 先找出所有已经结束的事务
+				Set<Long> committed = new HashSet<>();
+				Set<Long> finished = new HashSet<>();
+				Set<Long> losers = new HashSet<>();
+				scan(LONG_SIZE, (type, tid, before, after) -> {
+					if (type == COMMIT_RECORD) {
+						committed.add(tid);
+						finished.add(tid);
+					} else if (type == ABORT_RECORD) {
+						finished.add(tid);
+					} else if (type == BEGIN_RECORD || type == UPDATE_RECORD) {
+						losers.add(tid);
+					}
+				});
+				losers.removeAll(finished);
+
+				// redo: 按日志顺序重做已提交事务的修改 undo: 未结束事务的page恢复成最早的before image
+				// aborted的事务在写ABORT之前已经回滚过了 什么也不用做
+				Map<PageId, Page> redo = new LinkedHashMap<>();
+				Map<PageId, Page> undo = new LinkedHashMap<>();
+				scan(LONG_SIZE, (type, tid, before, after) -> {
+					if (type != UPDATE_RECORD) {
+						return;
+					}
+					if (committed.contains(tid)) {
+						redo.put(after.getId(), after);
+					} else if (losers.contains(tid)) {
+						undo.putIfAbsent(before.getId(), before);
+					}
+				});
+				installPages(redo);
+				installPages(undo);
+
+				// 给未结束的事务补上ABORT 否则下次恢复会把之后提交的修改撤销掉
+				currentOffset = raf.getFilePointer();
+				for (Long tid : losers) {
+					raf.writeInt(ABORT_RECORD);
+					raf.writeLong(tid);
+					raf.writeLong(currentOffset);
+					currentOffset = raf.getFilePointer();
+				}
+				force();
+				tidToFirstLogRecord.clear();
+				Debug.log("RECOVERED: %d committed, %d losers", committed.size(), losers.size());
 			}
 		}
 	}
@@ -513,6 +682,22 @@ public class LogFile {
 
 	public synchronized void force() throws IOException {
 		raf.getChannel().force(true);
+		forcedOffset = raf.length();
+	}
+
+	/**
+	 * @return the length of the log on disk at the last {@link #force()}. A
+	 * crash may lose every record after it.
+	 */
+	public synchronized long getForcedOffset() {
+		return forcedOffset;
+	}
+
+	/**
+	 * @return the file backing the log
+	 */
+	public File getFile() {
+		return logFile;
 	}
 
 }
@@ -0,0 +1,53 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Strict LRU replacement. Every hit moves the page to the most recently used
+ * end of an access ordered list, so hits are serialized on the policy monitor.
+ */
+public class LruPolicy implements ReplacementPolicy {
+
+	// accessOrder=true 每次get都会把节点移到链表尾部
+	private final LinkedHashMap<PageId, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+	@Override
+	public synchronized void recordAccess(PageId pid) {
+		order.get(pid);
+	}
+
+	@Override
+	public synchronized void recordInsert(PageId pid) {
+		order.put(pid, Boolean.TRUE);
+	}
+
+	@Override
+	public synchronized void recordRemove(PageId pid) {
+		order.remove(pid);
+	}
+
+	@Override
+	public synchronized PageId victim(Predicate<PageId> evictable) {
+		Iterator<PageId> it = order.keySet().iterator();
+		while (it.hasNext()) {
+			PageId pid = it.next();
+			if (evictable.test(pid)) {
+				it.remove();
+				return pid;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized List<PageId> recencyOrder() {
+		List<PageId> res = new ArrayList<>(order.keySet());
+		Collections.reverse(res);
+		return res;
+	}
+}
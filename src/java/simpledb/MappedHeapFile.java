@@ -0,0 +1,116 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+
+/**
+ * MappedHeapFile is a HeapFile for read-mostly tables that serves page reads
+ * from a memory-mapped view of the file. readPage builds the HeapPage
+ * straight from the mapped region, without reading into a byte array first.
+ * <p>
+ * The file is mapped in chunks of {@link #CHUNK_PAGES} pages. A read-only
+ * mapping cannot extend past the end of the file, so the last chunk only
+ * covers the pages that exist when it is mapped; it is remapped when
+ * insertTuple has appended pages past its end, and new chunks are mapped as
+ * the file keeps growing.
+ * <p>
+ * Writes still go through the file channel. The mapping is shared with the
+ * page cache of the operating system, so it sees them immediately.
+ *
+ * @see simpledb.HeapFile
+ */
+public class MappedHeapFile extends HeapFile {
+
+	/**
+	 * Number of pages covered by one mapped chunk.
+	 */
+	public static final int CHUNK_PAGES = 256;
+
+	// 读路径不加锁 只有重新映射的时候才加锁
+	private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+	private volatile int mappedPageSize;
+
+	public MappedHeapFile(File f, TupleDesc td) {
+		super(f, td);
+	}
+
+	// see DbFile.java for javadocs
+	public Page readPage(PageId pid) {
+		ByteBuffer region;
+		try {
+			region = region(pid.getPageNumber());
+		} catch (IOException e) {
+			e.printStackTrace();
+			region = null;
+		}
+		if (region == null) {
+			// 页不在文件里或者映射失败 走普通的读路径
+			return super.readPage(pid);
+		}
+		try {
+			return new HeapPage((HeapPageId) pid, region);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return a buffer over the mapped bytes of the page, or null if the page
+	 * lies past the end of the file
+	 */
+	private ByteBuffer region(int pageNo) throws IOException {
+		int pageSize = getPageSize();
+		int chunkNo = pageNo / CHUNK_PAGES;
+		int start = (pageNo % CHUNK_PAGES) * pageSize;
+
+		MappedByteBuffer[] mapped = this.chunks;
+		MappedByteBuffer chunk = mappedPageSize == pageSize && chunkNo < mapped.length ? mapped[chunkNo] : null;
+		if (chunk == null || chunk.capacity() < start + pageSize) {
+			chunk = remap(chunkNo, pageSize);
+			if (chunk == null || chunk.capacity() < start + pageSize) {
+				return null;
+			}
+		}
+		ByteBuffer view = chunk.duplicate();
+		view.limit(start + pageSize).position(start);
+		return view;
+	}
+
+	private synchronized MappedByteBuffer remap(int chunkNo, int pageSize) throws IOException {
+		MappedByteBuffer[] mapped = this.chunks;
+		if (mappedPageSize != pageSize) {
+			mapped = new MappedByteBuffer[0];
+			mappedPageSize = pageSize;
+		}
+		long chunkBytes = (long) CHUNK_PAGES * pageSize;
+		long offset = chunkNo * chunkBytes;
+		long length = Math.min(chunkBytes, (long) numPages() * pageSize - offset);
+		if (length <= 0) {
+			this.chunks = mapped;
+			return null;
+		}
+		MappedByteBuffer chunk = chunkNo < mapped.length ? mapped[chunkNo] : null;
+		if (chunk == null || chunk.capacity() < length) {
+			chunk = channel.map(offset, length);
+			if (chunkNo >= mapped.length) {
+				mapped = Arrays.copyOf(mapped, chunkNo + 1);
+			} else {
+				mapped = mapped.clone();
+			}
+			mapped[chunkNo] = chunk;
+		}
+		this.chunks = mapped;
+		return chunk;
+	}
+
+	// see DbFile.java for javadocs
+	public synchronized void close() {
+		// 映射在被GC回收时才会真正释放
+		chunks = new MappedByteBuffer[0];
+		super.close();
+	}
+}
@@ -56,4 +56,12 @@ public interface Page {
 	 * copy current content to the before image.
 	 */
 	public void setBeforeImage();
+
+	/**
+	 * @return the number of bytes of this page on disk, which is what the
+	 * page counts for in the capacity of the BufferPool
+	 */
+	public default int getSize() {
+		return BufferPool.getPageSize();
+	}
 }
@@ -0,0 +1,218 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PageArena is an off-heap page cache made of fixed-size frames carved out
+ * of large direct ByteBuffers. Its size is bounded in bytes, and the frames
+ * live outside the Java heap, so a large arena adds no GC pressure.
+ * <p>
+ * The arena holds the on-disk images of clean pages evicted from the
+ * BufferPool. A page taken back into the pool is decoded straight from its
+ * frame and the frame is freed, so a page is never cached in both tiers.
+ * When the arena is full, frames are recycled in CLOCK order.
+ *
+ * @Threadsafe
+ */
+public class PageArena {
+
+	/**
+	 * Builds a page from the image held by a frame.
+	 */
+	public interface Decoder {
+		/**
+		 * @return the decoded page, or null if the image can not be decoded
+		 */
+		Page decode(PageId pid, ByteBuffer image);
+	}
+
+	/**
+	 * Upper bound of bytes of a single direct buffer.
+	 */
+	static final int MAX_ARENA_BYTES = 1 << 26;
+
+	private final int frameSize;
+	private final int framesPerArena;
+	private final ByteBuffer[] arenas;
+	private final PageId[] owner;
+	private final int[] length;
+	private final boolean[] referenced;
+	private final Map<PageId, Integer> frameOf;
+	private final ArrayDeque<Integer> free;
+	private int hand;
+
+	/**
+	 * @param capacityBytes maximum number of bytes of all frames
+	 * @param frameSize     bytes of one frame, usually the page size
+	 */
+	public PageArena(long capacityBytes, int frameSize) {
+		if (frameSize <= 0 || capacityBytes < frameSize) {
+			throw new IllegalArgumentException("arena must hold at least one frame");
+		}
+		long frames = capacityBytes / frameSize;
+		if (frames > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("too many frames: " + frames);
+		}
+		int numFrames = (int) frames;
+		this.frameSize = frameSize;
+		this.framesPerArena = Math.max(1, Math.min(numFrames, MAX_ARENA_BYTES / frameSize));
+		this.arenas = new ByteBuffer[(numFrames + framesPerArena - 1) / framesPerArena];
+		this.owner = new PageId[numFrames];
+		this.length = new int[numFrames];
+		this.referenced = new boolean[numFrames];
+		this.frameOf = new HashMap<>();
+		this.free = new ArrayDeque<>(numFrames);
+		for (int i = 0; i < numFrames; i++) {
+			free.add(i);
+		}
+	}
+
+	/**
+	 * @return a view over the whole frame, positioned at its start
+	 */
+	private ByteBuffer frame(int slot) {
+		int a = slot / framesPerArena;
+		if (arenas[a] == null) {
+			// direct buffer按需分配 没用到的arena不占内存
+			int frames = Math.min(framesPerArena, owner.length - a * framesPerArena);
+			arenas[a] = ByteBuffer.allocateDirect(frames * frameSize);
+		}
+		ByteBuffer view = arenas[a].duplicate();
+		int start = (slot % framesPerArena) * frameSize;
+		view.limit(start + frameSize).position(start);
+		return view;
+	}
+
+	/**
+	 * Copy the on-disk image of a clean page into a frame, replacing any older
+	 * image of the same page.
+	 *
+	 * @return false if the page image does not fit in a frame or no frame can
+	 * be recycled
+	 */
+	public synchronized boolean store(Page page) {
+		byte[] data = page.getPageData();
+		if (data.length > frameSize) {
+			return false;
+		}
+		PageId pid = page.getId();
+		Integer slot = frameOf.get(pid);
+		if (slot == null) {
+			slot = free.isEmpty() ? sweep() : free.poll();
+			if (slot < 0) {
+				return false;
+			}
+			owner[slot] = pid;
+			frameOf.put(pid, slot);
+		}
+		frame(slot).put(data);
+		length[slot] = data.length;
+		referenced[slot] = false;
+		return true;
+	}
+
+	/**
+	 * CLOCK sweep for a frame to recycle. Only called when no frame is free.
+	 * Frames being decoded by {@link #take} have no owner and are skipped.
+	 *
+	 * @return the recycled frame, or -1 if every frame is being decoded
+	 */
+	private int sweep() {
+		for (int i = 0; i < 2 * owner.length; i++) {
+			int slot = hand;
+			hand = (hand + 1) % owner.length;
+			if (owner[slot] == null) {
+				continue;
+			}
+			if (referenced[slot]) {
+				referenced[slot] = false;
+				continue;
+			}
+			frameOf.remove(owner[slot]);
+			owner[slot] = null;
+			return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * Remove the page from the arena and decode it from its frame.
+	 *
+	 * @return the decoded page, or null if the page is not in the arena
+	 */
+	public Page take(PageId pid, Decoder decoder) {
+		int slot;
+		synchronized (this) {
+			Integer s = frameOf.remove(pid);
+			if (s == null) {
+				return null;
+			}
+			// frame已经不在frameOf和free里了 解码的时候不会被别的线程复用
+			slot = s;
+			owner[slot] = null;
+		}
+		try {
+			return decode(pid, slot, decoder);
+		} finally {
+			synchronized (this) {
+				free.add(slot);
+			}
+		}
+	}
+
+	/**
+	 * Decode the page from its frame, leaving it in the arena.
+	 *
+	 * @return the decoded page, or null if the page is not in the arena
+	 */
+	public synchronized Page peek(PageId pid, Decoder decoder) {
+		Integer slot = frameOf.get(pid);
+		if (slot == null) {
+			return null;
+		}
+		referenced[slot] = true;
+		return decode(pid, slot, decoder);
+	}
+
+	private Page decode(PageId pid, int slot, Decoder decoder) {
+		ByteBuffer image = frame(slot);
+		image.limit(image.position() + length[slot]);
+		return decoder.decode(pid, image);
+	}
+
+	/**
+	 * Drop the image of the page, if any.
+	 */
+	public synchronized void remove(PageId pid) {
+		Integer slot = frameOf.remove(pid);
+		if (slot != null) {
+			owner[slot] = null;
+			free.add(slot);
+		}
+	}
+
+	public synchronized boolean contains(PageId pid) {
+		return frameOf.containsKey(pid);
+	}
+
+	public synchronized int size() {
+		return frameOf.size();
+	}
+
+	/**
+	 * @return number of frames of the arena
+	 */
+	public int capacity() {
+		return owner.length;
+	}
+
+	/**
+	 * @return bytes of one frame
+	 */
+	public int getFrameSize() {
+		return frameSize;
+	}
+}
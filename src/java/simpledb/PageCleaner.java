@@ -0,0 +1,203 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PageCleaner trickles dirty pages of running transactions to disk ahead of
+ * eviction when the BufferPool runs in STEAL mode.
+ * <p>
+ * A daemon thread checks the ratio of dirty pages in the pool periodically,
+ * weighted by their page sizes,
+ * and as soon as a mutation pushes it past the high watermark. Once above the
+ * high watermark it writes dirty pages back in batches until the ratio drops
+ * to the low watermark, so a page miss almost always finds a clean victim and
+ * a commit has fewer pages left to write.
+ * <p>
+ * Each batch is written while holding the mutation latch of the pool, so no
+ * page is written while a transaction is modifying it. The write-ahead rule
+ * and the undo information of the stolen pages are handled by
+ * {@link BufferPool#steal(List)}.
+ *
+ * @Threadsafe
+ */
+public class PageCleaner implements Runnable {
+
+	public static final double DEFAULT_LOW_WATERMARK = 0.25;
+	public static final double DEFAULT_HIGH_WATERMARK = 0.5;
+	static final long DEFAULT_INTERVAL_MS = 50;
+	static final int MAX_BATCH_PAGES = 32;
+	// 拿不到latch就等下一轮 不挡住前台的修改
+	private static final long LATCH_WAIT_MS = 10;
+
+	private final BufferPool bufferPool;
+	private volatile double lowWatermark = DEFAULT_LOW_WATERMARK;
+	private volatile double highWatermark = DEFAULT_HIGH_WATERMARK;
+
+	// guarded by this
+	private Thread thread;
+	private boolean wakeup;
+
+	PageCleaner(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Set the dirty ratios at which cleaning starts and stops.
+	 */
+	public void setWatermarks(double low, double high) {
+		if (low < 0 || low > high || high > 1) {
+			throw new IllegalArgumentException("bad watermarks " + low + ", " + high);
+		}
+		this.lowWatermark = low;
+		this.highWatermark = high;
+	}
+
+	public double getLowWatermark() {
+		return lowWatermark;
+	}
+
+	public double getHighWatermark() {
+		return highWatermark;
+	}
+
+	/**
+	 * @return true if the background thread is running
+	 */
+	public synchronized boolean isRunning() {
+		return thread != null;
+	}
+
+	synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(this, "simpledb-cleaner");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void stop() {
+		Thread t;
+		synchronized (this) {
+			t = thread;
+			thread = null;
+			notifyAll();
+		}
+		if (t != null && t != Thread.currentThread()) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Called after pages have been dirtied. Wakes the thread up if the pool
+	 * is above the high watermark.
+	 */
+	void dirtied() {
+		if (isRunning() && bufferPool.dirtyRatio() >= highWatermark) {
+			synchronized (this) {
+				wakeup = true;
+				notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			synchronized (this) {
+				if (thread != Thread.currentThread()) {
+					return;
+				}
+				if (!wakeup) {
+					try {
+						wait(DEFAULT_INTERVAL_MS);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				wakeup = false;
+				if (thread != Thread.currentThread()) {
+					return;
+				}
+			}
+			try {
+				cleanOnce();
+			} catch (IOException | RuntimeException e) {
+				// 后台写失败不影响前台 前台提交的时候还会再写
+				Debug.log(Debug.LEVEL_DEBUG, "[PageCleaner] cleaning failed: %s", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Run one cleaning pass: if the pool is above the high watermark, write
+	 * dirty pages back until it is at the low watermark.
+	 *
+	 * @return the number of pages written
+	 */
+	int cleanOnce() throws IOException {
+		if (bufferPool.dirtyRatio() < highWatermark) {
+			return 0;
+		}
+		int written = 0;
+		while (bufferPool.dirtyRatio() > lowWatermark) {
+			int n = cleanBatch();
+			if (n <= 0) {
+				break;
+			}
+			written += n;
+		}
+		if (written > 0) {
+			Debug.log(Debug.LEVEL_DEBUG, "[PageCleaner] wrote %d pages, dirty ratio now %.2f",
+					written, bufferPool.dirtyRatio());
+		}
+		return written;
+	}
+
+	private int cleanBatch() throws IOException {
+		boolean latched;
+		try {
+			latched = bufferPool.mutationLatch().writeLock().tryLock(LATCH_WAIT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+		if (!latched) {
+			return -1;
+		}
+		try {
+			List<Page> dirty = bufferPool.dirtyPages(null);
+			long dirtyBytes = 0;
+			for (Page page : dirty) {
+				dirtyBytes += page.getSize();
+			}
+			long excess = (long) Math.ceil(dirtyBytes - lowWatermark * bufferPool.getCapacityBytes());
+			if (dirty.isEmpty() || excess <= 0) {
+				return 0;
+			}
+			// 按文件和page号排序 一批里相邻的page可以合并写
+			dirty.sort(Comparator.comparingInt((Page p) -> p.getId().getTableId())
+					.thenComparingInt(p -> p.getId().getPageNumber()));
+			List<Page> batch = new ArrayList<>();
+			for (Page page : dirty) {
+				if (excess <= 0 || batch.size() >= MAX_BATCH_PAGES) {
+					break;
+				}
+				batch.add(page);
+				excess -= page.getSize();
+			}
+			bufferPool.steal(batch);
+			return batch.size();
+		} finally {
+			bufferPool.mutationLatch().writeLock().unlock();
+		}
+	}
+}
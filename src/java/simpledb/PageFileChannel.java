@@ -0,0 +1,227 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * PageFileChannel is the long-lived FileChannel behind a DbFile. It is opened
+ * on first use and kept open, instead of opening a RandomAccessFile for every
+ * page read or write.
+ * <p>
+ * All I/O is positional, so concurrent readers and writers never share a file
+ * pointer. A channel closed by {@link #close()} is reopened transparently by
+ * the next I/O, which makes closing always safe.
+ * <p>
+ * Page reads go into a per-thread buffer that is reused across reads; page
+ * constructors copy what they need and do not keep the array.
+ *
+ * @Threadsafe
+ */
+public class PageFileChannel {
+
+	/**
+	 * Upper bound of pages coalesced into one gathering write.
+	 */
+	static final int MAX_RUN_PAGES = 256;
+
+	private static final ThreadLocal<byte[]> readBuffers = new ThreadLocal<>();
+
+	private final File file;
+	private volatile FileChannel channel;
+
+	public PageFileChannel(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return a buffer of exactly size bytes owned by the calling thread. Its
+	 * content is only valid until the next call on the same thread.
+	 */
+	public static byte[] borrowBuffer(int size) {
+		byte[] buf = readBuffers.get();
+		if (buf == null || buf.length != size) {
+			buf = new byte[size];
+			readBuffers.set(buf);
+		}
+		return buf;
+	}
+
+	private FileChannel channel() throws IOException {
+		FileChannel ch = this.channel;
+		if (ch == null || !ch.isOpen()) {
+			synchronized (this) {
+				ch = this.channel;
+				if (ch == null || !ch.isOpen()) {
+					ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+							StandardOpenOption.READ, StandardOpenOption.WRITE);
+					this.channel = ch;
+				}
+			}
+		}
+		return ch;
+	}
+
+	/**
+	 * Read up to dst.length - offset bytes starting at the given file position.
+	 *
+	 * @return the number of bytes read, -1 if position is at or past the end of file
+	 */
+	public int read(byte[] dst, int offset, long position) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(dst, offset, dst.length - offset);
+		int total = 0;
+		while (buf.hasRemaining()) {
+			int n;
+			try {
+				n = channel().read(buf, position + total);
+			} catch (ClosedByInterruptException e) {
+				throw e;
+			} catch (ClosedChannelException e) {
+				// closed by another thread in between, reopen and retry
+				continue;
+			}
+			if (n < 0) {
+				return total == 0 ? -1 : total;
+			}
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * Write the whole array at the given file position.
+	 */
+	public void write(byte[] src, long position) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(src);
+		while (buf.hasRemaining()) {
+			try {
+				channel().write(buf, position + buf.position());
+			} catch (ClosedByInterruptException e) {
+				throw e;
+			} catch (ClosedChannelException e) {
+				// closed by another thread in between, reopen and retry
+			}
+		}
+	}
+
+	/**
+	 * Write pages in a few large writes: runs of pages lying next to each
+	 * other in the file are coalesced into a single gathering write.
+	 *
+	 * @param pages    the pages to write, sorted by offset
+	 * @param offsetOf the offset of a page in the file
+	 */
+	public void writePages(List<Page> pages, ToLongFunction<Page> offsetOf) throws IOException {
+		int n = pages.size();
+		long[] offsets = new long[n];
+		byte[][] data = new byte[n][];
+		for (int k = 0; k < n; k++) {
+			offsets[k] = offsetOf.applyAsLong(pages.get(k));
+			data[k] = pages.get(k).getPageData();
+		}
+		int i = 0;
+		while (i < n) {
+			int j = i + 1;
+			long end = offsets[i] + data[i].length;
+			while (j < n && j - i < MAX_RUN_PAGES && offsets[j] == end) {
+				end += data[j].length;
+				j++;
+			}
+			if (j == i + 1) {
+				write(data[i], offsets[i]);
+			} else {
+				ByteBuffer[] run = new ByteBuffer[j - i];
+				for (int k = i; k < j; k++) {
+					run[k - i] = ByteBuffer.wrap(data[k]);
+				}
+				writeRun(run, offsets[i]);
+			}
+			i = j;
+		}
+	}
+
+	/**
+	 * Gathering write at the given position. FileChannel has no positional
+	 * gathering write, so the channel position is moved under the monitor;
+	 * all other I/O is positional and does not depend on it.
+	 */
+	private synchronized void writeRun(ByteBuffer[] run, long position) throws IOException {
+		while (true) {
+			for (ByteBuffer b : run) {
+				b.rewind();
+			}
+			try {
+				FileChannel ch = channel();
+				ch.position(position);
+				long remaining = 0;
+				for (ByteBuffer b : run) {
+					remaining += b.remaining();
+				}
+				while (remaining > 0) {
+					remaining -= ch.write(run);
+				}
+				return;
+			} catch (ClosedByInterruptException e) {
+				throw e;
+			} catch (ClosedChannelException e) {
+				// closed by another thread in between, reopen and write the run again
+			}
+		}
+	}
+
+	/**
+	 * Append the whole array at the end of the file.
+	 *
+	 * @return the position the data was written at
+	 */
+	public synchronized long append(byte[] src) throws IOException {
+		long position = channel().size();
+		write(src, position);
+		return position;
+	}
+
+	/**
+	 * Map a region of the file read only. The region must lie within the
+	 * current file size; the mapping stays valid after the channel is closed.
+	 */
+	public MappedByteBuffer map(long position, long size) throws IOException {
+		while (true) {
+			try {
+				return channel().map(FileChannel.MapMode.READ_ONLY, position, size);
+			} catch (ClosedByInterruptException e) {
+				throw e;
+			} catch (ClosedChannelException e) {
+				// closed by another thread in between, reopen and retry
+			}
+		}
+	}
+
+	/**
+	 * Force written pages to the storage device.
+	 */
+	public void force() throws IOException {
+		channel().force(false);
+	}
+
+	/**
+	 * Close the underlying channel. It will be reopened by the next I/O.
+	 */
+	public synchronized void close() {
+		FileChannel ch = this.channel;
+		this.channel = null;
+		if (ch != null) {
+			try {
+				ch.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package simpledb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PageIO runs page reads and writes on a dedicated pool of I/O threads, so a
+ * caller can keep many requests in flight and go on while they complete.
+ * <p>
+ * The pool is shared by all buffer pools: asynchronous page reads, read-ahead
+ * of the {@link PagePrefetcher} and asynchronous write-back all queue on it.
+ * The DbFiles read and write with positional I/O, so requests on the same
+ * file run in parallel.
+ *
+ * @Threadsafe
+ */
+public class PageIO {
+
+	/**
+	 * Number of I/O threads. More threads than cores, a thread blocked on the
+	 * disk does not use its core.
+	 */
+	public static final int IO_THREADS = Math.max(4, Math.min(16, 2 * Runtime.getRuntime().availableProcessors()));
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	private static final ThreadLocal<Boolean> IO_THREAD = ThreadLocal.withInitial(() -> false);
+	// 守护线程 resetBufferPool时不会泄漏线程
+	private static final ExecutorService IO_POOL = Executors.newFixedThreadPool(IO_THREADS, r -> {
+		Thread t = new Thread(() -> {
+			IO_THREAD.set(true);
+			r.run();
+		}, "simpledb-io-" + threadCount.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	});
+
+	private PageIO() {
+	}
+
+	/**
+	 * @return the executor of the I/O threads
+	 */
+	public static Executor executor() {
+		return IO_POOL;
+	}
+
+	/**
+	 * Read a page from its DbFile on an I/O thread.
+	 *
+	 * @return a future completed with the page, or with the exception of the read
+	 */
+	public static CompletableFuture<Page> read(DbFile file, PageId pid) {
+		return CompletableFuture.supplyAsync(() -> {
+			Page page = file.readPage(pid);
+			if (page == null) {
+				throw new IllegalArgumentException("failed to read page " + pid.getPageNumber()
+						+ " of table " + pid.getTableId());
+			}
+			return page;
+		}, IO_POOL);
+	}
+
+	/**
+	 * Write pages to their DbFile and force them to disk on an I/O thread.
+	 * Called on an I/O thread, e.g. by a page load making room, the pages are
+	 * written by the caller: waiting for another I/O thread could exhaust the
+	 * pool.
+	 *
+	 * @return a future completed when the pages are on disk, or with an
+	 * {@link UncheckedIOException}
+	 */
+	public static CompletableFuture<Void> write(DbFile file, List<Page> pages) {
+		Runnable write = () -> {
+			try {
+				file.writePages(pages);
+				file.force();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+		if (IO_THREAD.get()) {
+			try {
+				write.run();
+				return CompletableFuture.completedFuture(null);
+			} catch (UncheckedIOException e) {
+				return failed(e);
+			}
+		}
+		return CompletableFuture.runAsync(write, IO_POOL);
+	}
+
+	/**
+	 * @return a future already completed with the exception
+	 */
+	static <T> CompletableFuture<T> failed(Throwable t) {
+		CompletableFuture<T> f = new CompletableFuture<>();
+		f.completeExceptionally(t);
+		return f;
+	}
+}
@@ -0,0 +1,94 @@
+package simpledb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PageManifest persists the ids of the pages held by the BufferPool, the
+ * hottest first, so that a restarted database can load them again before
+ * traffic has to fault them in one by one.
+ * <p>
+ * The file starts with a magic number and the number of entries. Every entry
+ * is the serialized form of a PageId ({@link PageId#serialize()}): a heap page
+ * id has two ints, a B+ tree page id three.
+ */
+public class PageManifest {
+
+	private static final int MAGIC = 0x53444250;
+
+	/**
+	 * Write the page ids to the file. The file is replaced atomically, a crash
+	 * while writing leaves the previous manifest in place.
+	 */
+	public static void write(File file, List<PageId> pids) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream dos = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			dos.writeInt(MAGIC);
+			dos.writeInt(pids.size());
+			for (PageId pid : pids) {
+				int[] data = pid.serialize();
+				dos.writeByte(data.length);
+				for (int v : data) {
+					dos.writeInt(v);
+				}
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @return the page ids in the file, the hottest first. A missing or
+	 * damaged manifest yields the entries read so far, possibly none.
+	 */
+	public static List<PageId> read(File file) {
+		List<PageId> pids = new ArrayList<>();
+		if (!file.exists()) {
+			return pids;
+		}
+		try (DataInputStream dis = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			if (dis.readInt() != MAGIC) {
+				return pids;
+			}
+			int n = dis.readInt();
+			for (int i = 0; i < n; i++) {
+				int[] data = new int[dis.readByte()];
+				for (int j = 0; j < data.length; j++) {
+					data[j] = dis.readInt();
+				}
+				PageId pid = decode(data);
+				if (pid != null) {
+					pids.add(pid);
+				}
+			}
+		} catch (EOFException e) {
+			// 文件被截断 只用读到的部分
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return pids;
+	}
+
+	private static PageId decode(int[] data) {
+		switch (data.length) {
+		case 2:
+			return new HeapPageId(data[0], data[1]);
+		case 3:
+			return new BTreePageId(data[0], data[1], data[2]);
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package simpledb;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntFunction;
+
+/**
+ * PagePrefetcher reads pages into the BufferPool ahead of sequential scans on
+ * the I/O threads of {@link PageIO}.
+ * <p>
+ * Each scan owns a {@link Stream}, which detects sequential access and keeps a
+ * read-ahead window of pages in flight. The window doubles while prefetched
+ * pages arrive in time or are still being read when the scan asks for them,
+ * and halves when prefetched pages have been evicted before the scan reaches
+ * them. It never exceeds the configured maximum depth or a quarter of the
+ * pool.
+ * <p>
+ * Prefetched pages are loaded without taking any lock: they only bring the
+ * on-disk image into the pool, the scan still locks every page it reads.
+ *
+ * @Threadsafe
+ */
+public class PagePrefetcher {
+
+	/**
+	 * Default maximum number of pages a stream reads ahead.
+	 */
+	public static final int DEFAULT_MAX_DEPTH = 16;
+	static final int INITIAL_DEPTH = 4;
+
+	private final BufferPool bufferPool;
+	private volatile int poolPages;
+	// 每个在读的page一个latch 读完时countDown
+	private final ConcurrentHashMap<PageId, CountDownLatch> inFlight;
+	private volatile int maxDepth;
+
+	PagePrefetcher(BufferPool bufferPool, int poolPages) {
+		this.bufferPool = bufferPool;
+		this.poolPages = poolPages;
+		this.inFlight = new ConcurrentHashMap<>();
+		this.maxDepth = DEFAULT_MAX_DEPTH;
+	}
+
+	/**
+	 * Set the maximum read-ahead depth of every stream, 0 disables prefetching.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = Math.max(0, maxDepth);
+	}
+
+	/**
+	 * The buffer pool was resized, the depth bound follows its size.
+	 */
+	void setPoolPages(int poolPages) {
+		this.poolPages = poolPages;
+	}
+
+	/**
+	 * @return the effective maximum depth, bounded by a quarter of the pool
+	 */
+	public int getMaxDepth() {
+		return Math.min(maxDepth, poolPages / 4);
+	}
+
+	/**
+	 * Asynchronously read the page into the buffer pool, unless it is resident
+	 * or already being prefetched.
+	 */
+	public void prefetch(PageId pid) {
+		if (bufferPool.isResident(pid) || inFlight.putIfAbsent(pid, new CountDownLatch(1)) != null) {
+			return;
+		}
+		submit(pid, () -> bufferPool.loadPage(pid));
+	}
+
+	/**
+	 * Asynchronously read up to depth leaf pages following the right sibling
+	 * chain, starting at the given leaf.
+	 */
+	public void prefetchSiblings(BTreePageId first, int depth) {
+		if (first == null || depth <= 0 || inFlight.putIfAbsent(first, new CountDownLatch(1)) != null) {
+			return;
+		}
+		submit(first, () -> {
+			BTreePageId next = first;
+			for (int i = 0; i < depth && next != null; i++) {
+				Page p = bufferPool.loadPage(next);
+				next = p instanceof BTreeLeafPage ? ((BTreeLeafPage) p).getRightSiblingId() : null;
+			}
+		});
+	}
+
+	private void submit(PageId pid, PrefetchTask task) {
+		try {
+			PageIO.executor().execute(() -> {
+				try {
+					task.run();
+				} catch (DbException | RuntimeException e) {
+					// 预读失败不影响前台 前台读page时会重新加载
+					Debug.log(Debug.LEVEL_DEBUG, "[PagePrefetcher] prefetch of page %d failed: %s",
+							pid.getPageNumber(), e.getMessage());
+				} finally {
+					done(pid);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			done(pid);
+		}
+	}
+
+	private void done(PageId pid) {
+		CountDownLatch latch = inFlight.remove(pid);
+		if (latch != null) {
+			latch.countDown();
+		}
+	}
+
+	boolean isInFlight(PageId pid) {
+		return inFlight.containsKey(pid);
+	}
+
+	/**
+	 * Wait until the prefetch of the page, if any, has completed. The wait is
+	 * not interrupted: callers rely on the page being loaded when it returns,
+	 * the interrupt status is restored afterwards.
+	 */
+	void awaitLoaded(PageId pid) {
+		CountDownLatch latch = inFlight.get(pid);
+		if (latch == null) {
+			return;
+		}
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Wait until no prefetch is in flight. Used by tests.
+	 */
+	void awaitIdle() throws InterruptedException {
+		while (!inFlight.isEmpty()) {
+			for (CountDownLatch latch : inFlight.values()) {
+				latch.await();
+			}
+		}
+	}
+
+	/**
+	 * @return a new read-ahead stream for one scan
+	 */
+	public Stream newStream() {
+		return new Stream();
+	}
+
+	private interface PrefetchTask {
+		void run() throws DbException;
+	}
+
+	/**
+	 * Sequential access detector and read-ahead window of a single scan. Not
+	 * thread safe, a stream belongs to one iterator.
+	 */
+	public class Stream {
+		private int lastPageNo = -2;
+		private int scheduledUpTo = -1;
+		private int depth = INITIAL_DEPTH;
+
+		/**
+		 * Tell the stream that the scan is about to read pageNo, before it calls
+		 * BufferPool.getPage, and issue read-ahead for the following pages.
+		 *
+		 * @param pageNo   the page the scan reads next
+		 * @param numPages number of pages in the file, nothing past it is prefetched
+		 * @param idOf     maps a page number of the file to its PageId
+		 */
+		public void beforeRead(int pageNo, int numPages, IntFunction<PageId> idOf) {
+			int max = getMaxDepth();
+			boolean sequential = pageNo == lastPageNo + 1;
+			lastPageNo = pageNo;
+			if (max <= 0) {
+				return;
+			}
+			if (!sequential) {
+				depth = Math.min(INITIAL_DEPTH, max);
+				scheduledUpTo = pageNo;
+				return;
+			}
+
+			if (pageNo <= scheduledUpTo) {
+				PageId pid = idOf.apply(pageNo);
+				if (bufferPool.isResident(pid) || isInFlight(pid)) {
+					// 预读赶上了或者还在读 说明窗口还可以再大一些
+					depth = Math.min(depth * 2, max);
+				} else {
+					// 预读的page在用到之前就被淘汰了 缩小窗口
+					depth = Math.max(1, depth / 2);
+				}
+			}
+			depth = Math.min(depth, max);
+
+			int target = Math.min(pageNo + depth, numPages - 1);
+			for (int p = Math.max(scheduledUpTo + 1, pageNo + 1); p <= target; p++) {
+				prefetch(idOf.apply(p));
+			}
+			scheduledUpTo = Math.max(scheduledUpTo, target);
+		}
+
+		/**
+		 * @return the current read-ahead window
+		 */
+		public int getDepth() {
+			return depth;
+		}
+	}
+}
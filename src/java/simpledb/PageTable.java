@@ -0,0 +1,796 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent page table of the BufferPool.
+ * <p>
+ * Pages are partitioned by the hash of their PageId. Every partition has its
+ * own lock, hash map and {@link ReplacementPolicy}, so threads touching pages
+ * of different partitions never contend with each other. Small pools use a
+ * single partition, which keeps the eviction order global.
+ * <p>
+ * A miss is loaded only once: the first thread missing on a page installs a
+ * loading task, other threads missing on the same page wait for its result.
+ * <p>
+ * Capacities are given in pages of {@link BufferPool#getPageSize()}, but every
+ * page counts for its own size in bytes, see {@link Page#getSize()}: a page of
+ * a table with twice the global page size takes two slots. Reserves, maximum
+ * shares and dedicated pools of {@link BufferQuota} are weighted the same way.
+ * <p>
+ * Only the capacity of the whole table is a hard limit. A partition full of
+ * dirty pages borrows a slot from the others: it grows beyond its share while
+ * the table has room, and otherwise evicts a clean page of another partition.
+ * A partition above its share gives the slot back on a later miss, once it
+ * has a clean page again.
+ * <p>
+ * The table keeps the bytes of its dirty pages, for the watermarks of the
+ * {@link PageCleaner}. Only pages marked through {@link #markDirty} and pages
+ * which were dirty when they were inserted are counted.
+ * <p>
+ * The capacity can be changed while the table is in use. The number of
+ * partitions stays the same, only their capacities change. A table which is
+ * above its capacity after shrinking gives back one extra clean page on every
+ * miss, and {@link #trim(int)} evicts clean pages in batches.
+ * <p>
+ * Tables may have a {@link BufferQuota}. A table with a dedicated pool gets a
+ * partition of its own, which lookups of its pages are routed to. Reserves
+ * and maximum shares are enforced by the eviction of the shared partitions.
+ *
+ * @Threadsafe
+ */
+public class PageTable {
+
+	/**
+	 * Upper bound of partitions, must be a power of two.
+	 */
+	static final int MAX_PARTITIONS = 16;
+
+	/**
+	 * Minimal number of pages held by one partition. A pool with fewer than
+	 * 2 * MIN_PAGES_PER_PARTITION pages is not partitioned at all.
+	 */
+	static final int MIN_PAGES_PER_PARTITION = 16;
+
+	/**
+	 * Loads a page which is not resident in the page table, usually by reading it
+	 * from its DbFile.
+	 */
+	public interface PageLoader {
+		Page load(PageId pid) throws DbException;
+	}
+
+	/**
+	 * Notified of every clean page evicted to make room for another page.
+	 */
+	public interface EvictionListener {
+		/**
+		 * Called while holding the lock of the partition, before the page
+		 * leaves the table. A miss on the page can only load it again after
+		 * the listener returned.
+		 */
+		void evicted(Page page);
+
+		/**
+		 * Called when no page could be evicted to make room for the page.
+		 */
+		default void evictionFailed(PageId pid) {
+		}
+	}
+
+	private volatile int capacity;
+	// 所有共享分区的page字节数 分区满了时可以向别的分区借位置
+	private final AtomicLong sharedBytes;
+	private final LongAdder dirtyBytes;
+	private final Partition[] partitions;
+	private final int partitionMask;
+	private final ReplacementPolicy.Type policyType;
+
+	private final ConcurrentHashMap<Integer, BufferQuota> quotas;
+	// 有专用pool的表 它的page只放在自己的分区里
+	private final ConcurrentHashMap<Integer, Partition> dedicated;
+
+	// 正在从磁盘加载的page 同一个page只允许一个线程加载
+	private final ConcurrentHashMap<PageId, FutureTask<Page>> loading;
+	private volatile EvictionListener evictionListener;
+
+	public PageTable(int capacity) {
+		this(capacity, ReplacementPolicy.Type.LRU);
+	}
+
+	public PageTable(int capacity, ReplacementPolicy.Type policyType) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.sharedBytes = new AtomicLong();
+		this.dirtyBytes = new LongAdder();
+		this.policyType = policyType;
+		this.quotas = new ConcurrentHashMap<>();
+		this.dedicated = new ConcurrentHashMap<>();
+		int n = 1;
+		while (n < MAX_PARTITIONS && n * 2 * MIN_PAGES_PER_PARTITION <= capacity) {
+			n <<= 1;
+		}
+		this.partitions = new Partition[n];
+		for (int i = 0; i < n; i++) {
+			this.partitions[i] = new Partition("shared-" + i, partitionCapacity(capacity, n, i), true);
+		}
+		this.partitionMask = n - 1;
+		this.loading = new ConcurrentHashMap<>();
+	}
+
+	private static int partitionCapacity(int capacity, int n, int i) {
+		return Math.max(1, capacity / n + (i < capacity % n ? 1 : 0));
+	}
+
+	/**
+	 * @return the bytes of the given number of pages of the global page size
+	 */
+	private static long bytes(int pages) {
+		return (long) pages * BufferPool.getPageSize();
+	}
+
+	/**
+	 * Set the buffer quota of a table, {@link BufferQuota#NONE} to remove it.
+	 * Giving a table a dedicated pool, or taking it away, moves the resident
+	 * pages of the table; quotas are meant to be set before the table is
+	 * used, a concurrent miss on the table may load a page twice.
+	 */
+	public synchronized void setQuota(int tableId, BufferQuota quota) {
+		if (quota == null || quota == BufferQuota.NONE) {
+			quota = BufferQuota.NONE;
+			quotas.remove(tableId);
+		} else {
+			quotas.put(tableId, quota);
+		}
+		Partition old = dedicated.get(tableId);
+		if (quota.isDedicated()) {
+			if (old != null) {
+				old.resize(quota.getDedicatedPages());
+				return;
+			}
+			Partition d = new Partition("table-" + tableId, quota.getDedicatedPages(), false);
+			// 先把共享分区里这个表的page搬过去 再切换路由
+			for (Partition p : partitions) {
+				p.moveTable(tableId, d);
+			}
+			dedicated.put(tableId, d);
+		} else if (old != null) {
+			dedicated.remove(tableId);
+			old.moveTable(tableId, null);
+		}
+	}
+
+	/**
+	 * @return the buffer quota of the table
+	 */
+	public BufferQuota getQuota(int tableId) {
+		return quotas.getOrDefault(tableId, BufferQuota.NONE);
+	}
+
+	/**
+	 * Change the capacity of the shared partitions. Growing takes effect at
+	 * once; after shrinking no page is evicted here, see {@link #trim(int)}.
+	 */
+	public void resize(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i].resize(partitionCapacity(capacity, partitions.length, i));
+		}
+	}
+
+	/**
+	 * Evict up to maxPages clean pages from the partitions which hold more
+	 * bytes than their capacity.
+	 *
+	 * @return the number of pages evicted
+	 */
+	public int trim(int maxPages) {
+		int trimmed = 0;
+		for (Partition p : allPartitions()) {
+			while (trimmed < maxPages && p.trimOne(null)) {
+				trimmed++;
+			}
+		}
+		return trimmed;
+	}
+
+	/**
+	 * Set the listener notified of evicted pages, null for none. The listener
+	 * is called with the lock of the partition held, see
+	 * {@link EvictionListener#evicted(Page)}.
+	 */
+	public void setEvictionListener(EvictionListener listener) {
+		this.evictionListener = listener;
+	}
+
+	/**
+	 * Insert the page into its partition. A shared partition full of dirty
+	 * pages makes room by evicting a clean page of another shared partition.
+	 *
+	 * @throws DbException if no clean page is left to evict
+	 */
+	private void insert(Partition partition, PageId pid, Page page) throws DbException {
+		while (!partition.put(pid, page)) {
+			boolean evicted = false;
+			for (Partition p : partitions) {
+				if (p != partition && p.evictClean()) {
+					evicted = true;
+					break;
+				}
+			}
+			if (!evicted) {
+				EvictionListener listener = evictionListener;
+				if (listener != null) {
+					listener.evictionFailed(pid);
+				}
+				throw new DbException("all page are dirty. No one to evict");
+			}
+		}
+	}
+
+	/**
+	 * Return the page with the given id, loading it with the loader if it is not
+	 * resident. Concurrent misses on the same page share a single load.
+	 *
+	 * @throws DbException if the page can not be loaded or no page can be evicted
+	 *                     to make room for it
+	 */
+	public Page getOrLoad(PageId pid, PageLoader loader) throws DbException {
+		Page page = get(pid);
+		if (page != null) {
+			return page;
+		}
+
+		FutureTask<Page> task = new FutureTask<>(() -> {
+			// the previous loader may have finished between our miss and putIfAbsent
+			Page p = partitionOf(pid).get(pid);
+			if (p == null) {
+				Partition partition = partitionOf(pid);
+				partition.misses.increment();
+				p = loader.load(pid);
+				if (p == null) {
+					throw new DbException("failed to load page " + pid.getPageNumber()
+							+ " of table " + pid.getTableId());
+				}
+				insert(partition, pid, p);
+				// 缩容或借过位置以后每次miss多淘汰一个page
+				partition.trimOne(pid);
+			}
+			return p;
+		});
+		FutureTask<Page> running = loading.putIfAbsent(pid, task);
+		if (running == null) {
+			running = task;
+			try {
+				task.run();
+			} finally {
+				loading.remove(pid, task);
+			}
+		}
+		return await(running);
+	}
+
+	private static Page await(FutureTask<Page> task) throws DbException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof DbException) {
+				throw (DbException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new DbException("failed to load page: " + cause);
+		} catch (CancellationException e) {
+			throw new DbException("page load cancelled");
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return the resident page with the given id, or null
+	 */
+	public Page get(PageId pid) {
+		return partitionOf(pid).get(pid);
+	}
+
+	/**
+	 * @return the resident page with the given id, or null, without counting
+	 * as an access for the replacement policy
+	 */
+	public Page peek(PageId pid) {
+		return partitionOf(pid).dataMap.get(pid);
+	}
+
+	/**
+	 * Add or replace a page, evicting a clean page of the same partition if the
+	 * partition is full, or of another partition if the partition is full of
+	 * dirty pages.
+	 *
+	 * @throws DbException if the table is full of dirty pages
+	 */
+	public void put(PageId pid, Page page) throws DbException {
+		if (pid == null || page == null) {
+			throw new IllegalArgumentException();
+		}
+		insert(partitionOf(pid), pid, page);
+	}
+
+	public Page remove(PageId pid) {
+		return partitionOf(pid).remove(pid);
+	}
+
+	/**
+	 * Mark the page dirty for the transaction, or clean if tid is null, and
+	 * update the dirty bytes of the table if the page is resident.
+	 *
+	 * @see Page#markDirty(boolean, TransactionId)
+	 */
+	public void markDirty(Page page, TransactionId tid) {
+		partitionOf(page.getId()).markDirty(page, tid);
+	}
+
+	/**
+	 * @return the bytes of the resident dirty pages
+	 */
+	public long dirtyBytes() {
+		return dirtyBytes.sum();
+	}
+
+	public boolean containsKey(PageId pid) {
+		return partitionOf(pid).containsKey(pid);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Partition p : allPartitions()) {
+			size += p.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the bytes of all resident pages
+	 */
+	public long bytes() {
+		long bytes = 0;
+		for (Partition p : allPartitions()) {
+			bytes += p.bytes;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the capacity of the shared partitions plus the dedicated pools,
+	 * in pages of the global page size
+	 */
+	public int capacity() {
+		int res = this.capacity;
+		for (Partition p : dedicated.values()) {
+			res += p.capacity;
+		}
+		return res;
+	}
+
+	/**
+	 * @return the capacity in bytes
+	 */
+	public long capacityBytes() {
+		return bytes(capacity());
+	}
+
+	/**
+	 * Size, capacity and hit ratio of one partition.
+	 */
+	public static class PartitionStats {
+		public final String name;
+		public final int capacity;
+		public final int size;
+		public final long hits;
+		public final long misses;
+
+		PartitionStats(String name, int capacity, int size, long hits, long misses) {
+			this.name = name;
+			this.capacity = capacity;
+			this.size = size;
+			this.hits = hits;
+			this.misses = misses;
+		}
+
+		public double hitRatio() {
+			long total = hits + misses;
+			return total == 0 ? 0 : (double) hits / total;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d/%d pages, %d hits, %d misses, hit ratio %.3f",
+					name, size, capacity, hits, misses, hitRatio());
+		}
+	}
+
+	/**
+	 * @return the statistics of every shared partition, then of every
+	 * dedicated pool
+	 */
+	public List<PartitionStats> stats() {
+		List<PartitionStats> res = new ArrayList<>();
+		for (Partition p : allPartitions()) {
+			res.add(new PartitionStats(p.name, p.capacity, p.size(), p.hits.sum(), p.misses.sum()));
+		}
+		return res;
+	}
+
+	private List<Partition> allPartitions() {
+		List<Partition> res = new ArrayList<>(partitions.length + dedicated.size());
+		for (Partition p : partitions) {
+			res.add(p);
+		}
+		res.addAll(dedicated.values());
+		return res;
+	}
+
+	/**
+	 * @return a snapshot of all resident pages. Pages added or removed after the
+	 * call are not reflected.
+	 */
+	public List<Page> pages() {
+		List<Page> res = new ArrayList<>(capacity);
+		for (Partition p : allPartitions()) {
+			p.collect(res);
+		}
+		return res;
+	}
+
+	/**
+	 * @return the ids of the resident pages, the most recently used first.
+	 * Partitions are merged round robin, so the order is only approximately
+	 * global.
+	 */
+	public List<PageId> hotPages() {
+		List<List<PageId>> orders = new ArrayList<>(partitions.length);
+		for (Partition p : allPartitions()) {
+			orders.add(p.policy.recencyOrder());
+		}
+		List<PageId> res = new ArrayList<>(capacity);
+		boolean any = true;
+		for (int i = 0; any; i++) {
+			any = false;
+			for (List<PageId> order : orders) {
+				if (i < order.size()) {
+					res.add(order.get(i));
+					any = true;
+				}
+			}
+		}
+		return res;
+	}
+
+	private Partition partitionOf(PageId pid) {
+		if (!dedicated.isEmpty()) {
+			Partition d = dedicated.get(pid.getTableId());
+			if (d != null) {
+				return d;
+			}
+		}
+		return sharedPartitionOf(pid);
+	}
+
+	private Partition sharedPartitionOf(PageId pid) {
+		int h = pid.hashCode() * 0x9E3779B9;
+		return partitions[(h ^ (h >>> 16)) & partitionMask];
+	}
+
+	/**
+	 * One lock stripe of the page table. Lookups read the concurrent map without
+	 * locking; inserts, removals and evictions hold the partition monitor and
+	 * keep the replacement policy and the byte counts in sync with the map.
+	 */
+	private class Partition {
+
+		private final String name;
+		// 共享分区才检查reserve和max share
+		private final boolean shared;
+		private volatile int capacity;
+		private final ConcurrentHashMap<PageId, Page> dataMap;
+		private final ReplacementPolicy policy;
+		// 按page大小加权 读的时候不加锁
+		private volatile long bytes;
+		// guarded by this
+		private final Map<Integer, Long> tableBytes;
+		// 计入了dirtyBytes的page guarded by this
+		private final Set<PageId> dirty;
+		private final LongAdder hits;
+		private final LongAdder misses;
+
+		Partition(String name, int capacity, boolean shared) {
+			this.name = name;
+			this.shared = shared;
+			this.capacity = capacity;
+			this.dataMap = new ConcurrentHashMap<>(capacity);
+			this.policy = policyType.create(capacity);
+			this.tableBytes = new HashMap<>();
+			this.dirty = new HashSet<>();
+			this.hits = new LongAdder();
+			this.misses = new LongAdder();
+		}
+
+		Page get(PageId key) {
+			Page page = dataMap.get(key);
+			if (page != null) {
+				policy.recordAccess(key);
+				hits.increment();
+			}
+			return page;
+		}
+
+		/**
+		 * Insert the page, evicting clean pages of the partition for its bytes
+		 * if the partition or the whole table is full. A partition above its
+		 * capacity after shrinking frees only the bytes of the new page here,
+		 * see {@link #trimOne(PageId)}.
+		 *
+		 * @return false if the page was not inserted: the partition is full of
+		 * dirty pages and so are the shared partitions together
+		 * @throws DbException if a dedicated pool is full of dirty pages
+		 */
+		synchronized boolean put(PageId key, Page value) throws DbException {
+			if (dataMap.containsKey(key)) {
+				replaceLocked(key, value);
+				return true;
+			}
+			int need = value.getSize();
+			long freed = 0;
+			int tableId = key.getTableId();
+			BufferQuota quota = shared && !quotas.isEmpty() ? getQuota(tableId) : BufferQuota.NONE;
+			if (quota.getMaxShare() < 1) {
+				// 到了上限的表只淘汰自己的page
+				while (freed < need && tableBytes(tableId) + need > maxBytes(quota)) {
+					PageId victim = policy.victim(pid -> pid.getTableId() == tableId && isClean(pid));
+					if (victim == null) {
+						break;
+					}
+					freed += evictLocked(victim);
+				}
+			}
+			while (freed < need && (bytes + need > bytes(capacity)
+					|| (shared && sharedBytes.get() + need > bytes(PageTable.this.capacity)))) {
+				// 如果这是一个dirty page 则不能淘汰
+				PageId victim = null;
+				if (shared && !quotas.isEmpty()) {
+					victim = policy.victim(pid -> isClean(pid) && !isReserved(pid.getTableId()));
+				}
+				if (victim == null) {
+					victim = policy.victim(this::isClean);
+				}
+				if (victim == null) {
+					if (!shared) {
+						EvictionListener listener = evictionListener;
+						if (listener != null) {
+							listener.evictionFailed(key);
+						}
+						throw new DbException("all page are dirty. No one to evict");
+					}
+					// 全局还有空位就借一个 否则让调用者从别的分区淘汰
+					if (sharedBytes.get() + need > bytes(PageTable.this.capacity)) {
+						return false;
+					}
+					break;
+				}
+				freed += evictLocked(victim);
+			}
+			insertLocked(key, value);
+			return true;
+		}
+
+		/**
+		 * Evict a clean page to make room in another partition.
+		 *
+		 * @return false if the partition has no clean page
+		 */
+		synchronized boolean evictClean() {
+			PageId victim = policy.victim(this::isClean);
+			if (victim == null) {
+				return false;
+			}
+			evictLocked(victim);
+			return true;
+		}
+
+		/**
+		 * Hand the page to the eviction listener, then remove it. Only then a
+		 * miss can load the page again, so the listener never races with a
+		 * newer version of the page.
+		 *
+		 * @return the bytes of the evicted page
+		 */
+		private int evictLocked(PageId victim) {
+			Page page = dataMap.get(victim);
+			EvictionListener listener = evictionListener;
+			if (listener != null) {
+				listener.evicted(page);
+			}
+			removeLocked(victim);
+			return page.getSize();
+		}
+
+		/**
+		 * Insert a page without evicting, the partition may end up above its
+		 * capacity.
+		 */
+		synchronized void forcePut(PageId key, Page value) {
+			if (dataMap.containsKey(key)) {
+				replaceLocked(key, value);
+				return;
+			}
+			insertLocked(key, value);
+		}
+
+		private void replaceLocked(PageId key, Page value) {
+			dataMap.put(key, value);
+			policy.recordAccess(key);
+			countDirty(value);
+		}
+
+		synchronized void markDirty(Page page, TransactionId tid) {
+			page.markDirty(tid != null, tid);
+			if (dataMap.get(page.getId()) == page) {
+				countDirty(page);
+			}
+		}
+
+		/**
+		 * Bring the dirty bytes in line with the dirty state of a resident
+		 * page. Called with the monitor held.
+		 */
+		private void countDirty(Page page) {
+			if (page.isDirty() != null) {
+				if (dirty.add(page.getId())) {
+					dirtyBytes.add(page.getSize());
+				}
+			} else if (dirty.remove(page.getId())) {
+				dirtyBytes.add(-page.getSize());
+			}
+		}
+
+		private boolean isClean(PageId pid) {
+			return dataMap.get(pid).isDirty() == null;
+		}
+
+		private long maxBytes(BufferQuota quota) {
+			return bytes(Math.max(1, (int) (quota.getMaxShare() * capacity)));
+		}
+
+		// reserve平均分到每个共享分区
+		private boolean isReserved(int tableId) {
+			int reserved = getQuota(tableId).getReservedPages();
+			if (reserved == 0) {
+				return false;
+			}
+			int perPartition = (reserved + partitions.length - 1) / partitions.length;
+			return tableBytes(tableId) <= bytes(perPartition);
+		}
+
+		private long tableBytes(int tableId) {
+			return tableBytes.getOrDefault(tableId, 0L);
+		}
+
+		private void insertLocked(PageId key, Page value) {
+			dataMap.put(key, value);
+			policy.recordInsert(key);
+			long size = value.getSize();
+			bytes += size;
+			countDirty(value);
+			tableBytes.merge(key.getTableId(), size, Long::sum);
+			if (shared) {
+				sharedBytes.addAndGet(size);
+			}
+		}
+
+		private Page removeLocked(PageId key) {
+			Page page = dataMap.remove(key);
+			if (page != null) {
+				long size = page.getSize();
+				bytes -= size;
+				if (dirty.remove(key)) {
+					dirtyBytes.add(-size);
+				}
+				if (shared) {
+					sharedBytes.addAndGet(-size);
+				}
+				policy.recordRemove(key);
+				tableBytes.computeIfPresent(key.getTableId(), (k, v) -> v == size ? null : v - size);
+			}
+			return page;
+		}
+
+		synchronized void resize(int capacity) {
+			this.capacity = capacity;
+			policy.setCapacity(capacity);
+		}
+
+		/**
+		 * Evict a clean page other than the given one if the partition holds
+		 * more bytes than its capacity.
+		 *
+		 * @param keep a page to keep, or null
+		 * @return whether a page was evicted
+		 */
+		synchronized boolean trimOne(PageId keep) {
+			if (bytes <= bytes(capacity)) {
+				return false;
+			}
+			PageId victim = policy.victim(pid -> isClean(pid) && !pid.equals(keep));
+			if (victim == null) {
+				return false;
+			}
+			evictLocked(victim);
+			return true;
+		}
+
+		synchronized Page remove(PageId key) {
+			return removeLocked(key);
+		}
+
+		/**
+		 * Move all pages of the table to the target partition, or back to the
+		 * shared partitions if the target is null.
+		 */
+		void moveTable(int tableId, Partition target) {
+			List<Page> moved = new ArrayList<>();
+			synchronized (this) {
+				if (tableBytes(tableId) == 0) {
+					return;
+				}
+				for (PageId pid : new ArrayList<>(dataMap.keySet())) {
+					if (pid.getTableId() == tableId) {
+						moved.add(removeLocked(pid));
+					}
+				}
+			}
+			for (Page page : moved) {
+				PageId pid = page.getId();
+				(target != null ? target : sharedPartitionOf(pid)).forcePut(pid, page);
+			}
+		}
+
+		boolean containsKey(PageId key) {
+			return dataMap.containsKey(key);
+		}
+
+		int size() {
+			return dataMap.size();
+		}
+
+		void collect(List<Page> res) {
+			res.addAll(dataMap.values());
+		}
+	}
+}
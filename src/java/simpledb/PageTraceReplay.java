@@ -0,0 +1,124 @@
+package simpledb;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays a page access trace through a PageTable with every
+ * {@link ReplacementPolicy.Type} and reports the hit ratio of each policy.
+ * <p>
+ * A trace has one access per line, "tableId pageNo", as written by
+ * {@link BufferPool#setAccessTrace}. Usage:
+ * <pre>
+ *     java simpledb.PageTraceReplay &lt;capacity&gt; [trace file]
+ * </pre>
+ * Without a trace file a synthetic workload is replayed: point lookups on a
+ * small hot set mixed with periodic sequential scans of a large table.
+ */
+public class PageTraceReplay {
+
+	/**
+	 * Page without content, the replay only needs ids and a clean dirty flag.
+	 */
+	private static class TracePage implements Page {
+		private final PageId pid;
+
+		TracePage(PageId pid) {
+			this.pid = pid;
+		}
+
+		public PageId getId() {
+			return pid;
+		}
+
+		public TransactionId isDirty() {
+			return null;
+		}
+
+		public void markDirty(boolean dirty, TransactionId tid) {
+		}
+
+		public byte[] getPageData() {
+			return new byte[0];
+		}
+
+		public Page getBeforeImage() {
+			return this;
+		}
+
+		public void setBeforeImage() {
+		}
+	}
+
+	public static void main(String[] args) throws IOException, DbException {
+		if (args.length < 1) {
+			System.out.println("Usage: PageTraceReplay <capacity> [trace file]");
+			System.exit(1);
+		}
+		int capacity = Integer.parseInt(args[0]);
+		List<PageId> trace = args.length > 1 ? readTrace(args[1]) : syntheticTrace(capacity, 42);
+		System.out.println("Replaying " + trace.size() + " accesses with capacity " + capacity);
+		for (ReplacementPolicy.Type type : ReplacementPolicy.Type.values()) {
+			System.out.printf("%-10s hit ratio %.4f%n", type, hitRatio(trace, capacity, type));
+		}
+	}
+
+	/**
+	 * @return the fraction of accesses of the trace that hit a PageTable of the
+	 * given capacity and policy
+	 */
+	public static double hitRatio(List<PageId> trace, int capacity, ReplacementPolicy.Type type)
+			throws DbException {
+		PageTable table = new PageTable(capacity, type);
+		long hits = 0;
+		for (PageId pid : trace) {
+			if (table.get(pid) != null) {
+				hits++;
+			} else {
+				table.put(pid, new TracePage(pid));
+			}
+		}
+		return trace.isEmpty() ? 0 : (double) hits / trace.size();
+	}
+
+	public static List<PageId> readTrace(String fileName) throws IOException {
+		List<PageId> trace = new ArrayList<>();
+		try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] els = line.split("\\s+");
+				trace.add(new HeapPageId(Integer.parseInt(els[0]), Integer.parseInt(els[1])));
+			}
+		}
+		return trace;
+	}
+
+	/**
+	 * Hot set of 2 * capacity pages accessed with a skewed distribution, with a
+	 * sequential scan over 4 * capacity pages every 20 * capacity accesses.
+	 */
+	public static List<PageId> syntheticTrace(int capacity, long seed) {
+		Random r = new Random(seed);
+		int hotPages = capacity * 2;
+		int scanPages = capacity * 4;
+		List<PageId> trace = new ArrayList<>();
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < capacity * 20; i++) {
+				double d = r.nextDouble();
+				trace.add(new HeapPageId(1, (int) (d * d * hotPages)));
+			}
+			for (int i = 0; i < scanPages; i++) {
+				trace.add(new HeapPageId(2, i));
+			}
+		}
+		return trace;
+	}
+}
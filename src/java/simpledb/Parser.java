@@ -549,6 +549,10 @@ public class Parser {
 		// first add tables to database
 		Database.getCatalog().loadSchema(argv[0]);
 		TableStats.computeStatistics();
+		// 每次checkpoint记下热点page 统计信息扫描完以后再按上次的清单预热 不阻塞后面的查询
+		LogFile log = Database.getLogFile();
+		log.setManifestFile(new File(log.getFile().getAbsolutePath() + ".pages"));
+		Database.getBufferPool().warmUp(log.getManifestFile());
 
 		String queryFile = null;
 
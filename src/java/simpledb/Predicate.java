@@ -65,6 +65,23 @@ public class Predicate implements Serializable {
 		return t.getField(this.field).compare(op, this.operand);
 	}
 
+	/**
+	 * Compares the field of the tuple in a used slot of the page like
+	 * {@link #filter(Tuple)}, but reads the field from the raw slot so that
+	 * tuples which do not pass are never decoded.
+	 *
+	 * @param page the page holding the tuple
+	 * @param slot a used slot of the page
+	 * @return true if the comparison is true, false otherwise.
+	 */
+	public boolean filter(HeapPage page, int slot) {
+		// int字段直接比较 不创建IntField
+		if (this.operand.getType() == Type.INT_TYPE) {
+			return IntField.compare(page.getInt(slot, this.field), op, ((IntField) this.operand).getValue());
+		}
+		return page.getField(slot, this.field).compare(op, this.operand);
+	}
+
 	/**
 	 * Returns something useful, like "f = field_id op = op_string operand =
 	 * operand_string"
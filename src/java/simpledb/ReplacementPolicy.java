@@ -0,0 +1,91 @@
+package simpledb;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * ReplacementPolicy decides which resident page of a PageTable partition is
+ * evicted when the partition is full.
+ * <p>
+ * The partition calls recordInsert/recordRemove/victim while holding its own
+ * monitor. recordAccess is called on every hit without the partition monitor,
+ * so implementations must make it thread safe themselves, and must ignore
+ * pages they do not track (the page may have been removed concurrently).
+ */
+public interface ReplacementPolicy {
+
+	/**
+	 * The replacement policies shipped with simpledb.
+	 */
+	enum Type {
+		/**
+		 * strict least recently used, every hit moves the page to the head of a list
+		 */
+		LRU,
+		/**
+		 * second chance clock, a hit only sets a reference bit
+		 */
+		CLOCK,
+		/**
+		 * 2Q: pages seen once stay in a FIFO, only re-referenced pages enter the LRU
+		 */
+		TWO_QUEUE,
+		/**
+		 * adaptive replacement cache, balances recency and frequency using ghost lists
+		 */
+		ARC;
+
+		/**
+		 * @param capacity number of pages the policy has to manage
+		 */
+		public ReplacementPolicy create(int capacity) {
+			switch (this) {
+			case CLOCK:
+				return new ClockPolicy(capacity);
+			case TWO_QUEUE:
+				return new TwoQueuePolicy(capacity);
+			case ARC:
+				return new ArcPolicy(capacity);
+			default:
+				return new LruPolicy();
+			}
+		}
+	}
+
+	/**
+	 * A resident page was requested.
+	 */
+	void recordAccess(PageId pid);
+
+	/**
+	 * A page became resident.
+	 */
+	void recordInsert(PageId pid);
+
+	/**
+	 * A resident page was removed for a reason other than eviction, e.g. it was
+	 * discarded by the BufferPool.
+	 */
+	void recordRemove(PageId pid);
+
+	/**
+	 * Choose a resident page to evict and stop tracking it.
+	 *
+	 * @param evictable tells whether a resident page may be evicted (dirty pages may not)
+	 * @return the evicted page id, or null if no resident page is evictable
+	 */
+	PageId victim(Predicate<PageId> evictable);
+
+	/**
+	 * @return the resident pages, the most recently used first as far as the
+	 * policy keeps track of recency. Used to persist the hot pages of the pool.
+	 */
+	List<PageId> recencyOrder();
+
+	/**
+	 * The number of pages the policy has to manage changed, see
+	 * {@link BufferPool#resize(int)}.
+	 */
+	default void setCapacity(int capacity) {
+	}
+}
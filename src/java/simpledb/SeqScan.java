@@ -16,6 +16,8 @@ public class SeqScan implements OpIterator {
 	private String tableAlias;
 	private DbFileIterator dbFileIterator;
 	private TupleDesc tupleDesc;
+	private int ringPages;
+	private Predicate predicate;
 
 	/**
 	 * Creates a sequential scan over the specified table as a part of the
@@ -88,9 +90,46 @@ public class SeqScan implements OpIterator {
 		this.tupleDesc = initTupleDesc(tableid, tableAlias);
 	}
 
+	/**
+	 * Read pages which are not in the buffer pool through a private ring of
+	 * ringPages frames instead of the buffer pool, so that scanning a large
+	 * table does not evict the working set of other queries. Must be called
+	 * before open. Only heap files support rings, other files ignore it.
+	 *
+	 * @param ringPages size of the ring, 0 to read through the buffer pool
+	 * @see BufferRing
+	 */
+	public void useBufferRing(int ringPages) {
+		this.ringPages = ringPages;
+	}
+
+	/**
+	 * Push the predicate of a Filter above this scan down into the scan, so
+	 * that it is evaluated on the raw slots of the pages and tuples which do
+	 * not pass are never decoded. Must be called before open. Only heap files
+	 * support it.
+	 *
+	 * @return whether the scan returns only the tuples passing the predicate
+	 * from now on
+	 * @see HeapFile#iterator(TransactionId, BufferRing, Predicate)
+	 */
+	public boolean pushDown(Predicate p) {
+		if (!(Database.getCatalog().getDatabaseFile(this.tableId) instanceof HeapFile)) {
+			return false;
+		}
+		this.predicate = p;
+		return true;
+	}
+
 	public void open() throws DbException, TransactionAbortedException {
 		// some code goes here
-		this.dbFileIterator = Database.getCatalog().getDatabaseFile(this.tableId).iterator(this.tid);
+		DbFile dbFile = Database.getCatalog().getDatabaseFile(this.tableId);
+		if ((this.ringPages > 0 || this.predicate != null) && dbFile instanceof HeapFile) {
+			BufferRing ring = this.ringPages > 0 ? new BufferRing(this.ringPages) : null;
+			this.dbFileIterator = ((HeapFile) dbFile).iterator(this.tid, ring, this.predicate);
+		} else {
+			this.dbFileIterator = dbFile.iterator(this.tid);
+		}
 		this.dbFileIterator.open();
 	}
 
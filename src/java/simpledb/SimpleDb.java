@@ -9,7 +9,7 @@ public class SimpleDb {
 		// convert a file
 		if (args[0].equals("convert")) {
 			try {
-				if (args.length < 3 || args.length > 5) {
+				if (args.length < 3 || args.length > 6) {
 					System.err.println("Unexpected number of arguments to convert ");
 					return;
 				}
@@ -18,6 +18,8 @@ public class SimpleDb {
 				int numOfAttributes = Integer.parseInt(args[2]);
 				Type[] ts = new Type[numOfAttributes];
 				char fieldSeparator = ',';
+				// 表在catalog里设置了pagesize时 转换也要用同样的大小
+				int pageSize = BufferPool.getPageSize();
 
 				if (args.length == 3)
 					for (int i = 0; i < numOfAttributes; i++)
@@ -40,12 +42,14 @@ public class SimpleDb {
 							return;
 						}
 					}
-					if (args.length == 5)
+					if (args.length >= 5)
 						fieldSeparator = args[4].charAt(0);
+					if (args.length == 6)
+						pageSize = Integer.parseInt(args[5]);
 				}
 
 				HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
-						BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
+						pageSize, numOfAttributes, ts, fieldSeparator);
 
 			} catch (IOException e) {
 				throw new RuntimeException(e);
@@ -1,5 +1,6 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -85,7 +86,9 @@ public class TableStats {
 	private void initTableStats(int tableId) {
 		TransactionId tid = new TransactionId();
 		this.dbFile = Database.getCatalog().getDatabaseFile(tableId);
-		DbFileIterator iterator = dbFile.iterator(tid);
+		// 统计信息需要扫全表 用私有的ring读 避免把buffer pool里的热点page挤出去
+		DbFileIterator iterator = dbFile instanceof HeapFile ?
+				((HeapFile) dbFile).iterator(tid, new BufferRing()) : dbFile.iterator(tid);
 		this.td = dbFile.getTupleDesc();
 
 		this.fieldIndex2Hist = new Object[td.numFields()];
@@ -141,6 +144,12 @@ public class TableStats {
 			e.printStackTrace();
 		} finally {
 			iterator.close();
+			// 释放扫描时拿的读锁 否则之后写这个表的事务会一直等下去
+			try {
+				Database.getBufferPool().transactionComplete(tid);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 		}
 	}
 
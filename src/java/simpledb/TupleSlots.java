@@ -0,0 +1,161 @@
+package simpledb;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * TupleSlots holds the tuple slots of a page in their raw on-disk form and
+ * decodes a tuple only when it is asked for the first time. Typed accessors
+ * read single fields of slots which have not been decoded without creating
+ * any Tuple or Field.
+ * <p>
+ * The raw image is never modified. A slot holding an inserted or decoded
+ * tuple is serialized from the tuple, other slots are copied from the image.
+ * The owning page tracks which slots are used.
+ * <p>
+ * Several transactions holding a shared lock may read the same page at the
+ * same time, so decoding is thread safe.
+ */
+class TupleSlots {
+
+	private final PageId pid;
+	private final TupleDesc td;
+	private final int tupleSize;
+	private final int[] fieldOffsets;
+	// 原始的slot数据 第i个slot从 i * tupleSize 开始
+	private final byte[] image;
+	// 已经解码或插入的tuple 没有解码的是null
+	private final AtomicReferenceArray<Tuple> tuples;
+
+	/**
+	 * Read numSlots raw slots from the stream.
+	 */
+	TupleSlots(PageId pid, TupleDesc td, int numSlots, DataInputStream dis) throws IOException {
+		this.pid = pid;
+		this.td = td;
+		this.tupleSize = td.getSize();
+		this.fieldOffsets = new int[td.numFields()];
+		int offset = 0;
+		for (int j = 0; j < fieldOffsets.length; j++) {
+			fieldOffsets[j] = offset;
+			offset += td.getFieldType(j).getLen();
+		}
+		this.image = new byte[numSlots * tupleSize];
+		dis.readFully(image);
+		this.tuples = new AtomicReferenceArray<>(numSlots);
+	}
+
+	int length() {
+		return tuples.length();
+	}
+
+	/**
+	 * @return the tuple in the slot, decoding it if necessary. The caller must
+	 * make sure the slot is used.
+	 */
+	Tuple get(int slot) {
+		Tuple t = tuples.get(slot);
+		if (t != null) {
+			return t;
+		}
+		t = decode(slot);
+		// 并发解码同一个slot时只保留先到的那个
+		return tuples.compareAndSet(slot, null, t) ? t : tuples.get(slot);
+	}
+
+	/**
+	 * @return whether the slot holds a decoded or inserted tuple
+	 */
+	boolean isDecoded(int slot) {
+		return tuples.get(slot) != null;
+	}
+
+	void set(int slot, Tuple t) {
+		tuples.set(slot, t);
+	}
+
+	/**
+	 * Move the tuple of a used slot to another slot and update its RecordId.
+	 */
+	void move(int from, int to) {
+		Tuple t = get(from);
+		t.setRecordId(new RecordId(pid, to));
+		tuples.set(to, t);
+	}
+
+	private Tuple decode(int slot) {
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(image, slot * tupleSize, tupleSize));
+		Tuple t = new Tuple(td);
+		t.setRecordId(new RecordId(pid, slot));
+		try {
+			for (int j = 0; j < td.numFields(); j++) {
+				t.setField(j, td.getFieldType(j).parse(dis));
+			}
+		} catch (java.text.ParseException e) {
+			e.printStackTrace();
+			throw new NoSuchElementException("parsing error!");
+		}
+		return t;
+	}
+
+	/**
+	 * @return a single field of a used slot, without decoding the whole tuple
+	 */
+	Field getField(int slot, int field) {
+		Tuple t = tuples.get(slot);
+		if (t != null) {
+			return t.getField(field);
+		}
+		Type type = td.getFieldType(field);
+		if (type == Type.INT_TYPE) {
+			return new IntField(readInt(slot * tupleSize + fieldOffsets[field]));
+		}
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(image,
+				slot * tupleSize + fieldOffsets[field], type.getLen()));
+		try {
+			return type.parse(dis);
+		} catch (java.text.ParseException e) {
+			e.printStackTrace();
+			throw new NoSuchElementException("parsing error!");
+		}
+	}
+
+	/**
+	 * @return the value of an INT_TYPE field of a used slot, without creating
+	 * any Tuple or Field for undecoded slots
+	 */
+	int getInt(int slot, int field) {
+		if (td.getFieldType(field) != Type.INT_TYPE) {
+			throw new IllegalArgumentException("field " + field + " is not an int");
+		}
+		Tuple t = tuples.get(slot);
+		if (t != null) {
+			return ((IntField) t.getField(field)).getValue();
+		}
+		return readInt(slot * tupleSize + fieldOffsets[field]);
+	}
+
+	private int readInt(int off) {
+		// DataOutputStream.writeInt是大端
+		return ((image[off] & 0xff) << 24) | ((image[off + 1] & 0xff) << 16)
+				| ((image[off + 2] & 0xff) << 8) | (image[off + 3] & 0xff);
+	}
+
+	/**
+	 * Serialize a used slot.
+	 */
+	void write(int slot, DataOutputStream dos) throws IOException {
+		Tuple t = tuples.get(slot);
+		if (t == null) {
+			dos.write(image, slot * tupleSize, tupleSize);
+			return;
+		}
+		for (int j = 0; j < td.numFields(); j++) {
+			t.getField(j).serialize(dos);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * 2Q replacement (Johnson and Shasha). A page seen for the first time enters
+ * the FIFO queue a1in; when it is evicted from there its id is remembered in
+ * the ghost queue a1out. Only a page that is requested again while in a1out is
+ * promoted to the LRU queue am. A single large scan therefore only cycles
+ * through a1in and does not flush the pages in am.
+ */
+public class TwoQueuePolicy implements ReplacementPolicy {
+
+	private int kin;
+	private int kout;
+
+	private final LinkedHashSet<PageId> a1in = new LinkedHashSet<>();
+	private final LinkedHashSet<PageId> a1out = new LinkedHashSet<>();
+	private final LinkedHashMap<PageId, Boolean> am = new LinkedHashMap<>(16, 0.75f, true);
+
+	public TwoQueuePolicy(int capacity) {
+		setCapacity(capacity);
+	}
+
+	@Override
+	public synchronized void setCapacity(int capacity) {
+		// 论文推荐的参数: Kin = 25%, Kout = 50%
+		this.kin = Math.max(1, capacity / 4);
+		this.kout = Math.max(1, capacity / 2);
+	}
+
+	@Override
+	public synchronized void recordAccess(PageId pid) {
+		// a hit in a1in is a correlated reference and does not change anything
+		am.get(pid);
+	}
+
+	@Override
+	public synchronized void recordInsert(PageId pid) {
+		if (a1in.contains(pid) || am.containsKey(pid)) {
+			return;
+		}
+		if (a1out.remove(pid)) {
+			am.put(pid, Boolean.TRUE);
+		} else {
+			a1in.add(pid);
+		}
+	}
+
+	@Override
+	public synchronized void recordRemove(PageId pid) {
+		a1in.remove(pid);
+		am.remove(pid);
+	}
+
+	@Override
+	public synchronized PageId victim(Predicate<PageId> evictable) {
+		PageId pid = null;
+		if (a1in.size() > kin || am.isEmpty()) {
+			pid = evictFromA1in(evictable);
+		}
+		if (pid == null) {
+			pid = evictFirst(am.keySet().iterator(), evictable);
+		}
+		if (pid == null) {
+			pid = evictFromA1in(evictable);
+		}
+		return pid;
+	}
+
+	@Override
+	public synchronized List<PageId> recencyOrder() {
+		// am里的page至少被访问过两次 比a1in里的热
+		List<PageId> res = new ArrayList<>(a1in);
+		res.addAll(am.keySet());
+		Collections.reverse(res);
+		return res;
+	}
+
+	private PageId evictFromA1in(Predicate<PageId> evictable) {
+		PageId pid = evictFirst(a1in.iterator(), evictable);
+		if (pid != null) {
+			a1out.add(pid);
+			if (a1out.size() > kout) {
+				Iterator<PageId> it = a1out.iterator();
+				it.next();
+				it.remove();
+			}
+		}
+		return pid;
+	}
+
+	private static PageId evictFirst(Iterator<PageId> it, Predicate<PageId> evictable) {
+		while (it.hasNext()) {
+			PageId pid = it.next();
+			if (evictable.test(pid)) {
+				it.remove();
+				return pid;
+			}
+		}
+		return null;
+	}
+}
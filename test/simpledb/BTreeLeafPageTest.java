@@ -360,4 +360,37 @@ public class BTreeLeafPageTest extends SimpleDbTestBase {
 			// explicitly ignored
 		}
 	}
+
+	/**
+	 * Unit test for BTreeLeafPage.getInt() and BTreeLeafPage.getField()
+	 */
+	@Test
+	public void typedAccessors() throws Exception {
+		BTreeLeafPage page = new BTreeLeafPage(pid, EXAMPLE_DATA, 0);
+		Iterator<Tuple> it = page.iterator();
+		int slot = 0;
+		while (it.hasNext()) {
+			Tuple tup = it.next();
+			assertEquals(((IntField) tup.getField(0)).getValue(), page.getInt(slot, 0));
+			assertEquals(tup.getField(1), page.getField(slot, 1));
+			slot++;
+		}
+	}
+
+	/**
+	 * Inserting into a page which has not been decoded keeps the key order
+	 */
+	@Test
+	public void insertIntoUndecodedPage() throws Exception {
+		BTreeLeafPage page = new BTreeLeafPage(pid, EXAMPLE_DATA, 0);
+		page.insertTuple(BTreeUtility.getBTreeTuple(new int[]{30000, 1}));
+		Iterator<Tuple> it = page.iterator();
+		int prev = Integer.MIN_VALUE;
+		while (it.hasNext()) {
+			int key = ((IntField) it.next().getField(0)).getValue();
+			assertTrue(prev <= key);
+			prev = key;
+		}
+		assertEquals(EXAMPLE_VALUES.length + 1, page.getNumTuples());
+	}
 }
@@ -0,0 +1,99 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolResizeTest extends SimpleDbTestBase {
+
+	private static final int TABLE_PAGES = 24;
+
+	private ArrayList<ArrayList<Integer>> tuples;
+	private HeapFile hf;
+	private BufferPool bp;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BufferPoolResizeTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		tuples = new ArrayList<>();
+		hf = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, 1000, null, tuples);
+		bp = Database.resetBufferPool(TABLE_PAGES);
+		bp.getPrefetcher().setMaxDepth(0);
+	}
+
+	private void awaitPages(int pages) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (bp.numPages() > pages && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Shrinking gives back clean pages in the background and keeps the rest
+	 * of the cache
+	 */
+	@Test
+	public void shrinkKeepsCache() throws Exception {
+		SystemTestUtil.matchTuples(hf, tuples);
+		assertEquals(TABLE_PAGES, bp.numPages());
+
+		bp.resize(TABLE_PAGES / 4);
+		assertEquals(TABLE_PAGES / 4, bp.getCapacity());
+		awaitPages(TABLE_PAGES / 4);
+		assertEquals(TABLE_PAGES / 4, bp.numPages());
+		SystemTestUtil.matchTuples(hf, tuples);
+		assertEquals(TABLE_PAGES / 4, bp.numPages());
+	}
+
+	/**
+	 * Dirty pages survive a shrink and are written back by the commit
+	 */
+	@Test
+	public void shrinkWithDirtyPages() throws Exception {
+		TransactionId tid = new TransactionId();
+		for (int i = 0; i < 8; i++) {
+			HeapPage page = (HeapPage) bp.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_WRITE);
+			bp.deleteTuple(tid, page.getTuple(0));
+		}
+		bp.resize(4);
+		awaitPages(8);
+		assertEquals(8, bp.numPages());
+		bp.transactionComplete(tid);
+
+		// 提交以后page变干净了 后面的miss会继续缩容
+		TransactionId reader = new TransactionId();
+		for (int i = 8; i < 16; i++) {
+			bp.getPage(reader, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+		}
+		assertEquals(4, bp.numPages());
+		assertEquals(1, ((HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0))).getNumEmptySlots());
+		bp.transactionComplete(reader);
+	}
+
+	/**
+	 * Growing takes effect at once
+	 */
+	@Test
+	public void grow() throws Exception {
+		bp.resize(4);
+		SystemTestUtil.matchTuples(hf, tuples);
+		assertTrue(bp.numPages() <= 4);
+		bp.resize(TABLE_PAGES);
+		SystemTestUtil.matchTuples(hf, tuples);
+		assertEquals(TABLE_PAGES, bp.numPages());
+	}
+}
@@ -0,0 +1,97 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BufferPoolStatsTest extends SimpleDbTestBase {
+
+	private static final int POOL_PAGES = 4;
+	private static final int TABLE_PAGES = 8;
+
+	private HeapFile hf;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BufferPoolStatsTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		hf = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, 1000, null, new ArrayList<>());
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+		bp.getPrefetcher().setMaxDepth(0);
+	}
+
+	private HeapPageId pid(int pageNo) {
+		return new HeapPageId(hf.getId(), pageNo);
+	}
+
+	/**
+	 * Hits, misses, reads and evictions are counted
+	 */
+	@Test
+	public void readCounters() throws Exception {
+		BufferPool bp = Database.getBufferPool();
+		TransactionId tid = new TransactionId();
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+		}
+		bp.getPage(tid, pid(TABLE_PAGES - 1), Permissions.READ_ONLY);
+		bp.transactionComplete(tid);
+
+		BufferPoolStats.Snapshot stats = Database.getStats();
+		assertEquals(1, stats.hits(hf.getId()));
+		assertEquals(TABLE_PAGES, stats.misses(hf.getId()));
+		assertEquals(1.0 / (TABLE_PAGES + 1), stats.hitRatio(hf.getId()), 1e-9);
+		assertEquals(TABLE_PAGES, stats.reads);
+		assertEquals((long) TABLE_PAGES * BufferPool.getPageSize(), stats.readBytes);
+		assertTrue(stats.readNanos > 0);
+		assertEquals(TABLE_PAGES - POOL_PAGES, stats.evictions);
+		assertEquals(0, stats.dirtyPages);
+
+		Database.resetStats();
+		stats = Database.getStats();
+		assertEquals(0, stats.hits());
+		assertEquals(0, stats.misses());
+		assertEquals(0, stats.reads);
+		assertEquals(0, stats.evictions);
+	}
+
+	/**
+	 * Dirty pages, writes and failed evictions are counted
+	 */
+	@Test
+	public void writeCounters() throws Exception {
+		BufferPool bp = Database.getBufferPool();
+		TransactionId tid = new TransactionId();
+		for (int i = 0; i < POOL_PAGES; i++) {
+			HeapPage page = (HeapPage) bp.getPage(tid, pid(i), Permissions.READ_WRITE);
+			bp.deleteTuple(tid, page.getTuple(0));
+		}
+		assertEquals(POOL_PAGES, Database.getStats().dirtyPages);
+		try {
+			bp.getPage(tid, pid(POOL_PAGES), Permissions.READ_ONLY);
+			fail("expected DbException");
+		} catch (DbException expected) {
+		}
+		assertEquals(1, Database.getStats().evictionFailures);
+
+		bp.transactionComplete(tid, true);
+		BufferPoolStats.Snapshot stats = Database.getStats();
+		assertEquals(0, stats.dirtyPages);
+		assertEquals(POOL_PAGES, stats.writes);
+		assertEquals((long) POOL_PAGES * BufferPool.getPageSize(), stats.writeBytes);
+	}
+}
@@ -12,7 +12,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
 	private TransactionId tid;
@@ -154,5 +156,25 @@ public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
 			return dirtypages;
 		}
 	}
-}
 
+	/**
+	 * Committing writes every dirty page of the transaction back in one batch
+	 */
+	@Test
+	public void flushPagesWritesBatch() throws Exception {
+		for (int i = 0; i < 504 * 5; ++i) {
+			Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+		}
+		assertEquals(5, empty.numPages());
+		Database.getBufferPool().flushPages(tid);
+
+		HeapFile reread = new HeapFile(empty.getFile(), empty.getTupleDesc());
+		for (int i = 0; i < 5; ++i) {
+			HeapPageId pid = new HeapPageId(empty.getId(), i);
+			Page inPool = Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+			assertNull(inPool.isDirty());
+			assertArrayEquals(inPool.getPageData(), reread.readPage(pid).getPageData());
+		}
+		reread.close();
+	}
+}
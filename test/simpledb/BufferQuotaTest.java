@@ -0,0 +1,162 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+import simpledb.PageTableTest.MemPage;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BufferQuotaTest extends SimpleDbTestBase {
+
+	private static final int HOT = 1;
+	private static final int SCAN = 2;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BufferQuotaTest.class);
+	}
+
+	private static Page load(PageTable table, int tableId, int pageNo) throws DbException {
+		return table.getOrLoad(new HeapPageId(tableId, pageNo), MemPage::new);
+	}
+
+	private static int resident(PageTable table, int tableId, int numPages) {
+		int n = 0;
+		for (int i = 0; i < numPages; i++) {
+			if (table.containsKey(new HeapPageId(tableId, i))) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * A scan of another table cannot evict the pages of a dedicated pool
+	 */
+	@Test
+	public void dedicatedPool() throws Exception {
+		PageTable table = new PageTable(8);
+		table.setQuota(HOT, BufferQuota.dedicated(4));
+		assertEquals(12, table.capacity());
+		for (int i = 0; i < 4; i++) {
+			load(table, HOT, i);
+		}
+		for (int i = 0; i < 100; i++) {
+			load(table, SCAN, i);
+		}
+		assertEquals(4, resident(table, HOT, 4));
+		assertEquals(8, resident(table, SCAN, 100));
+
+		// 专用pool满了只淘汰自己的page
+		load(table, HOT, 4);
+		assertEquals(4, resident(table, HOT, 5));
+		assertEquals(8, resident(table, SCAN, 100));
+	}
+
+	/**
+	 * Giving a table a dedicated pool and taking it away moves its pages
+	 */
+	@Test
+	public void switchDedicated() throws Exception {
+		PageTable table = new PageTable(8);
+		load(table, HOT, 0);
+		load(table, HOT, 1);
+		table.setQuota(HOT, BufferQuota.dedicated(4));
+		assertEquals(2, resident(table, HOT, 2));
+		assertEquals("table-" + HOT, table.stats().get(1).name);
+		assertEquals(2, table.stats().get(1).size);
+
+		table.setQuota(HOT, BufferQuota.NONE);
+		assertEquals(1, table.stats().size());
+		assertEquals(2, table.stats().get(0).size);
+		assertEquals(8, table.capacity());
+	}
+
+	/**
+	 * Other tables do not evict the reserved pages of a table
+	 */
+	@Test
+	public void reserve() throws Exception {
+		PageTable table = new PageTable(8);
+		table.setQuota(HOT, BufferQuota.reserve(3));
+		for (int i = 0; i < 3; i++) {
+			load(table, HOT, i);
+		}
+		for (int i = 0; i < 100; i++) {
+			load(table, SCAN, i);
+		}
+		assertEquals(3, resident(table, HOT, 3));
+		assertEquals(5, resident(table, SCAN, 100));
+	}
+
+	/**
+	 * A table at its maximum share evicts its own pages, even if the pool is
+	 * not full
+	 */
+	@Test
+	public void maxShare() throws Exception {
+		PageTable table = new PageTable(8);
+		table.setQuota(SCAN, BufferQuota.maxShare(0.25));
+		load(table, HOT, 0);
+		for (int i = 0; i < 100; i++) {
+			load(table, SCAN, i);
+		}
+		assertEquals(2, resident(table, SCAN, 100));
+		assertEquals(3, table.size());
+		assertTrue(table.containsKey(new HeapPageId(SCAN, 99)));
+		assertFalse(table.containsKey(new HeapPageId(SCAN, 0)));
+	}
+
+	/**
+	 * Hits and misses are counted per partition
+	 */
+	@Test
+	public void partitionStats() throws Exception {
+		PageTable table = new PageTable(8);
+		table.setQuota(HOT, BufferQuota.dedicated(2));
+		load(table, HOT, 0);
+		load(table, HOT, 0);
+		load(table, HOT, 0);
+		load(table, HOT, 0);
+		load(table, SCAN, 0);
+		load(table, SCAN, 1);
+
+		List<PageTable.PartitionStats> stats = table.stats();
+		assertEquals(2, stats.size());
+		PageTable.PartitionStats shared = stats.get(0);
+		PageTable.PartitionStats hot = stats.get(1);
+		assertEquals(0, shared.hits);
+		assertEquals(2, shared.misses);
+		assertEquals(0.0, shared.hitRatio(), 1e-9);
+		assertEquals(3, hot.hits);
+		assertEquals(1, hot.misses);
+		assertEquals(0.75, hot.hitRatio(), 1e-9);
+	}
+
+	/**
+	 * Quotas kept by the catalog are applied to new buffer pools
+	 */
+	@Test
+	public void catalogQuota() throws Exception {
+		File file = File.createTempFile("quota", ".dat");
+		file.deleteOnExit();
+		HeapFile hf = Utility.createEmptyHeapFile(file.getAbsolutePath(), 2);
+		Database.getCatalog().setBufferQuota(hf.getId(), BufferQuota.dedicated(5));
+		assertEquals(5, Database.getCatalog().getBufferQuota(hf.getId()).getDedicatedPages());
+
+		BufferPool bp = Database.resetBufferPool(10);
+		assertEquals(15, bp.getCapacity());
+		assertEquals("table-" + hf.getId(), bp.getPartitionStats().get(1).name);
+
+		Database.getCatalog().setBufferQuota(hf.getId(), BufferQuota.NONE);
+		assertEquals(10, bp.getCapacity());
+	}
+}
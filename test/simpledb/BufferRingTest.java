@@ -0,0 +1,86 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BufferRingTest extends SimpleDbTestBase {
+
+	private static final int POOL_PAGES = 10;
+	private static final int TABLE_TUPLES = 504 * 30;
+
+	private HeapFile big;
+	private HeapFile small;
+	private PageId hot;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(BufferRingTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		big = SystemTestUtil.createRandomHeapFile(2, TABLE_TUPLES, null, null);
+		small = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+		Database.resetBufferPool(POOL_PAGES);
+		hot = new HeapPageId(small.getId(), 0);
+		TransactionId tid = new TransactionId();
+		Database.getBufferPool().getPage(tid, hot, Permissions.READ_ONLY);
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
+	private int scan(int ringPages) throws Exception {
+		TransactionId tid = new TransactionId();
+		SeqScan scan = new SeqScan(tid, big.getId(), "");
+		scan.useBufferRing(ringPages);
+		scan.open();
+		int count = 0;
+		while (scan.hasNext()) {
+			scan.next();
+			count++;
+		}
+		scan.close();
+		Database.getBufferPool().transactionComplete(tid);
+		return count;
+	}
+
+	/**
+	 * A scan through a ring must return every tuple and leave the hot page resident
+	 */
+	@Test
+	public void ringScanKeepsHotPages() throws Exception {
+		assertEquals(TABLE_TUPLES, scan(BufferRing.DEFAULT_RING_PAGES));
+		assertTrue(Database.getBufferPool().isResident(hot));
+		assertFalse(Database.getBufferPool().isResident(new HeapPageId(big.getId(), 0)));
+	}
+
+	/**
+	 * Without a ring the same scan flushes the hot page out of the pool
+	 */
+	@Test
+	public void plainScanEvictsHotPages() throws Exception {
+		assertEquals(TABLE_TUPLES, scan(0));
+		assertFalse(Database.getBufferPool().isResident(hot));
+	}
+
+	/**
+	 * Pages already resident in the pool are served from the pool, not re-read
+	 */
+	@Test
+	public void ringUsesResidentPages() throws Exception {
+		BufferRing ring = new BufferRing(1);
+		TransactionId tid = new TransactionId();
+		Page inPool = Database.getBufferPool().getPage(tid, hot, Permissions.READ_ONLY);
+		assertTrue(inPool == Database.getBufferPool().getPage(tid, hot, Permissions.READ_ONLY, ring));
+		Database.getBufferPool().transactionComplete(tid);
+	}
+}
@@ -0,0 +1,155 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedPageCacheTest extends SimpleDbTestBase {
+
+	private static final int POOL_PAGES = 4;
+	private static final int TABLE_PAGES = 12;
+
+	private ArrayList<ArrayList<Integer>> tuples;
+	private HeapFile hf;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(CompressedPageCacheTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		tuples = new ArrayList<>();
+		// 只用到一小段值域 page压缩得很好
+		hf = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, 16, null, tuples);
+	}
+
+	private HeapPageId pid(int pageNo) {
+		return new HeapPageId(hf.getId(), pageNo);
+	}
+
+	private static PageArena.Decoder decoder() {
+		return (pid, image) -> Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid, image);
+	}
+
+	/**
+	 * A page taken from the cache is decompressed and leaves the cache
+	 */
+	@Test
+	public void storeAndTake() throws Exception {
+		CompressedPageCache cache = new CompressedPageCache(4L * BufferPool.getPageSize());
+		Page page = hf.readPage(pid(0));
+		assertTrue(cache.store(page));
+		assertTrue(cache.getBytes() < BufferPool.getPageSize());
+
+		Page peeked = cache.peek(pid(0), decoder());
+		assertArrayEquals(page.getPageData(), peeked.getPageData());
+		assertTrue(cache.contains(pid(0)));
+
+		Page taken = cache.take(pid(0), decoder());
+		assertArrayEquals(page.getPageData(), taken.getPageData());
+		assertFalse(cache.contains(pid(0)));
+		assertEquals(0, cache.getBytes());
+		assertNull(cache.take(pid(0), decoder()));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	/**
+	 * The oldest images are dropped to stay within the budget
+	 */
+	@Test
+	public void budget() throws Exception {
+		Page page = hf.readPage(pid(0));
+		CompressedPageCache probe = new CompressedPageCache(BufferPool.getPageSize());
+		probe.store(page);
+		long imageBytes = probe.getBytes();
+
+		CompressedPageCache cache = new CompressedPageCache(imageBytes * 3 + imageBytes / 2);
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			cache.store(hf.readPage(pid(i)));
+			assertTrue(cache.getBytes() <= cache.getBudget());
+		}
+		assertTrue(cache.size() < TABLE_PAGES);
+		assertTrue(cache.getEvictions() > 0);
+		assertTrue(cache.contains(pid(TABLE_PAGES - 1)));
+		assertFalse(cache.contains(pid(0)));
+	}
+
+	/**
+	 * A table larger than the pool is scanned again without disk reads
+	 */
+	@Test
+	public void bufferPoolUsesCache() throws Exception {
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+		bp.getPrefetcher().setMaxDepth(0);
+		bp.setCompressedCache(TABLE_PAGES * (long) BufferPool.getPageSize());
+		SystemTestUtil.matchTuples(hf, tuples);
+		long reads = bp.getStats().reads;
+		assertEquals(TABLE_PAGES, reads);
+		assertEquals(TABLE_PAGES - POOL_PAGES, bp.getCompressedCache().size());
+
+		SystemTestUtil.matchTuples(hf, tuples);
+		assertEquals(reads, bp.getStats().reads);
+		assertTrue(bp.getCompressedCache().getHits() >= TABLE_PAGES);
+	}
+
+	/**
+	 * Writing a page back drops its compressed image
+	 */
+	@Test
+	public void flushInvalidatesImage() throws Exception {
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+		bp.getPrefetcher().setMaxDepth(0);
+		bp.setCompressedCache(TABLE_PAGES * (long) BufferPool.getPageSize());
+		TransactionId tid = new TransactionId();
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+		}
+		bp.transactionComplete(tid);
+		assertTrue(bp.getCompressedCache().contains(pid(0)));
+
+		tid = new TransactionId();
+		HeapPage page = (HeapPage) bp.getPage(tid, pid(0), Permissions.READ_WRITE);
+		assertFalse(bp.getCompressedCache().contains(pid(0)));
+		bp.deleteTuple(tid, page.getTuple(0));
+		bp.transactionComplete(tid, true);
+		assertFalse(bp.getCompressedCache().contains(pid(0)));
+		assertEquals(1, ((HeapPage) hf.readPage(pid(0))).getNumEmptySlots());
+	}
+
+	/**
+	 * A page evicted into the off-heap frames drops its older compressed image
+	 */
+	@Test
+	public void arenaStoreDropsOlderImage() throws Exception {
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES, ReplacementPolicy.Type.LRU,
+				TABLE_PAGES * (long) BufferPool.getPageSize());
+		bp.getPrefetcher().setMaxDepth(0);
+		bp.setCompressedCache(TABLE_PAGES * (long) BufferPool.getPageSize());
+		TransactionId tid = new TransactionId();
+		bp.getPage(tid, pid(0), Permissions.READ_ONLY);
+		bp.getCompressedCache().store(hf.readPage(pid(0)));
+
+		for (int i = 1; i <= POOL_PAGES; i++) {
+			bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+		}
+		bp.transactionComplete(tid);
+		assertFalse(bp.isResident(pid(0)));
+		assertTrue(bp.getArena().contains(pid(0)));
+		assertFalse(bp.getCompressedCache().contains(pid(0)));
+	}
+}
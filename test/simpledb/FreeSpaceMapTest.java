@@ -0,0 +1,133 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+	private static final int FULL_PAGES = 6;
+
+	private HeapFile hf;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		hf = SystemTestUtil.createRandomHeapFile(2, 504 * FULL_PAGES, null, null);
+	}
+
+	private HeapPageId pid(int pageNo) {
+		return new HeapPageId(hf.getId(), pageNo);
+	}
+
+	/**
+	 * An insert into a file of full pages appends a page without locking the full ones
+	 */
+	@Test
+	public void fullFileAppends() throws Exception {
+		TransactionId tid = new TransactionId();
+		Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+		assertEquals(FULL_PAGES + 1, hf.numPages());
+		for (int i = 0; i < FULL_PAGES; i++) {
+			assertFalse(Database.getBufferPool().holdsLock(tid, pid(i)));
+		}
+		assertTrue(Database.getBufferPool().holdsLock(tid, pid(FULL_PAGES)));
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
+	/**
+	 * A slot freed by a delete is reused by the next insert
+	 */
+	@Test
+	public void deleteMakesRoom() throws Exception {
+		TransactionId tid = new TransactionId();
+		HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid(3), Permissions.READ_WRITE);
+		Database.getBufferPool().deleteTuple(tid, page.getTuple(7));
+		Database.getBufferPool().transactionComplete(tid);
+
+		tid = new TransactionId();
+		Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+		assertEquals(FULL_PAGES, hf.numPages());
+		assertTrue(Database.getBufferPool().holdsLock(tid, pid(3)));
+		assertFalse(Database.getBufferPool().holdsLock(tid, pid(0)));
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
+	/**
+	 * The map is rebuilt from the page headers on disk and spreads transactions
+	 */
+	@Test
+	public void rebuildAndSpread() throws Exception {
+		TransactionId tid = new TransactionId();
+		for (int pg : new int[]{1, 2, 4, 5}) {
+			HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid(pg), Permissions.READ_WRITE);
+			Database.getBufferPool().deleteTuple(tid, page.getTuple(0));
+		}
+		Database.getBufferPool().transactionComplete(tid);
+
+		FreeSpaceMap map = new FreeSpaceMap(hf);
+		Set<Integer> chosen = new HashSet<>();
+		for (int i = 0; i < 32; i++) {
+			int pg = map.pageWithSpace(new TransactionId());
+			assertTrue(pg == 1 || pg == 2 || pg == 4 || pg == 5);
+			chosen.add(pg);
+		}
+		assertTrue(chosen.size() > 1);
+
+		map.markFull(1);
+		map.markFull(2);
+		map.markFull(4);
+		map.markFull(5);
+		assertEquals(-1, map.pageWithSpace(new TransactionId()));
+	}
+
+	/**
+	 * A page filled by an aborted transaction has room again
+	 */
+	@Test
+	public void abortFreesFilledPages() throws Exception {
+		TransactionId tid = new TransactionId();
+		for (int i = 0; i < 504; i++) {
+			Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(i, 2));
+		}
+		assertEquals(FULL_PAGES + 1, hf.numPages());
+		Database.getBufferPool().transactionComplete(tid, false);
+
+		tid = new TransactionId();
+		Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+		assertEquals(FULL_PAGES + 1, hf.numPages());
+		assertTrue(Database.getBufferPool().holdsLock(tid, pid(FULL_PAGES)));
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
+	/**
+	 * The map is rebuilt from the version of the pages in the pool, not from
+	 * their older version on disk
+	 */
+	@Test
+	public void rebuildSeesDirtyPages() throws Exception {
+		TransactionId tid = new TransactionId();
+		HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid(3), Permissions.READ_WRITE);
+		Database.getBufferPool().deleteTuple(tid, page.getTuple(0));
+
+		FreeSpaceMap map = new FreeSpaceMap(hf);
+		assertEquals(3, map.pageWithSpace(new TransactionId()));
+		Database.getBufferPool().transactionComplete(tid);
+	}
+}
@@ -5,6 +5,12 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 
 public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
@@ -52,5 +58,38 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
 		empty.insertTuple(tid, Utility.getHeapTuple(0, 2));
 		assertEquals(3, empty.numPages());
 	}
-}
 
+	/**
+	 * A file with its own page size holds more tuples per page, and shares the
+	 * buffer pool with files of the default page size
+	 */
+	@Test
+	public void largePages() throws Exception {
+		int pageSize = 4 * BufferPool.getPageSize();
+		File f = File.createTempFile("large", ".dat");
+		f.deleteOnExit();
+		ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			tuples.add(new ArrayList<>(Arrays.asList(i, -i)));
+		}
+		HeapFileEncoder.convert(tuples, f, pageSize, 2);
+		HeapFile large = new HeapFile(f, Utility.getTupleDesc(2), pageSize);
+		Database.getCatalog().addTable(large, SystemTestUtil.getUUID());
+		assertEquals(pageSize, large.getPageSize());
+		assertEquals(BufferPool.getPageSize(), empty.getPageSize());
+		// 每个page 2016个tuple
+		assertEquals(2, large.numPages());
+		SystemTestUtil.matchTuples(large, tuples);
+
+		for (int i = 0; i < 2016 * 2 - 3000; i++) {
+			large.insertTuple(tid, Utility.getHeapTuple(i, 2));
+		}
+		assertEquals(2, large.numPages());
+		large.insertTuple(tid, Utility.getHeapTuple(0, 2));
+		empty.insertTuple(tid, Utility.getHeapTuple(0, 2));
+		assertEquals(3, large.numPages());
+		assertEquals(3L * pageSize, f.length());
+		assertEquals(1, empty.numPages());
+		assertEquals(pageSize, large.readPage(new HeapPageId(large.getId(), 2)).getPageData().length);
+	}
+}
@@ -12,8 +12,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class HeapPageReadTest extends SimpleDbTestBase {
@@ -132,4 +134,52 @@ public class HeapPageReadTest extends SimpleDbTestBase {
 		for (int i = 20; i < 504; ++i)
 			assertFalse(page.isSlotUsed(i));
 	}
+
+	/**
+	 * Unit test for HeapPage.getInt() and HeapPage.getField()
+	 */
+	@Test
+	public void typedAccessors() throws Exception {
+		HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+		for (int i = 0; i < EXAMPLE_VALUES.length; i++) {
+			assertEquals(EXAMPLE_VALUES[i][0], page.getInt(i, 0));
+			assertEquals(new IntField(EXAMPLE_VALUES[i][1]), page.getField(i, 1));
+		}
+		assertNull(page.getTuple(20));
+		assertEquals(EXAMPLE_VALUES[3][1], ((IntField) page.getTuple(3).getField(1)).getValue());
+	}
+
+	/**
+	 * Accessing a few tuples must not change the serialized page
+	 */
+	@Test
+	public void partiallyDecodedPageData() throws Exception {
+		HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+		page.getTuple(5);
+		page.getInt(7, 1);
+		assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+	}
+	/**
+	 * Unit test for HeapPage.iterator(Predicate): only the tuples passing the
+	 * predicate are decoded
+	 */
+	@Test
+	public void filteredIterator() throws Exception {
+		HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+		Iterator<Tuple> it = page.iterator(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(40000)));
+		for (int i = 0; i < EXAMPLE_VALUES.length; i++) {
+			if (EXAMPLE_VALUES[i][0] <= 40000) {
+				continue;
+			}
+			assertTrue(it.hasNext());
+			Tuple tup = it.next();
+			assertEquals(i, tup.getRecordId().getTupleNumber());
+			assertEquals(EXAMPLE_VALUES[i][1], ((IntField) tup.getField(1)).getValue());
+		}
+		assertFalse(it.hasNext());
+		for (int i = 0; i < EXAMPLE_VALUES.length; i++) {
+			assertEquals(EXAMPLE_VALUES[i][0] > 40000, page.tuples.isDecoded(i));
+		}
+	}
+
 }
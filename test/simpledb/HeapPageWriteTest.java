@@ -8,10 +8,16 @@ import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class HeapPageWriteTest extends SimpleDbTestBase {
@@ -134,5 +140,31 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
 			// explicitly ignored
 		}
 	}
-}
 
+	/**
+	 * The before-image is captured on the first modification only, and
+	 * setBeforeImage makes the current content the before-image
+	 */
+	@Test
+	public void copyOnWriteBeforeImage() throws Exception {
+		HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+		assertNull(page.oldData);
+		assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+		page.insertTuple(Utility.getHeapTuple(1, 2));
+		byte[] captured = page.oldData;
+		assertNotNull(captured);
+		page.insertTuple(Utility.getHeapTuple(2, 2));
+		assertSame(captured, page.oldData);
+		assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+		page.setBeforeImage();
+		assertNull(page.oldData);
+		byte[] committed = page.getPageData();
+		assertArrayEquals(committed, page.getBeforeImage().getPageData());
+
+		page.deleteTuple(page.getTuple(0));
+		assertArrayEquals(committed, page.getBeforeImage().getPageData());
+		assertFalse(Arrays.equals(committed, page.getPageData()));
+	}
+}
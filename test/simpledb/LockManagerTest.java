@@ -0,0 +1,388 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LockManagerTest extends SimpleDbTestBase {
+
+	// 只用来防止测试卡死 不是对延迟的要求
+	private static final long GUARD_SECONDS = 10;
+
+	private LockManager lm;
+	private PageId p0, p1;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(LockManagerTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		lm = new LockManager();
+		p0 = new HeapPageId(1, 0);
+		p1 = new HeapPageId(1, 1);
+	}
+
+	/**
+	 * Request the lock on another thread.
+	 *
+	 * @return a future completed with the result of acquireLock
+	 */
+	private CompletableFuture<Boolean> acquire(TransactionId tid, PageId pid, Permissions perm) {
+		CompletableFuture<Boolean> res = new CompletableFuture<>();
+		Thread t = new Thread(() -> res.complete(lm.acquireLock(tid, pid, perm)));
+		t.setDaemon(true);
+		t.start();
+		return res;
+	}
+
+	/**
+	 * Poll the queue state of the lock manager until the request of the
+	 * transaction waits, failing if it is granted or aborted instead.
+	 */
+	private void assertWaiting(TransactionId tid, CompletableFuture<Boolean> f) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(GUARD_SECONDS);
+		while (!lm.isWaiting(tid)) {
+			assertFalse("the request did not wait", f.isDone());
+			assertTrue("the request was never queued", System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+		assertFalse(f.isDone());
+	}
+
+	private static boolean result(CompletableFuture<Boolean> f) throws Exception {
+		return f.get(GUARD_SECONDS, TimeUnit.SECONDS);
+	}
+
+	private static void assertGranted(CompletableFuture<Boolean> f) throws Exception {
+		assertTrue(result(f));
+	}
+
+	/**
+	 * Waiters are granted in arrival order, a reader does not pass a queued
+	 * writer
+	 */
+	@Test
+	public void fifo() throws Exception {
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		TransactionId t3 = new TransactionId();
+		TransactionId t4 = new TransactionId();
+		assertTrue(lm.acquireLock(t1, p0, Permissions.READ_WRITE));
+		CompletableFuture<Boolean> f2 = acquire(t2, p0, Permissions.READ_ONLY);
+		assertWaiting(t2, f2);
+		CompletableFuture<Boolean> f3 = acquire(t3, p0, Permissions.READ_WRITE);
+		assertWaiting(t3, f3);
+		CompletableFuture<Boolean> f4 = acquire(t4, p0, Permissions.READ_ONLY);
+		assertWaiting(t4, f4);
+
+		lm.releaseLock(t1, p0);
+		assertGranted(f2);
+		assertWaiting(t3, f3);
+		assertWaiting(t4, f4);
+
+		lm.completeTransaction(t2);
+		assertGranted(f3);
+		assertWaiting(t4, f4);
+
+		lm.completeTransaction(t3);
+		assertGranted(f4);
+		assertTrue(lm.holdsLock(t4, p0));
+	}
+
+	/**
+	 * A waiter gets the lock as soon as it is released, and does not give up
+	 * while no deadlock exists
+	 */
+	@Test
+	public void wakeupOnRelease() throws Exception {
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		assertTrue(lm.acquireLock(t1, p0, Permissions.READ_WRITE));
+		CompletableFuture<Boolean> f2 = acquire(t2, p0, Permissions.READ_WRITE);
+		assertWaiting(t2, f2);
+		// 没有死锁 检测器跑几次都不会让它放弃
+		lm.detectDeadlocks();
+		lm.detectDeadlocks();
+		assertWaiting(t2, f2);
+
+		// 释放的时候直接授予 不靠等待者轮询
+		lm.releaseLock(t1, p0);
+		assertFalse(lm.isWaiting(t2));
+		assertTrue(lm.holdsLock(t2, p0));
+		assertGranted(f2);
+	}
+
+	/**
+	 * An upgrade is granted before the requests queued earlier
+	 */
+	@Test
+	public void upgradeFirst() throws Exception {
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		TransactionId t3 = new TransactionId();
+		assertTrue(lm.acquireLock(t1, p0, Permissions.READ_ONLY));
+		assertTrue(lm.acquireLock(t2, p0, Permissions.READ_ONLY));
+		CompletableFuture<Boolean> f3 = acquire(t3, p0, Permissions.READ_WRITE);
+		assertWaiting(t3, f3);
+		CompletableFuture<Boolean> f1 = acquire(t1, p0, Permissions.READ_WRITE);
+		assertWaiting(t1, f1);
+
+		lm.completeTransaction(t2);
+		assertGranted(f1);
+		assertWaiting(t3, f3);
+
+		lm.completeTransaction(t1);
+		assertGranted(f3);
+	}
+
+	/**
+	 * The detector aborts the youngest transaction of a cycle, even if an
+	 * older one closed it
+	 */
+	@Test
+	public void deadlock() throws Exception {
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		assertTrue(lm.acquireLock(t1, p0, Permissions.READ_WRITE));
+		assertTrue(lm.acquireLock(t2, p1, Permissions.READ_WRITE));
+		CompletableFuture<Boolean> f2 = acquire(t2, p0, Permissions.READ_ONLY);
+		assertWaiting(t2, f2);
+		assertEquals(0, lm.getAborts());
+
+		CompletableFuture<Boolean> f1 = acquire(t1, p1, Permissions.READ_ONLY);
+		assertFalse(result(f2));
+		assertEquals(1, lm.getAborts());
+		assertWaiting(t1, f1);
+
+		lm.completeTransaction(t2);
+		assertGranted(f1);
+	}
+
+	/**
+	 * Completing a transaction releases only its own pages, and pages nobody
+	 * holds leave the lock table
+	 */
+	@Test
+	public void completeReleasesOwnPages() throws Exception {
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		for (int i = 0; i < 10; i++) {
+			assertTrue(lm.acquireLock(t1, new HeapPageId(1, i), Permissions.READ_ONLY));
+		}
+		assertTrue(lm.acquireLock(t2, p0, Permissions.READ_ONLY));
+		assertTrue(lm.acquireLock(t2, new HeapPageId(2, 0), Permissions.READ_WRITE));
+		// 11个page锁 2个table锁
+		assertEquals(13, lm.size());
+		assertEquals(10, lm.relatedPages(t1).size());
+
+		assertEquals(10, lm.completeTransaction(t1).size());
+		assertTrue(lm.relatedPages(t1).isEmpty());
+		assertEquals(4, lm.size());
+		assertTrue(lm.holdsLock(t2, p0));
+
+		assertTrue(lm.releaseLock(t2, p0));
+		assertEquals(3, lm.size());
+		assertEquals(1, lm.completeTransaction(t2).size());
+		assertEquals(0, lm.size());
+	}
+
+	/**
+	 * Under wait-die an older transaction waits for a younger one, a younger
+	 * requester aborts at once
+	 */
+	@Test
+	public void waitDie() throws Exception {
+		lm = new LockManager(LockManager.Policy.WAIT_DIE);
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		assertTrue(lm.acquireLock(t1, p0, Permissions.READ_WRITE));
+		assertTrue(lm.acquireLock(t2, p1, Permissions.READ_WRITE));
+		assertFalse(lm.acquireLock(t2, p0, Permissions.READ_ONLY));
+		assertEquals(1, lm.getAborts());
+
+		CompletableFuture<Boolean> f1 = acquire(t1, p1, Permissions.READ_ONLY);
+		assertWaiting(t1, f1);
+		lm.completeTransaction(t2);
+		assertGranted(f1);
+		assertEquals(1, lm.getAborts());
+	}
+
+	/**
+	 * Under wound-wait an older requester wounds a younger holder, which
+	 * fails its next request
+	 */
+	@Test
+	public void woundWait() throws Exception {
+		lm = new LockManager(LockManager.Policy.WOUND_WAIT);
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		assertTrue(lm.acquireLock(t2, p0, Permissions.READ_WRITE));
+		CompletableFuture<Boolean> f1 = acquire(t1, p0, Permissions.READ_WRITE);
+		assertWaiting(t1, f1);
+		assertEquals(1, lm.getAborts());
+
+		assertFalse(lm.acquireLock(t2, p1, Permissions.READ_ONLY));
+		lm.completeTransaction(t2);
+		assertGranted(f1);
+		// 重启后的事务不再是wounded
+		assertTrue(lm.acquireLock(t2, p1, Permissions.READ_ONLY));
+	}
+
+	/**
+	 * A wounded transaction waiting for a lock is woken up and aborts
+	 */
+	@Test
+	public void woundWaiting() throws Exception {
+		lm = new LockManager(LockManager.Policy.WOUND_WAIT);
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		assertTrue(lm.acquireLock(t1, p1, Permissions.READ_WRITE));
+		assertTrue(lm.acquireLock(t2, p0, Permissions.READ_WRITE));
+		CompletableFuture<Boolean> f2 = acquire(t2, p1, Permissions.READ_ONLY);
+		assertWaiting(t2, f2);
+
+		CompletableFuture<Boolean> f1 = acquire(t1, p0, Permissions.READ_ONLY);
+		assertFalse(result(f2));
+		assertWaiting(t1, f1);
+		lm.completeTransaction(t2);
+		assertGranted(f1);
+	}
+
+	/**
+	 * The benchmark makes progress under every policy
+	 */
+	@Test
+	public void benchmark() throws Exception {
+		for (LockManager.Policy policy : LockManager.Policy.values()) {
+			LockBenchmark.Result res = LockBenchmark.run(policy, 4, 8, 200);
+			assertTrue(res.toString(), res.commits > 0);
+		}
+	}
+
+	/**
+	 * A reader with many page locks on a table escalates to one S table lock,
+	 * which blocks writers but not readers of the table
+	 */
+	@Test
+	public void escalateToShared() throws Exception {
+		lm.setEscalationThreshold(4);
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		for (int i = 0; i < 10; i++) {
+			assertTrue(lm.acquireLock(t1, new HeapPageId(1, i), Permissions.READ_ONLY));
+		}
+		assertEquals(1, lm.getEscalations());
+		assertEquals(1, lm.size());
+		assertTrue(lm.holdsLock(t1, new HeapPageId(1, 100)));
+		assertTrue(lm.relatedPages(t1).isEmpty());
+
+		assertTrue(lm.acquireLock(t2, p0, Permissions.READ_ONLY));
+		CompletableFuture<Boolean> f2 = acquire(t2, p1, Permissions.READ_WRITE);
+		assertWaiting(t2, f2);
+		lm.completeTransaction(t1);
+		assertGranted(f2);
+		lm.completeTransaction(t2);
+		assertEquals(0, lm.size());
+	}
+
+	/**
+	 * A writer escalates to an X table lock and still reports the pages it
+	 * wrote
+	 */
+	@Test
+	public void escalateToExclusive() throws Exception {
+		lm.setEscalationThreshold(4);
+		TransactionId t1 = new TransactionId();
+		for (int i = 0; i < 5; i++) {
+			assertTrue(lm.acquireLock(t1, new HeapPageId(1, i), Permissions.READ_WRITE));
+		}
+		assertEquals(1, lm.getEscalations());
+		assertTrue(lm.acquireLock(t1, new HeapPageId(1, 5), Permissions.READ_ONLY));
+		assertTrue(lm.acquireLock(t1, new HeapPageId(1, 6), Permissions.READ_WRITE));
+		assertEquals(1, lm.size());
+		assertEquals(6, lm.relatedPages(t1).size());
+
+		TransactionId t2 = new TransactionId();
+		CompletableFuture<Boolean> f2 = acquire(t2, new HeapPageId(1, 7), Permissions.READ_ONLY);
+		assertWaiting(t2, f2);
+		lm.completeTransaction(t1);
+		assertGranted(f2);
+	}
+
+	/**
+	 * Escalation does not wait: while another transaction writes the table,
+	 * the reader keeps its page locks
+	 */
+	@Test
+	public void escalationDoesNotWait() throws Exception {
+		lm.setEscalationThreshold(4);
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		assertTrue(lm.acquireLock(t2, new HeapPageId(1, 100), Permissions.READ_WRITE));
+		for (int i = 0; i < 6; i++) {
+			assertTrue(lm.acquireLock(t1, new HeapPageId(1, i), Permissions.READ_ONLY));
+		}
+		assertEquals(0, lm.getEscalations());
+		assertEquals(6, lm.relatedPages(t1).size());
+
+		lm.completeTransaction(t2);
+		assertTrue(lm.acquireLock(t1, new HeapPageId(1, 6), Permissions.READ_ONLY));
+		assertEquals(1, lm.getEscalations());
+		assertEquals(1, lm.size());
+	}
+	/**
+	 * A lock held by a transaction which never completes makes waiters fail
+	 * after the lock timeout, even without a deadlock
+	 */
+	@Test
+	public void timeout() throws Exception {
+		lm.setLockTimeout(50);
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		assertTrue(lm.acquireLock(t1, p0, Permissions.READ_ONLY));
+		assertFalse(result(acquire(t2, p0, Permissions.READ_WRITE)));
+		assertEquals(1, lm.getTimeouts());
+		assertTrue(lm.acquireLock(t2, p1, Permissions.READ_WRITE));
+	}
+
+	/**
+	 * A completed transaction which keeps requesting locks gets an index of
+	 * its locks back only when a lock is granted
+	 */
+	@Test
+	public void completedTransactionNotTracked() throws Exception {
+		lm.setLockTimeout(50);
+		TransactionId t1 = new TransactionId();
+		TransactionId t2 = new TransactionId();
+		assertTrue(lm.acquireLock(t1, p0, Permissions.READ_ONLY));
+		lm.completeTransaction(t1);
+		assertFalse(lm.isTracked(t1));
+
+		// t2升级成表上的X锁 t1连IS都拿不到
+		lm.setEscalationThreshold(1);
+		assertTrue(lm.acquireLock(t2, p0, Permissions.READ_WRITE));
+		assertTrue(lm.acquireLock(t2, p1, Permissions.READ_WRITE));
+		assertEquals(1, lm.getEscalations());
+		assertFalse(result(acquire(t1, p0, Permissions.READ_ONLY)));
+		assertFalse(lm.isTracked(t1));
+
+		assertTrue(lm.acquireLock(t1, new HeapPageId(2, 0), Permissions.READ_ONLY));
+		assertTrue(lm.isTracked(t1));
+		lm.completeTransaction(t1);
+		assertFalse(lm.isTracked(t1));
+	}
+
+}
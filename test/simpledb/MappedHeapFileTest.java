@@ -0,0 +1,76 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+
+	private ArrayList<ArrayList<Integer>> tuples;
+	private MappedHeapFile mhf;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(MappedHeapFileTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		tuples = new ArrayList<>();
+		File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 3 + 10, 1000, null, tuples);
+		mhf = new MappedHeapFile(f, Utility.getTupleDesc(2));
+		Database.getCatalog().addTable(mhf, SystemTestUtil.getUUID());
+	}
+
+	/**
+	 * Mapped pages are identical to pages read through the file channel
+	 */
+	@Test
+	public void readPageMatchesChannelRead() throws Exception {
+		HeapFile plain = new HeapFile(mhf.getFile(), mhf.getTupleDesc());
+		for (int i = 0; i < mhf.numPages(); i++) {
+			HeapPageId pid = new HeapPageId(mhf.getId(), i);
+			assertArrayEquals(plain.readPage(pid).getPageData(), mhf.readPage(pid).getPageData());
+		}
+		plain.close();
+	}
+
+	/**
+	 * A scan over the mapped file returns every tuple
+	 */
+	@Test
+	public void scan() throws Exception {
+		SystemTestUtil.matchTuples(mhf, tuples);
+	}
+
+	/**
+	 * Pages appended by insertTuple are visible through the grown mapping
+	 */
+	@Test
+	public void mappingGrowsWithInserts() throws Exception {
+		int before = mhf.numPages();
+		// populate the mapping before the file grows
+		mhf.readPage(new HeapPageId(mhf.getId(), before - 1));
+
+		TransactionId tid = new TransactionId();
+		for (int i = 0; i < 504; i++) {
+			Database.getBufferPool().insertTuple(tid, mhf.getId(), Utility.getHeapTuple(new int[]{i, -i}));
+		}
+		Database.getBufferPool().transactionComplete(tid);
+		assertEquals(before + 1, mhf.numPages());
+
+		HeapPage last = (HeapPage) mhf.readPage(new HeapPageId(mhf.getId(), before));
+		assertEquals(10, 504 - last.getNumEmptySlots());
+	}
+}
@@ -0,0 +1,120 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageArenaTest extends SimpleDbTestBase {
+
+	private static final int POOL_PAGES = 4;
+	private static final int TABLE_PAGES = 12;
+
+	private ArrayList<ArrayList<Integer>> tuples;
+	private HeapFile hf;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(PageArenaTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		tuples = new ArrayList<>();
+		hf = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, 1000, null, tuples);
+	}
+
+	private HeapPageId pid(int pageNo) {
+		return new HeapPageId(hf.getId(), pageNo);
+	}
+
+	private static PageArena.Decoder decoder() {
+		return (pid, image) -> Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid, image);
+	}
+
+	/**
+	 * A page taken from the arena is decoded from its frame and leaves the arena
+	 */
+	@Test
+	public void storeAndTake() throws Exception {
+		PageArena arena = new PageArena(4L * BufferPool.getPageSize(), BufferPool.getPageSize());
+		Page page = hf.readPage(pid(0));
+		assertTrue(arena.store(page));
+		assertTrue(arena.contains(pid(0)));
+
+		Page peeked = arena.peek(pid(0), decoder());
+		assertArrayEquals(page.getPageData(), peeked.getPageData());
+		assertTrue(arena.contains(pid(0)));
+
+		Page taken = arena.take(pid(0), decoder());
+		assertArrayEquals(page.getPageData(), taken.getPageData());
+		assertFalse(arena.contains(pid(0)));
+		assertNull(arena.take(pid(0), decoder()));
+	}
+
+	/**
+	 * A full arena recycles frames, keeping recently peeked pages
+	 */
+	@Test
+	public void recycleFrames() throws Exception {
+		PageArena arena = new PageArena(3L * BufferPool.getPageSize(), BufferPool.getPageSize());
+		for (int i = 0; i < 3; i++) {
+			arena.store(hf.readPage(pid(i)));
+		}
+		arena.peek(pid(0), decoder());
+		arena.store(hf.readPage(pid(3)));
+
+		assertEquals(3, arena.size());
+		assertTrue(arena.contains(pid(0)));
+		assertFalse(arena.contains(pid(1)));
+		assertTrue(arena.contains(pid(3)));
+	}
+
+	/**
+	 * Pages evicted from the pool go to the arena and are served from it
+	 */
+	@Test
+	public void bufferPoolUsesArena() throws Exception {
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES, ReplacementPolicy.Type.LRU,
+				(long) TABLE_PAGES * BufferPool.getPageSize());
+		bp.getPrefetcher().setMaxDepth(0);
+		SystemTestUtil.matchTuples(hf, tuples);
+		assertEquals(TABLE_PAGES - POOL_PAGES, bp.getArena().size());
+		assertTrue(bp.getArena().contains(pid(0)));
+
+		// 第二次扫描从堆外读 结果必须一样
+		SystemTestUtil.matchTuples(hf, tuples);
+		assertEquals(TABLE_PAGES - POOL_PAGES, bp.getArena().size());
+	}
+
+	/**
+	 * A page written back to disk invalidates its image in the arena
+	 */
+	@Test
+	public void flushInvalidatesImage() throws Exception {
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES, ReplacementPolicy.Type.LRU,
+				(long) TABLE_PAGES * BufferPool.getPageSize());
+		bp.getArena().store(hf.readPage(pid(0)));
+		TransactionId tid = new TransactionId();
+		HeapPage page = (HeapPage) bp.getPage(tid, pid(0), Permissions.READ_WRITE);
+		assertFalse(bp.getArena().contains(pid(0)));
+		bp.getArena().store(page);
+
+		Tuple t = page.iterator().next();
+		bp.deleteTuple(tid, t);
+		bp.transactionComplete(tid);
+		assertFalse(bp.getArena().contains(pid(0)));
+	}
+}
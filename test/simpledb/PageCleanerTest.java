@@ -0,0 +1,136 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PageCleanerTest extends SimpleDbTestBase {
+
+	private static final int POOL_PAGES = 4;
+	private static final int TABLE_PAGES = 8;
+
+	private ArrayList<ArrayList<Integer>> tuples;
+	private HeapFile hf;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(PageCleanerTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		tuples = new ArrayList<>();
+		hf = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, 1000, null, tuples);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Database.getBufferPool().setSteal(false);
+	}
+
+	private HeapPageId pid(int pageNo) {
+		return new HeapPageId(hf.getId(), pageNo);
+	}
+
+	private void deleteFirstTuples(BufferPool bp, TransactionId tid, int numPages) throws Exception {
+		for (int i = 0; i < numPages; i++) {
+			HeapPage page = (HeapPage) bp.getPage(tid, pid(i), Permissions.READ_WRITE);
+			bp.deleteTuple(tid, page.getTuple(0));
+		}
+	}
+
+	/**
+	 * Without STEAL a transaction cannot dirty more pages than the pool holds
+	 */
+	@Test
+	public void noStealRunsOutOfPages() throws Exception {
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+		bp.getPrefetcher().setMaxDepth(0);
+		try {
+			deleteFirstTuples(bp, new TransactionId(), TABLE_PAGES);
+			fail("expected DbException");
+		} catch (DbException expected) {
+		}
+	}
+
+	/**
+	 * With STEAL a transaction may dirty more pages than the pool holds and
+	 * its changes are durable once it commits
+	 */
+	@Test
+	public void stealCommit() throws Exception {
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+		bp.getPrefetcher().setMaxDepth(0);
+		bp.setSteal(true);
+		TransactionId tid = new TransactionId();
+		deleteFirstTuples(bp, tid, TABLE_PAGES);
+		bp.transactionComplete(tid, true);
+
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			HeapPage onDisk = (HeapPage) hf.readPage(pid(i));
+			assertEquals(1, onDisk.getNumEmptySlots());
+		}
+	}
+
+	/**
+	 * Pages written back before an abort are restored from their before-images
+	 */
+	@Test
+	public void stealAbort() throws Exception {
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+		bp.getPrefetcher().setMaxDepth(0);
+		bp.setSteal(true);
+		TransactionId tid = new TransactionId();
+		deleteFirstTuples(bp, tid, TABLE_PAGES);
+		bp.transactionComplete(tid, false);
+
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			HeapPage onDisk = (HeapPage) hf.readPage(pid(i));
+			assertEquals(0, onDisk.getNumEmptySlots());
+		}
+		SystemTestUtil.matchTuples(hf, tuples);
+	}
+
+	/**
+	 * The background thread brings the dirty ratio down to the low watermark
+	 */
+	@Test
+	public void backgroundCleaning() throws Exception {
+		BufferPool bp = Database.resetBufferPool(20);
+		bp.getPrefetcher().setMaxDepth(0);
+		bp.getCleaner().setWatermarks(0.1, 1.0);
+		bp.setSteal(true);
+		assertTrue(bp.getCleaner().isRunning());
+
+		TransactionId tid = new TransactionId();
+		deleteFirstTuples(bp, tid, TABLE_PAGES);
+		assertEquals(TABLE_PAGES, bp.dirtyPages(tid).size());
+		// 超过高水位以后 后台线程一直写到低水位
+		bp.getCleaner().setWatermarks(0.1, 0.3);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (bp.dirtyRatio() > 0.1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(bp.dirtyRatio() <= 0.1);
+		// 已经写回的page上能看到未提交的修改
+		assertEquals(1, ((HeapPage) hf.readPage(pid(0))).getNumEmptySlots());
+
+		bp.transactionComplete(tid, true);
+		assertEquals(0, bp.dirtyPages(null).size());
+		bp.setSteal(false);
+		assertFalse(bp.getCleaner().isRunning());
+	}
+}
@@ -0,0 +1,144 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PageFileChannelTest extends SimpleDbTestBase {
+
+	private static final int PAGE = 64;
+
+	private File file;
+	private PageFileChannel channel;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(PageFileChannelTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("pagechannel", ".dat");
+		file.deleteOnExit();
+		channel = new PageFileChannel(file);
+	}
+
+	@After
+	public void tearDown() {
+		channel.close();
+		file.delete();
+	}
+
+	private static byte[] page(int fill) {
+		byte[] data = new byte[PAGE];
+		for (int i = 0; i < PAGE; i++) {
+			data[i] = (byte) (fill + i);
+		}
+		return data;
+	}
+
+	/**
+	 * Positional writes and appends land where expected, reads past the end return -1
+	 */
+	@Test
+	public void readWriteAppend() throws Exception {
+		assertEquals(0, channel.append(page(1)));
+		assertEquals(PAGE, channel.append(page(2)));
+		channel.write(page(3), 0);
+		assertEquals(2 * PAGE, file.length());
+
+		byte[] buf = new byte[PAGE];
+		assertEquals(PAGE, channel.read(buf, 0, 0));
+		assertArrayEquals(page(3), buf);
+		assertEquals(PAGE, channel.read(buf, 0, PAGE));
+		assertArrayEquals(page(2), buf);
+		assertEquals(-1, channel.read(buf, 0, 2 * PAGE));
+	}
+
+	/**
+	 * A closed channel is reopened by the next I/O
+	 */
+	@Test
+	public void reopenAfterClose() throws Exception {
+		channel.write(page(5), 0);
+		channel.close();
+		byte[] buf = new byte[PAGE];
+		assertEquals(PAGE, channel.read(buf, 0, 0));
+		assertArrayEquals(page(5), buf);
+	}
+
+	/**
+	 * Concurrent readers of different pages never see each other's data
+	 */
+	@Test
+	public void concurrentReaders() throws Exception {
+		final int pages = 32;
+		for (int i = 0; i < pages; i++) {
+			channel.append(page(i));
+		}
+		final AtomicInteger errors = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread th = new Thread(() -> {
+				try {
+					for (int round = 0; round < 50; round++) {
+						for (int i = 0; i < pages; i++) {
+							byte[] buf = PageFileChannel.borrowBuffer(PAGE);
+							channel.read(buf, 0, (long) i * PAGE);
+							if (buf[0] != (byte) i) {
+								errors.incrementAndGet();
+							}
+						}
+					}
+				} catch (Exception e) {
+					errors.incrementAndGet();
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		for (Thread th : threads) {
+			th.join();
+		}
+		assertEquals(0, errors.get());
+	}
+
+	/**
+	 * Batched writes land at their offsets, whether they are adjacent or not
+	 */
+	@Test
+	public void writePages() throws Exception {
+		List<Page> pages = new ArrayList<>();
+		for (int i : new int[]{0, 1, 2, 5, 6}) {
+			pages.add(new PageTableTest.MemPage(new HeapPageId(1, i)) {
+				@Override
+				public byte[] getPageData() {
+					return page(getId().getPageNumber());
+				}
+			});
+		}
+		channel.writePages(pages, p -> (long) p.getId().getPageNumber() * PAGE);
+		assertEquals(7 * PAGE, file.length());
+
+		byte[] buf = new byte[PAGE];
+		for (int i : new int[]{0, 1, 2, 5, 6}) {
+			channel.read(buf, 0, (long) i * PAGE);
+			assertArrayEquals(page(i), buf);
+		}
+		channel.read(buf, 0, 3L * PAGE);
+		assertArrayEquals(new byte[PAGE], buf);
+	}
+}
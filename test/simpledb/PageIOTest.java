@@ -0,0 +1,147 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PageIOTest extends SimpleDbTestBase {
+
+	private static final int TABLE_PAGES = 8;
+
+	private HeapFile hf;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(PageIOTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		hf = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, 1000, null, new ArrayList<>());
+		Database.resetBufferPool(BufferPool.DEFAULT_PAGES).getPrefetcher().setMaxDepth(0);
+	}
+
+	private HeapPageId pid(int pageNo) {
+		return new HeapPageId(hf.getId(), pageNo);
+	}
+
+	/**
+	 * Reads issued together all complete with the pages on disk
+	 */
+	@Test
+	public void readAsync() throws Exception {
+		List<CompletableFuture<Page>> reads = new ArrayList<>();
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			reads.add(hf.readPageAsync(pid(i)));
+		}
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			assertArrayEquals(hf.readPage(pid(i)).getPageData(), reads.get(i).get().getPageData());
+		}
+	}
+
+	/**
+	 * An asynchronous write is on disk once its future completes
+	 */
+	@Test
+	public void writeAsync() throws Exception {
+		HeapPage page = (HeapPage) hf.readPage(pid(0));
+		page.deleteTuple(page.getTuple(0));
+		hf.writePagesAsync(Collections.singletonList(page)).get();
+		assertEquals(1, ((HeapPage) hf.readPage(pid(0))).getNumEmptySlots());
+	}
+
+	/**
+	 * getPageAsync loads missing pages into the pool and returns resident
+	 * pages at once
+	 */
+	@Test
+	public void getPageAsync() throws Exception {
+		BufferPool bp = Database.getBufferPool();
+		TransactionId tid = new TransactionId();
+		List<CompletableFuture<Page>> pages = new ArrayList<>();
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			pages.add(bp.getPageAsync(tid, pid(i), Permissions.READ_ONLY));
+		}
+		for (int i = 0; i < TABLE_PAGES; i++) {
+			Page page = pages.get(i).get();
+			assertEquals(pid(i), page.getId());
+			assertSame(page, bp.getPage(tid, pid(i), Permissions.READ_ONLY));
+		}
+
+		CompletableFuture<Page> resident = bp.getPageAsync(tid, pid(0), Permissions.READ_ONLY);
+		assertTrue(resident.isDone());
+		assertSame(pages.get(0).get(), resident.get());
+		assertTrue(bp.holdsLock(tid, pid(0)));
+		bp.transactionComplete(tid);
+	}
+
+	/**
+	 * A failed read completes the future exceptionally
+	 */
+	@Test(expected = ExecutionException.class)
+	public void getPageAsyncFails() throws Exception {
+		BufferPool bp = Database.resetBufferPool(2);
+		bp.getPrefetcher().setMaxDepth(0);
+		TransactionId tid = new TransactionId();
+		for (int i = 0; i < 2; i++) {
+			HeapPage page = (HeapPage) bp.getPageAsync(tid, pid(i), Permissions.READ_WRITE).get();
+			bp.deleteTuple(tid, page.getTuple(0));
+		}
+		// pool里都是脏page 没有可以淘汰的
+		bp.getPageAsync(tid, pid(2), Permissions.READ_ONLY).get();
+	}
+
+	/**
+	 * A commit writes the pages of each table as one batch through
+	 * writePagesAsync, and they are on disk when it returns
+	 */
+	@Test
+	public void commitWritesTablesAsync() throws Exception {
+		AtomicInteger batches = new AtomicInteger();
+		HeapFile[] files = new HeapFile[2];
+		for (int i = 0; i < files.length; i++) {
+			HeapFile created = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, null);
+			files[i] = new HeapFile(created.getFile(), created.getTupleDesc()) {
+				@Override
+				public CompletableFuture<Void> writePagesAsync(List<Page> pages) {
+					batches.incrementAndGet();
+					return super.writePagesAsync(pages);
+				}
+			};
+			Database.getCatalog().addTable(files[i], "async" + i);
+		}
+		BufferPool bp = Database.getBufferPool();
+		TransactionId tid = new TransactionId();
+		for (HeapFile f : files) {
+			for (int pg = 0; pg < 2; pg++) {
+				HeapPage page = (HeapPage) bp.getPage(tid, new HeapPageId(f.getId(), pg), Permissions.READ_WRITE);
+				bp.deleteTuple(tid, page.getTuple(0));
+			}
+		}
+		bp.transactionComplete(tid);
+
+		assertEquals(files.length, batches.get());
+		for (HeapFile f : files) {
+			for (int pg = 0; pg < 2; pg++) {
+				assertEquals(1, ((HeapPage) f.readPage(new HeapPageId(f.getId(), pg))).getNumEmptySlots());
+			}
+		}
+	}
+}
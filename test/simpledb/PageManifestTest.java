@@ -0,0 +1,123 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PageManifestTest extends SimpleDbTestBase {
+
+	private static final int TABLE_PAGES = 20;
+
+	private File manifest;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(PageManifestTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		manifest = File.createTempFile("manifest", ".pages");
+		manifest.deleteOnExit();
+	}
+
+	@After
+	public void tearDown() {
+		manifest.delete();
+	}
+
+	/**
+	 * Heap and B+ tree page ids are read back in the order they were written,
+	 * a truncated manifest yields the complete entries
+	 */
+	@Test
+	public void roundTrip() throws Exception {
+		List<PageId> pids = Arrays.asList(new HeapPageId(3, 7), new BTreePageId(4, 2, BTreePageId.LEAF),
+				new HeapPageId(3, 1));
+		PageManifest.write(manifest, pids);
+		assertEquals(pids, PageManifest.read(manifest));
+
+		try (RandomAccessFile raf = new RandomAccessFile(manifest, "rw")) {
+			raf.setLength(raf.length() - 2);
+		}
+		assertEquals(pids.subList(0, 2), PageManifest.read(manifest));
+
+		manifest.delete();
+		assertTrue(PageManifest.read(manifest).isEmpty());
+	}
+
+	/**
+	 * A restarted pool loads the hottest pages of the manifest which fit in it
+	 */
+	@Test
+	public void warmStart() throws Exception {
+		HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+		BufferPool bp = Database.resetBufferPool(8);
+		bp.getPrefetcher().setMaxDepth(0);
+		TransactionId tid = new TransactionId();
+		for (int i = 3; i <= 10; i++) {
+			bp.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+		}
+		bp.transactionComplete(tid);
+		bp.writeManifest(manifest);
+		assertEquals(8, PageManifest.read(manifest).size());
+		assertEquals(new HeapPageId(hf.getId(), 10), PageManifest.read(manifest).get(0));
+
+		// 重启 只有表还在
+		File file = hf.getFile();
+		Database.reset();
+		hf = Utility.openHeapFile(2, file);
+		bp = Database.resetBufferPool(4);
+		assertEquals(4, bp.warmUp(manifest));
+		bp.getPrefetcher().awaitIdle();
+		assertEquals(4, bp.numPages());
+		for (int i = 3; i <= 10; i++) {
+			assertEquals(i >= 7, bp.isResident(new HeapPageId(hf.getId(), i)));
+		}
+	}
+
+	/**
+	 * Pages of dropped tables and pages past the end of a file are skipped
+	 */
+	@Test
+	public void skipMissingPages() throws Exception {
+		HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 2, null, null);
+		PageManifest.write(manifest, Arrays.asList(new HeapPageId(hf.getId(), 1),
+				new HeapPageId(hf.getId(), 5), new HeapPageId(hf.getId() + 1, 0)));
+		BufferPool bp = Database.resetBufferPool(8);
+		assertEquals(1, bp.warmUp(manifest));
+		bp.getPrefetcher().awaitIdle();
+		assertTrue(bp.isResident(new HeapPageId(hf.getId(), 1)));
+		assertFalse(bp.isResident(new HeapPageId(hf.getId(), 5)));
+	}
+
+	/**
+	 * A checkpoint writes the manifest only when one is configured
+	 */
+	@Test
+	public void checkpointWritesConfiguredManifest() throws Exception {
+		manifest.delete();
+		LogFile log = Database.getLogFile();
+		log.logCheckpoint();
+		assertFalse(manifest.exists());
+
+		log.setManifestFile(manifest);
+		log.logCheckpoint();
+		assertTrue(manifest.exists());
+	}
+}
@@ -0,0 +1,119 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PagePrefetcherTest extends SimpleDbTestBase {
+
+	private HeapFile hf;
+	private BufferPool bp;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(PagePrefetcherTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		hf = SystemTestUtil.createRandomHeapFile(2, 504 * 40, null, null);
+		bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+	}
+
+	private PageId pid(int pageNo) {
+		return new HeapPageId(hf.getId(), pageNo);
+	}
+
+	/**
+	 * Two sequential reads start read-ahead of the following pages
+	 */
+	@Test
+	public void sequentialReadsPrefetchAhead() throws Exception {
+		PagePrefetcher.Stream stream = bp.getPrefetcher().newStream();
+		stream.beforeRead(0, hf.numPages(), this::pid);
+		stream.beforeRead(1, hf.numPages(), this::pid);
+		bp.getPrefetcher().awaitIdle();
+
+		for (int i = 2; i <= 1 + PagePrefetcher.INITIAL_DEPTH; i++) {
+			assertTrue("page " + i + " should be prefetched", bp.isResident(pid(i)));
+		}
+		assertFalse(bp.isResident(pid(2 + PagePrefetcher.INITIAL_DEPTH)));
+	}
+
+	/**
+	 * Random reads must not trigger any read-ahead
+	 */
+	@Test
+	public void randomReadsDoNotPrefetch() throws Exception {
+		PagePrefetcher.Stream stream = bp.getPrefetcher().newStream();
+		stream.beforeRead(10, hf.numPages(), this::pid);
+		stream.beforeRead(3, hf.numPages(), this::pid);
+		stream.beforeRead(20, hf.numPages(), this::pid);
+		bp.getPrefetcher().awaitIdle();
+		for (int i = 0; i < hf.numPages(); i++) {
+			assertFalse(bp.isResident(pid(i)));
+		}
+	}
+
+	/**
+	 * The window grows while prefetched pages are found, up to the maximum depth
+	 */
+	@Test
+	public void windowGrowsOnHits() throws Exception {
+		PagePrefetcher.Stream stream = bp.getPrefetcher().newStream();
+		for (int i = 0; i < 20; i++) {
+			stream.beforeRead(i, hf.numPages(), this::pid);
+			bp.getPrefetcher().awaitIdle();
+		}
+		assertEquals(bp.getPrefetcher().getMaxDepth(), stream.getDepth());
+	}
+
+	/**
+	 * A scan with read-ahead returns every tuple, and a max depth of 0 disables it
+	 */
+	@Test
+	public void scanWithPrefetch() throws Exception {
+		TransactionId tid = new TransactionId();
+		DbFileIterator it = hf.iterator(tid);
+		it.open();
+		int count = 0;
+		while (it.hasNext()) {
+			it.next();
+			count++;
+		}
+		it.close();
+		assertEquals(504 * 40, count);
+		bp.transactionComplete(tid);
+
+		bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+		bp.getPrefetcher().setMaxDepth(0);
+		PagePrefetcher.Stream stream = bp.getPrefetcher().newStream();
+		stream.beforeRead(0, hf.numPages(), this::pid);
+		stream.beforeRead(1, hf.numPages(), this::pid);
+		bp.getPrefetcher().awaitIdle();
+		assertFalse(bp.isResident(pid(2)));
+	}
+
+	/**
+	 * A page is resident once its prefetch has been awaited
+	 */
+	@Test
+	public void awaitLoaded() throws Exception {
+		bp.getPrefetcher().prefetch(pid(7));
+		bp.getPrefetcher().awaitLoaded(pid(7));
+		assertFalse(bp.getPrefetcher().isInFlight(pid(7)));
+		assertTrue(bp.isResident(pid(7)));
+		// 没有在读的page直接返回
+		bp.getPrefetcher().awaitLoaded(pid(8));
+		assertFalse(bp.isResident(pid(8)));
+	}
+}
@@ -0,0 +1,321 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PageTableTest extends SimpleDbTestBase {
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(PageTableTest.class);
+	}
+
+	/**
+	 * Minimal in-memory page, enough for the page table to track dirtiness.
+	 */
+	static class MemPage implements Page {
+		private final PageId pid;
+		private final int size;
+		private TransactionId dirtier;
+
+		MemPage(PageId pid) {
+			this(pid, BufferPool.getPageSize());
+		}
+
+		MemPage(PageId pid, int size) {
+			this.pid = pid;
+			this.size = size;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public PageId getId() {
+			return pid;
+		}
+
+		public TransactionId isDirty() {
+			return dirtier;
+		}
+
+		public void markDirty(boolean dirty, TransactionId tid) {
+			this.dirtier = dirty ? tid : null;
+		}
+
+		public byte[] getPageData() {
+			return new byte[0];
+		}
+
+		public Page getBeforeImage() {
+			return this;
+		}
+
+		public void setBeforeImage() {
+		}
+	}
+
+	/**
+	 * Unit test for PageTable.put() and eviction of the least recently used page
+	 */
+	@Test
+	public void evictLeastRecentlyUsed() throws Exception {
+		PageTable table = new PageTable(3);
+		for (int i = 0; i < 3; i++) {
+			table.put(new HeapPageId(1, i), new MemPage(new HeapPageId(1, i)));
+		}
+		// touch page 0 so page 1 becomes the victim
+		assertNotNull(table.get(new HeapPageId(1, 0)));
+		table.put(new HeapPageId(1, 3), new MemPage(new HeapPageId(1, 3)));
+
+		assertEquals(3, table.size());
+		assertTrue(table.containsKey(new HeapPageId(1, 0)));
+		assertFalse(table.containsKey(new HeapPageId(1, 1)));
+	}
+
+	/**
+	 * Dirty pages must never be evicted
+	 */
+	@Test
+	public void dirtyPagesAreNotEvicted() throws Exception {
+		PageTable table = new PageTable(2);
+		TransactionId tid = new TransactionId();
+		for (int i = 0; i < 2; i++) {
+			Page p = new MemPage(new HeapPageId(1, i));
+			p.markDirty(true, tid);
+			table.put(p.getId(), p);
+		}
+		try {
+			table.put(new HeapPageId(1, 2), new MemPage(new HeapPageId(1, 2)));
+			fail("expected DbException when every page is dirty");
+		} catch (DbException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * A large table is split into several partitions, the total capacity is kept
+	 */
+	@Test
+	public void partitionedCapacity() throws Exception {
+		PageTable table = new PageTable(1000);
+		for (int i = 0; i < 5000; i++) {
+			table.put(new HeapPageId(7, i), new MemPage(new HeapPageId(7, i)));
+		}
+		assertEquals(1000, table.capacity());
+		assertEquals(1000, table.size());
+		assertEquals(1000, table.pages().size());
+	}
+
+	/**
+	 * Threads missing on the same page concurrently must load it only once
+	 */
+	@Test
+	public void concurrentMissLoadsOnce() throws Exception {
+		final PageTable table = new PageTable(BufferPool.DEFAULT_PAGES);
+		final PageId pid = new HeapPageId(3, 42);
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final Page[] seen = new Page[8];
+		Thread[] threads = new Thread[seen.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int idx = i;
+			threads[i] = new Thread(() -> {
+				try {
+					start.await();
+					seen[idx] = table.getOrLoad(pid, id -> {
+						loads.incrementAndGet();
+						try {
+							Thread.sleep(50);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return new MemPage(id);
+					});
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(1, loads.get());
+		for (Page p : seen) {
+			assertSame(seen[0], p);
+		}
+	}
+
+	/**
+	 * Shrinking keeps the resident pages until they are trimmed or replaced
+	 * by misses, dirty pages stay resident
+	 */
+	@Test
+	public void resize() throws Exception {
+		PageTable table = new PageTable(20);
+		for (int i = 0; i < 20; i++) {
+			table.getOrLoad(new HeapPageId(1, i), MemPage::new);
+		}
+		Page dirty = table.get(new HeapPageId(1, 0));
+		dirty.markDirty(true, new TransactionId());
+
+		table.resize(10);
+		assertEquals(10, table.capacity());
+		assertEquals(20, table.size());
+
+		// 每次miss多淘汰一个page
+		table.getOrLoad(new HeapPageId(1, 100), MemPage::new);
+		assertEquals(19, table.size());
+
+		assertEquals(5, table.trim(5));
+		assertEquals(14, table.size());
+		table.trim(Integer.MAX_VALUE);
+		assertEquals(10, table.size());
+		assertTrue(table.containsKey(dirty.getId()));
+
+		table.resize(40);
+		for (int i = 200; i < 250; i++) {
+			table.getOrLoad(new HeapPageId(1, i), MemPage::new);
+		}
+		assertEquals(40, table.size());
+	}
+
+	/**
+	 * Only the capacity of the whole table is a hard limit: a partition full of
+	 * dirty pages borrows room from the others instead of failing alone
+	 */
+	@Test
+	public void skewedDirtyPages() throws Exception {
+		PageTable table = new PageTable(BufferPool.DEFAULT_PAGES);
+		assertTrue(table.stats().size() > 1);
+		int share = table.stats().get(0).capacity;
+		TransactionId tid = new TransactionId();
+		// 所有dirty page都落在第一个分区
+		int dirty = 0;
+		for (int i = 0; dirty < share + 10; i++) {
+			PageId pid = new HeapPageId(1, i);
+			PageTable probe = new PageTable(BufferPool.DEFAULT_PAGES);
+			probe.put(pid, new MemPage(pid));
+			if (probe.stats().get(0).size == 1) {
+				Page p = new MemPage(pid);
+				p.markDirty(true, tid);
+				table.put(pid, p);
+				dirty++;
+			}
+		}
+		assertEquals(share + 10, table.stats().get(0).size);
+
+		// 其他分区的clean page让位给dirty page 总数不超过容量
+		for (int i = 0; i < 2 * BufferPool.DEFAULT_PAGES; i++) {
+			table.getOrLoad(new HeapPageId(2, i), MemPage::new);
+			assertTrue(table.size() <= BufferPool.DEFAULT_PAGES);
+		}
+		assertEquals(BufferPool.DEFAULT_PAGES, table.size());
+		int resident = 0;
+		for (Page p : table.pages()) {
+			if (p.isDirty() != null) {
+				resident++;
+			}
+		}
+		assertEquals(share + 10, resident);
+
+		// 只有整个表都是dirty page才失败
+		for (Page p : table.pages()) {
+			p.markDirty(true, tid);
+		}
+		try {
+			table.put(new HeapPageId(3, 0), new MemPage(new HeapPageId(3, 0)));
+			fail("expected DbException when every page is dirty");
+		} catch (DbException e) {
+			// expected
+		}
+	}
+	/**
+	 * Pages count for their size in bytes: a page four times the global page
+	 * size takes four slots, also of the maximum share of its table
+	 */
+	@Test
+	public void mixedPageSizes() throws Exception {
+		int big = 4 * BufferPool.getPageSize();
+		PageTable table = new PageTable(8);
+		for (int i = 0; i < 4; i++) {
+			table.put(new HeapPageId(2, i), new MemPage(new HeapPageId(2, i), big));
+		}
+		assertEquals(2, table.size());
+		assertEquals(table.capacityBytes(), table.bytes());
+		for (int i = 0; i < 4; i++) {
+			table.put(new HeapPageId(1, i), new MemPage(new HeapPageId(1, i)));
+		}
+		assertEquals(5, table.size());
+		assertEquals(table.capacityBytes(), table.bytes());
+
+		table.setQuota(2, BufferQuota.maxShare(0.5));
+		for (int i = 4; i < 8; i++) {
+			table.put(new HeapPageId(2, i), new MemPage(new HeapPageId(2, i), big));
+		}
+		int bigPages = 0;
+		for (Page p : table.pages()) {
+			bigPages += p.getId().getTableId() == 2 ? 1 : 0;
+		}
+		assertEquals(1, bigPages);
+
+		PageTable partitioned = new PageTable(1000);
+		for (int i = 0; i < 5000; i++) {
+			partitioned.put(new HeapPageId(7, i), new MemPage(new HeapPageId(7, i), 2 * BufferPool.getPageSize()));
+		}
+		assertTrue(partitioned.bytes() <= partitioned.capacityBytes());
+		assertTrue(partitioned.size() <= 500);
+	}
+
+	/**
+	 * The dirty bytes follow markDirty, replacements and removals without
+	 * scanning the table
+	 */
+	@Test
+	public void dirtyBytes() throws Exception {
+		int size = BufferPool.getPageSize();
+		PageTable table = new PageTable(8);
+		TransactionId tid = new TransactionId();
+		Page p0 = new MemPage(new HeapPageId(1, 0));
+		Page p1 = new MemPage(new HeapPageId(1, 1), 2 * size);
+		table.put(p0.getId(), p0);
+		table.put(p1.getId(), p1);
+		table.markDirty(p0, tid);
+		table.markDirty(p1, tid);
+		table.markDirty(p1, tid);
+		assertEquals(3 * size, table.dirtyBytes());
+
+		table.markDirty(p0, null);
+		assertEquals(2 * size, table.dirtyBytes());
+		// 替换成干净的版本 比如abort以后
+		table.put(p1.getId(), new MemPage(p1.getId(), 2 * size));
+		assertEquals(0, table.dirtyBytes());
+
+		Page p2 = new MemPage(new HeapPageId(1, 2));
+		p2.markDirty(true, tid);
+		table.put(p2.getId(), p2);
+		assertEquals(size, table.dirtyBytes());
+		table.remove(p2.getId());
+		assertEquals(0, table.dirtyBytes());
+		// 不在table里的page不计
+		table.markDirty(p2, tid);
+		assertEquals(0, table.dirtyBytes());
+	}
+
+}
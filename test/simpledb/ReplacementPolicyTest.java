@@ -0,0 +1,92 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplacementPolicyTest extends SimpleDbTestBase {
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+	}
+
+	private static PageId pid(int pageNo) {
+		return new HeapPageId(1, pageNo);
+	}
+
+	@Test
+	public void lruEvictsLeastRecentlyUsed() {
+		ReplacementPolicy policy = ReplacementPolicy.Type.LRU.create(3);
+		for (int i = 0; i < 3; i++) {
+			policy.recordInsert(pid(i));
+		}
+		policy.recordAccess(pid(0));
+		assertEquals(pid(1), policy.victim(p -> true));
+		assertEquals(pid(2), policy.victim(p -> true));
+	}
+
+	@Test
+	public void clockGivesSecondChance() {
+		ReplacementPolicy policy = ReplacementPolicy.Type.CLOCK.create(3);
+		for (int i = 0; i < 3; i++) {
+			policy.recordInsert(pid(i));
+		}
+		// first sweep clears all reference bits, page 0 is the first one left unreferenced
+		assertEquals(pid(0), policy.victim(p -> true));
+		policy.recordInsert(pid(3));
+		policy.recordAccess(pid(1));
+		assertEquals(pid(2), policy.victim(p -> true));
+	}
+
+	@Test
+	public void victimSkipsPagesThatCannotBeEvicted() {
+		for (ReplacementPolicy.Type type : ReplacementPolicy.Type.values()) {
+			ReplacementPolicy policy = type.create(4);
+			for (int i = 0; i < 4; i++) {
+				policy.recordInsert(pid(i));
+			}
+			assertEquals(type.toString(), pid(2), policy.victim(p -> p.equals(pid(2))));
+			assertNull(type.toString(), policy.victim(p -> false));
+			policy.recordRemove(pid(0));
+			Set<PageId> evicted = new HashSet<>();
+			PageId victim;
+			while ((victim = policy.victim(p -> true)) != null) {
+				evicted.add(victim);
+			}
+			assertEquals(type.toString(), new HashSet<>(java.util.Arrays.asList(pid(1), pid(3))), evicted);
+		}
+	}
+
+	@Test
+	public void twoQueueResistsScans() throws DbException {
+		List<PageId> trace = PageTraceReplay.syntheticTrace(64, 7);
+		double lru = PageTraceReplay.hitRatio(trace, 64, ReplacementPolicy.Type.LRU);
+		double twoQueue = PageTraceReplay.hitRatio(trace, 64, ReplacementPolicy.Type.TWO_QUEUE);
+		double arc = PageTraceReplay.hitRatio(trace, 64, ReplacementPolicy.Type.ARC);
+		assertTrue("2Q " + twoQueue + " should beat LRU " + lru, twoQueue > lru);
+		assertTrue("ARC " + arc + " should beat LRU " + lru, arc > lru);
+	}
+
+	@Test
+	public void pageTableWorksWithEveryPolicy() throws DbException {
+		for (ReplacementPolicy.Type type : ReplacementPolicy.Type.values()) {
+			PageTable table = new PageTable(8, type);
+			for (int i = 0; i < 100; i++) {
+				table.put(pid(i % 20), new PageTableTest.MemPage(pid(i % 20)));
+				assertTrue(table.size() <= 8);
+			}
+			assertEquals(8, table.pages().size());
+		}
+	}
+}
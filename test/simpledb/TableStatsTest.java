@@ -156,4 +156,17 @@ public class TableStatsTest extends SimpleDbTestBase {
 			Assert.assertEquals(0.0, s.estimateSelectivity(col, Predicate.Op.LESS_THAN_OR_EQ, belowMin), 0.001);
 		}
 	}
+	/**
+	 * Computing the statistics must not leave read locks behind which would
+	 * block later writers of the table
+	 */
+	@Test
+	public void releasesLocks() throws Exception {
+		new TableStats(this.tableId, IO_COST);
+		Database.getLockManager().setLockTimeout(100);
+		TransactionId tid = new TransactionId();
+		Database.getBufferPool().getPage(tid, new HeapPageId(this.tableId, 0), Permissions.READ_WRITE);
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
 }
@@ -0,0 +1,197 @@
+package simpledb.systemtest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.BufferPool;
+import simpledb.Database;
+import simpledb.DbException;
+import simpledb.HeapFile;
+import simpledb.HeapPage;
+import simpledb.HeapPageId;
+import simpledb.SeqScan;
+import simpledb.Transaction;
+import simpledb.TransactionAbortedException;
+import simpledb.Utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test commits, aborts and recovery with the buffer pool in STEAL / NO FORCE
+ * mode.
+ */
+public class StealNoForceTest extends SimpleDbTestBase {
+
+	private static final int POOL_PAGES = 4;
+
+	private File file;
+	private HeapFile hf;
+
+	/**
+	 * JUnit suite target
+	 */
+	public static junit.framework.Test suite() {
+		return new junit.framework.JUnit4TestAdapter(StealNoForceTest.class);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("stealnoforce", ".dat");
+		file.deleteOnExit();
+		file.delete();
+		hf = Utility.createEmptyHeapFile(file.getAbsolutePath(), 2);
+		stealNoForce();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Database.getBufferPool().setSteal(false);
+		file.delete();
+	}
+
+	private void stealNoForce() throws IOException {
+		BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+		bp.getPrefetcher().setMaxDepth(0);
+		// 水位设为1 后台线程不会主动写 page只在pool满的时候被偷写
+		bp.getCleaner().setWatermarks(1.0, 1.0);
+		bp.setSteal(true);
+		bp.setForce(false);
+	}
+
+	private void insert(Transaction t, int first, int count)
+			throws DbException, TransactionAbortedException, IOException {
+		for (int i = first; i < first + count; i++) {
+			Database.getBufferPool().insertTuple(t.getId(), hf.getId(), Utility.getHeapTuple(new int[]{i, 0}));
+		}
+	}
+
+	private int count() throws Exception {
+		Transaction t = new Transaction();
+		t.start();
+		SeqScan scan = new SeqScan(t.getId(), hf.getId(), "");
+		scan.open();
+		int n = 0;
+		while (scan.hasNext()) {
+			scan.next();
+			n++;
+		}
+		scan.close();
+		t.commit();
+		return n;
+	}
+
+	// 模拟崩溃 不写回任何page 没force的日志也丢掉 然后从日志恢复
+	private void crash() throws Exception {
+		File log = Database.getLogFile().getFile();
+		long forced = Database.getLogFile().getForcedOffset();
+		Database.reset();
+		try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+			raf.setLength(forced);
+		}
+		hf = Utility.openHeapFile(2, file);
+		Database.getLogFile().recover();
+		stealNoForce();
+	}
+
+	/**
+	 * A commit leaves the pages in the pool and recovery redoes them
+	 */
+	@Test
+	public void commitRedoneAfterCrash() throws Exception {
+		Transaction t = new Transaction();
+		t.start();
+		insert(t, 1, 3);
+		t.commit();
+
+		HeapPage onDisk = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+		assertFalse(onDisk.iterator().hasNext());
+		assertEquals(3, count());
+
+		crash();
+		assertEquals(3, count());
+	}
+
+	/**
+	 * A transaction larger than the pool is undone by recovery if it did not
+	 * commit
+	 */
+	@Test
+	public void largeTransactionUndoneAfterCrash() throws Exception {
+		Transaction t1 = new Transaction();
+		t1.start();
+		insert(t1, 0, 10);
+		t1.commit();
+
+		Transaction t2 = new Transaction();
+		t2.start();
+		insert(t2, 100, 504 * POOL_PAGES * 2);
+		assertTrue(hf.numPages() > POOL_PAGES);
+
+		crash();
+		assertEquals(10, count());
+	}
+
+	/**
+	 * An abort undoes the stolen pages but keeps the committed changes which
+	 * were not written back yet
+	 */
+	@Test
+	public void abortKeepsCommittedChanges() throws Exception {
+		Transaction t1 = new Transaction();
+		t1.start();
+		insert(t1, 0, 10);
+		t1.commit();
+
+		Transaction t2 = new Transaction();
+		t2.start();
+		insert(t2, 100, 504 * POOL_PAGES * 2);
+		t2.abort();
+		assertEquals(10, count());
+
+		Transaction t3 = new Transaction();
+		t3.start();
+		insert(t3, 20, 5);
+		t3.abort();
+		assertEquals(10, count());
+
+		crash();
+		assertEquals(10, count());
+	}
+
+	/**
+	 * The cleaner may write the pages of a committing transaction between
+	 * flushPages and its COMMIT record; their UPDATE records must be on disk
+	 * first, so recovery undoes them if the COMMIT record is lost
+	 */
+	@Test
+	public void cleanerBeforeCommitRecord() throws Exception {
+		// t1填满page 0 t2的tuple都落在page 1上 恢复时redo t1不会覆盖它
+		Transaction t1 = new Transaction();
+		t1.start();
+		insert(t1, 0, 504);
+		t1.commit();
+
+		Transaction t2 = new Transaction();
+		t2.start();
+		insert(t2, 1000, 5);
+		Database.getBufferPool().flushPages(t2.getId());
+
+		// 让cleaner把所有page写回 等到page 1上有t2的tuple
+		Database.getBufferPool().getCleaner().setWatermarks(0.0, 0.0);
+		HeapPageId pid = new HeapPageId(hf.getId(), 1);
+		for (int i = 0; i < 1000 && (hf.numPages() < 2 || ((HeapPage) hf.readPage(pid)).getNumEmptySlots() > 504 - 5); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(504 - 5, ((HeapPage) hf.readPage(pid)).getNumEmptySlots());
+
+		crash();
+		assertEquals(504, count());
+	}
+}